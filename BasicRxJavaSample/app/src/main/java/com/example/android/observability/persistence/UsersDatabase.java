@@ -20,6 +20,9 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import android.content.Context;
+import androidx.annotation.Nullable;
+
+import com.example.android.observability.persistence.tracing.QueryTracer;
 
 /**
  * The Room database that contains the Users table
@@ -29,19 +32,34 @@ public abstract class UsersDatabase extends RoomDatabase {
 
     private static volatile UsersDatabase INSTANCE;
 
+    @Nullable
+    private QueryTracer mQueryTracer;
+
     public abstract UserDao userDao();
 
     public static UsersDatabase getInstance(Context context) {
         if (INSTANCE == null) {
             synchronized (UsersDatabase.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
-                            UsersDatabase.class, "Sample.db")
-                            .build();
+                    Builder<UsersDatabase> builder = Room.databaseBuilder(
+                            context.getApplicationContext(), UsersDatabase.class, "Sample.db");
+                    QueryTracer tracer = QueryTracer.installIfDebuggable(context, builder);
+                    UsersDatabase database = builder.build();
+                    database.mQueryTracer = tracer;
+                    INSTANCE = database;
                 }
             }
         }
         return INSTANCE;
     }
 
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, {@code null} otherwise.
+     */
+    @Nullable
+    public QueryTracer getQueryTracer() {
+        return mQueryTracer;
+    }
+
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/java/QueryStats.java by update_tracing.sh, do not edit.
+package com.example.android.observability.persistence.tracing;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram and row count for one SQL statement, or for transactions.
+ * <p>
+ * Durations fall into power-of-two microsecond buckets, so percentiles are upper bounds that are
+ * at most twice the real value. Instances returned by {@link QueryTracer} are snapshots.
+ */
+public class QueryStats {
+
+    // Bucket i holds durations below 2^i microseconds, the last one everything longer
+    private static final int BUCKETS = 32;
+
+    private final long[] mBuckets = new long[BUCKETS];
+
+    private long mCount;
+
+    private long mRows;
+
+    private long mTotalNanos;
+
+    private long mMaxNanos;
+
+    QueryStats() {
+    }
+
+    private QueryStats(QueryStats other) {
+        System.arraycopy(other.mBuckets, 0, mBuckets, 0, BUCKETS);
+        mCount = other.mCount;
+        mRows = other.mRows;
+        mTotalNanos = other.mTotalNanos;
+        mMaxNanos = other.mMaxNanos;
+    }
+
+    void record(long nanos, long rows) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        mBuckets[bucket]++;
+        mCount++;
+        mRows += rows;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    void reset() {
+        Arrays.fill(mBuckets, 0);
+        mCount = 0;
+        mRows = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    QueryStats copy() {
+        return new QueryStats(this);
+    }
+
+    /** How many times the statement ran. */
+    public long getCount() {
+        return mCount;
+    }
+
+    /** Rows returned by queries, or changed by updates and deletes, over all runs. */
+    public long getRows() {
+        return mRows;
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    public long getMeanNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile, between 0 and 100, of the recorded
+     * durations.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mCount * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                return Math.min(mMaxNanos, TimeUnit.MICROSECONDS.toNanos(1L << i));
+            }
+        }
+        return mMaxNanos;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "count=" + mCount + " rows=" + mRows
+                + " mean=" + TimeUnit.NANOSECONDS.toMicros(getMeanNanos()) + "us"
+                + " p50=" + TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(50)) + "us"
+                + " p99=" + TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(99)) + "us"
+                + " max=" + TimeUnit.NANOSECONDS.toMicros(mMaxNanos) + "us";
+    }
+}
@@ -20,6 +20,7 @@ import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
 import android.content.Context
+import com.example.android.observability.persistence.tracing.QueryTracer
 
 /**
  * The Room database that contains the Users table
@@ -29,6 +30,13 @@ abstract class UsersDatabase : RoomDatabase() {
 
     abstract fun userDao(): UserDao
 
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, `null` otherwise.
+     */
+    var queryTracer: QueryTracer? = null
+        private set
+
     companion object {
 
         @Volatile private var INSTANCE: UsersDatabase? = null
@@ -38,9 +46,11 @@ abstract class UsersDatabase : RoomDatabase() {
                     INSTANCE ?: buildDatabase(context).also { INSTANCE = it }
                 }
 
-        private fun buildDatabase(context: Context) =
-                Room.databaseBuilder(context.applicationContext,
-                        UsersDatabase::class.java, "Sample.db")
-                        .build()
+        private fun buildDatabase(context: Context): UsersDatabase {
+            val builder = Room.databaseBuilder(context.applicationContext,
+                    UsersDatabase::class.java, "Sample.db")
+            val tracer = QueryTracer.installIfDebuggable(context, builder)
+            return builder.build().apply { queryTracer = tracer }
+        }
     }
 }
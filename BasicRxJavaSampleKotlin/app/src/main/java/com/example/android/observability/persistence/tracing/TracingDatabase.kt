@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/kotlin/TracingDatabase.kt by update_tracing.sh, do not edit.
+package com.example.android.observability.persistence.tracing
+
+import android.content.ContentValues
+import android.database.Cursor
+import android.database.CursorWrapper
+import android.database.SQLException
+import android.database.sqlite.SQLiteTransactionListener
+import android.os.Build
+import android.os.CancellationSignal
+import androidx.annotation.RequiresApi
+import androidx.sqlite.db.SimpleSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import androidx.sqlite.db.SupportSQLiteProgram
+import androidx.sqlite.db.SupportSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteStatement
+import java.util.Locale
+
+/** Hands out [TracingDatabase]s for the databases opened by another helper. */
+internal class TracingOpenHelper(
+    private val delegate: SupportSQLiteOpenHelper,
+    private val tracer: QueryTracer
+) : SupportSQLiteOpenHelper by delegate {
+
+    class Factory(
+        private val delegate: SupportSQLiteOpenHelper.Factory,
+        private val tracer: QueryTracer
+    ) : SupportSQLiteOpenHelper.Factory {
+        override fun create(configuration: SupportSQLiteOpenHelper.Configuration) =
+            TracingOpenHelper(delegate.create(configuration), tracer)
+    }
+
+    // Room asks for the database before every statement, so the wrapper is kept
+    private var database: TracingDatabase? = null
+
+    override fun getWritableDatabase() = wrap(delegate.writableDatabase)
+
+    override fun getReadableDatabase() = wrap(delegate.readableDatabase)
+
+    @Synchronized
+    private fun wrap(db: SupportSQLiteDatabase): SupportSQLiteDatabase =
+        database?.takeIf { it.wraps(db) } ?: TracingDatabase(db, tracer).also { database = it }
+}
+
+/**
+ * Reports every statement run against a database to a [QueryTracer], and explains the slow
+ * ones.
+ */
+internal class TracingDatabase(
+    private val delegate: SupportSQLiteDatabase,
+    private val tracer: QueryTracer
+) : SupportSQLiteDatabase by delegate {
+
+    // Nesting depth and start time of the current thread's transaction
+    private val transaction = object : ThreadLocal<LongArray>() {
+        override fun initialValue() = LongArray(2)
+    }
+
+    fun wraps(db: SupportSQLiteDatabase) = delegate === db
+
+    /**
+     * Records a statement that started at [start], and explains it if it was slow. [bindings] are
+     * used for the plan when they are still available.
+     */
+    fun onStatement(sql: String, bindings: SupportSQLiteQuery?, start: Long, rows: Long) {
+        val nanos = System.nanoTime() - start
+        tracer.onStatement(sql, nanos, rows)
+        if (tracer.isSlow(nanos)) {
+            tracer.onSlowStatement(sql, nanos, explain(sql, bindings))
+        }
+    }
+
+    private fun explain(sql: String, bindings: SupportSQLiteQuery?): List<String> {
+        if (!hasQueryPlan(sql)) {
+            return emptyList()
+        }
+        return try {
+            // Not traced itself
+            delegate.query(ExplainQuery(sql, bindings)).use { cursor ->
+                val detail = cursor.getColumnIndexOrThrow("detail")
+                generateSequence { if (cursor.moveToNext()) cursor.getString(detail) else null }
+                    .toList()
+            }
+        } catch (e: SQLException) {
+            listOf("EXPLAIN QUERY PLAN failed: ${e.message}")
+        } catch (e: IllegalArgumentException) {
+            listOf("EXPLAIN QUERY PLAN failed: ${e.message}")
+        }
+    }
+
+    override fun compileStatement(sql: String): SupportSQLiteStatement =
+        TracingStatement(delegate.compileStatement(sql), this, sql)
+
+    override fun beginTransaction() =
+        beginTransaction { delegate.beginTransaction() }
+
+    override fun beginTransactionNonExclusive() =
+        beginTransaction { delegate.beginTransactionNonExclusive() }
+
+    override fun beginTransactionWithListener(listener: SQLiteTransactionListener) =
+        beginTransaction { delegate.beginTransactionWithListener(listener) }
+
+    override fun beginTransactionWithListenerNonExclusive(listener: SQLiteTransactionListener) =
+        beginTransaction { delegate.beginTransactionWithListenerNonExclusive(listener) }
+
+    private inline fun beginTransaction(begin: () -> Unit) {
+        val state = transaction.get()!!
+        // Waiting for the write lock counts towards the outermost transaction
+        val start = if (state[0] == 0L) System.nanoTime() else 0L
+        begin()
+        if (state[0]++ == 0L) {
+            state[1] = start
+        }
+    }
+
+    override fun endTransaction() {
+        try {
+            delegate.endTransaction()
+        } finally {
+            val state = transaction.get()!!
+            if (state[0] > 0 && --state[0] == 0L) {
+                tracer.onTransaction(System.nanoTime() - state[1])
+            }
+        }
+    }
+
+    override fun query(query: String): Cursor = query(SimpleSQLiteQuery(query))
+
+    override fun query(query: String, bindArgs: Array<out Any?>?): Cursor =
+        query(SimpleSQLiteQuery(query, bindArgs))
+
+    override fun query(query: SupportSQLiteQuery): Cursor {
+        val start = System.nanoTime()
+        return TracingCursor(delegate.query(query), query, start)
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    override fun query(query: SupportSQLiteQuery, cancellationSignal: CancellationSignal?): Cursor {
+        val start = System.nanoTime()
+        return TracingCursor(delegate.query(query, cancellationSignal), query, start)
+    }
+
+    override fun insert(table: String, conflictAlgorithm: Int, values: ContentValues): Long {
+        val start = System.nanoTime()
+        val rowId = delegate.insert(table, conflictAlgorithm, values)
+        onStatement("INSERT INTO $table", null, start, if (rowId == -1L) 0 else 1)
+        return rowId
+    }
+
+    override fun delete(table: String, whereClause: String?, whereArgs: Array<out Any?>?): Int {
+        val start = System.nanoTime()
+        val rows = delegate.delete(table, whereClause, whereArgs)
+        val sql =
+            "DELETE FROM $table" + if (whereClause.isNullOrEmpty()) "" else " WHERE $whereClause"
+        onStatement(sql, SimpleSQLiteQuery(sql, whereArgs), start, rows.toLong())
+        return rows
+    }
+
+    override fun update(
+        table: String,
+        conflictAlgorithm: Int,
+        values: ContentValues,
+        whereClause: String?,
+        whereArgs: Array<out Any?>?
+    ): Int {
+        val start = System.nanoTime()
+        val rows = delegate.update(table, conflictAlgorithm, values, whereClause, whereArgs)
+        val sql = "UPDATE $table" + if (whereClause.isNullOrEmpty()) "" else " WHERE $whereClause"
+        onStatement(sql, null, start, rows.toLong())
+        return rows
+    }
+
+    override fun execSQL(sql: String) {
+        val start = System.nanoTime()
+        delegate.execSQL(sql)
+        onStatement(sql, null, start, 0)
+    }
+
+    override fun execSQL(sql: String, bindArgs: Array<out Any?>) {
+        val start = System.nanoTime()
+        delegate.execSQL(sql, bindArgs)
+        onStatement(sql, SimpleSQLiteQuery(sql, bindArgs), start, 0)
+    }
+
+    /**
+     * Reports a query when its cursor is closed. SQLite runs the query while the rows are read,
+     * so that is when the work is done. Room closes the cursor before it releases the query, so
+     * the bindings are still there for the plan.
+     */
+    private inner class TracingCursor(
+        cursor: Cursor,
+        private val query: SupportSQLiteQuery,
+        private val start: Long
+    ) : CursorWrapper(cursor) {
+
+        private var reported = false
+
+        override fun close() {
+            // Counting a cursor that was never read would run the query now
+            val rows = if (isClosed || position == -1) 0 else count
+            super.close()
+            if (!reported) {
+                reported = true
+                onStatement(query.sql, query, start, rows.toLong())
+            }
+        }
+    }
+
+    /** `EXPLAIN QUERY PLAN` of a statement, with its arguments if there are any. */
+    private class ExplainQuery(
+        sql: String,
+        private val bindings: SupportSQLiteQuery?
+    ) : SupportSQLiteQuery {
+
+        private val explainSql = "EXPLAIN QUERY PLAN $sql"
+
+        override fun getSql() = explainSql
+
+        override fun bindTo(statement: SupportSQLiteProgram) {
+            bindings?.bindTo(statement)
+        }
+
+        override fun getArgCount() = bindings?.argCount ?: 0
+    }
+
+    private companion object {
+        val EXPLAINABLE = setOf("SELECT", "WITH", "INSERT", "REPLACE", "UPDATE", "DELETE")
+
+        fun hasQueryPlan(sql: String) =
+            sql.trim().takeWhile { it.isLetter() }.toUpperCase(Locale.US) in EXPLAINABLE
+    }
+}
+
+/** Times every execution of a compiled statement. */
+internal class TracingStatement(
+    private val delegate: SupportSQLiteStatement,
+    private val database: TracingDatabase,
+    private val sql: String
+) : SupportSQLiteStatement by delegate {
+
+    override fun execute() {
+        val start = System.nanoTime()
+        delegate.execute()
+        database.onStatement(sql, null, start, 0)
+    }
+
+    override fun executeUpdateDelete(): Int {
+        val start = System.nanoTime()
+        val rows = delegate.executeUpdateDelete()
+        database.onStatement(sql, null, start, rows.toLong())
+        return rows
+    }
+
+    override fun executeInsert(): Long {
+        val start = System.nanoTime()
+        val rowId = delegate.executeInsert()
+        database.onStatement(sql, null, start, if (rowId == -1L) 0 else 1)
+        return rowId
+    }
+
+    override fun simpleQueryForLong(): Long {
+        val start = System.nanoTime()
+        val result = delegate.simpleQueryForLong()
+        database.onStatement(sql, null, start, 1)
+        return result
+    }
+
+    override fun simpleQueryForString(): String? {
+        val start = System.nanoTime()
+        val result = delegate.simpleQueryForString()
+        database.onStatement(sql, null, start, 1)
+        return result
+    }
+}
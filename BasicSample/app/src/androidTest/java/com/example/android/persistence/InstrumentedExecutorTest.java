@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import android.os.Process;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test the counters of {@link InstrumentedExecutor}
+ */
+@RunWith(AndroidJUnit4.class)
+public class InstrumentedExecutorTest {
+
+    private final InstrumentedExecutor mExecutor =
+            new InstrumentedExecutor("test", 1, 1, Process.THREAD_PRIORITY_DEFAULT);
+
+    @After
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void countsQueuedCompletedAndRejectedTasks() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        // Occupies the only thread, so the next task waits in the queue and fills it
+        mExecutor.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        mExecutor.execute(() -> { });
+        try {
+            mExecutor.execute(() -> { });
+            fail("a full queue must reject the task");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        InstrumentedExecutor.Stats stats = mExecutor.getStats();
+        assertThat(stats.getQueueDepth(), is(1));
+        assertThat(stats.getSubmittedCount(), is(2L));
+        assertThat(stats.getRejectedCount(), is(1L));
+
+        blocked.countDown();
+        mExecutor.shutdown();
+        assertThat(mExecutor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+
+        stats = mExecutor.getStats();
+        assertThat(stats.getQueueDepth(), is(0));
+        assertThat(stats.getMaxQueueDepth(), is(1));
+        assertThat(stats.getCompletedCount(), is(2L));
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.example.android.persistence.db.AppDatabase;
+import com.example.android.persistence.db.DataGenerator;
+import com.example.android.persistence.db.ProductColumns;
+import com.example.android.persistence.db.StringTable;
+import com.example.android.persistence.db.dao.ProductDao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that narrowing search results in {@link ProductSearchEngine} agrees with SQLite's FTS,
+ * and that the engine debounces, drops superseded queries and caches only fresh results.
+ * <p>
+ * The engine runs its searches on an executor that the test drains by hand, and its debounce on
+ * a looper thread that stands in for the main thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductSearchEngineTest {
+
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    // Lets the results be read from any thread, as soon as they are posted
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private AppDatabase mDatabase;
+
+    private ProductDao mProductDao;
+
+    private final StringTable mStringTable = new StringTable();
+
+    private HandlerThread mLooperThread;
+
+    private Handler mHandler;
+
+    private final ManualExecutor mExecutor = new ManualExecutor();
+
+    private HookedRepository mRepository;
+
+    private final List<String> mResults = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void initDb() throws Exception {
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(),
+                AppDatabase.class)
+                // allowing main thread queries, just for testing
+                .allowMainThreadQueries()
+                .build();
+        mProductDao = mDatabase.productDao();
+        mProductDao.insertAll(DataGenerator.generateProducts());
+
+        mLooperThread = new HandlerThread("ProductSearchEngineTest");
+        mLooperThread.start();
+        mHandler = new Handler(mLooperThread.getLooper());
+        mRepository = new HookedRepository(mDatabase);
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        mLooperThread.quit();
+        mDatabase.close();
+    }
+
+    @Test
+    public void debounce_searchesOnlyTheLastQuery() {
+        ProductSearchEngine engine = newEngine(DEBOUNCE_MILLIS);
+
+        onLooper(() -> {
+            engine.setQuery("r");
+            engine.setQuery("ru");
+            engine.setQuery("rubber");
+        });
+        SystemClock.sleep(DEBOUNCE_MILLIS * 3);
+
+        assertThat(mExecutor.runAll(), is(1));
+        assertThat(mResults, is(Collections.singletonList(ids(search("rubber")))));
+        assertThat(mRepository.mSearches, is(1));
+    }
+
+    @Test
+    public void queryReplacedBeforeItRuns_neverPosts() {
+        ProductSearchEngine engine = newEngine(0);
+
+        setQuery(engine, "monkey");
+        setQuery(engine, "grog");
+
+        assertThat(mExecutor.runAll(), is(2));
+        assertThat(mResults, is(Collections.singletonList(ids(search("grog")))));
+        assertThat(mRepository.mSearches, is(1));
+    }
+
+    @Test
+    public void queryReplacedWhileRunning_neverPosts() {
+        ProductSearchEngine engine = newEngine(0);
+        mRepository.mAfterSearch = () -> {
+            mRepository.mAfterSearch = null;
+            setQuery(engine, "grog");
+        };
+
+        setQuery(engine, "monkey");
+        mExecutor.runAll();
+
+        assertThat(mResults, is(Collections.singletonList(ids(search("grog")))));
+        assertThat(mRepository.mSearches, is(2));
+    }
+
+    @Test
+    public void repeatedQuery_reusesCachedIds() {
+        ProductSearchEngine engine = newEngine(0);
+
+        for (String query : new String[]{"monkey", "grog", "monkey"}) {
+            setQuery(engine, query);
+            mExecutor.runAll();
+        }
+
+        // The second "monkey" loaded its cached ids instead of searching
+        assertThat(engine.getCacheHitCount(), is(1));
+        assertThat(mRepository.mSearches, is(2));
+        assertThat(mResults.get(2), is(mResults.get(0)));
+    }
+
+    @Test
+    public void productsChangedDuringSearch_resultsAreNotCached() {
+        ProductSearchEngine engine = newEngine(0);
+        // The products change after the search read them, but before it cached them
+        mRepository.mAfterSearch = () -> {
+            mRepository.mAfterSearch = null;
+            engine.onProductsChanged();
+        };
+
+        setQuery(engine, "monkey");
+        mExecutor.runAll();
+        // The change posted a refresh of the query, which posts its search in turn
+        onLooper(() -> { });
+        onLooper(() -> { });
+        mExecutor.runAll();
+
+        // Both reads went to the database, none to the cache
+        assertThat(mRepository.mSearches, is(2));
+        assertThat(engine.getCacheHitCount(), is(0));
+        assertThat(mResults.size(), is(2));
+    }
+
+    @Test
+    public void narrowingMatchesFullTextSearch() {
+        String[] queries = {"r", "ru", "rubber", "rubber c", "rubber chicken", "rubber chicken f"};
+        ProductColumns previous = search(queries[0]);
+        for (int i = 1; i < queries.length; i++) {
+            ProductColumns narrowed = ProductSearchEngine.narrow(previous, queries[i]);
+
+            assertThat(queries[i], ids(narrowed), is(ids(search(queries[i]))));
+            previous = narrowed;
+        }
+    }
+
+    @Test
+    public void sharedStringTableInternsEqualStrings() {
+        ProductColumns first = search("rubber");
+        ProductColumns second = search("rubber");
+
+        assertThat(first.size() > 0, is(true));
+        for (int i = 0; i < first.size(); i++) {
+            assertThat(first.getNameRef(i), is(second.getNameRef(i)));
+            assertThat(first.nameEquals(i, second, i), is(true));
+            assertThat(first.descriptionEquals(i, second, i), is(true));
+        }
+    }
+
+    /** An engine whose searches run on {@link #mExecutor} and debounce on the looper thread. */
+    private ProductSearchEngine newEngine(long debounceMillis) {
+        ProductSearchEngine engine = new ProductSearchEngine(mRepository, mExecutor,
+                debounceMillis, ProductSearchEngine.DEFAULT_CACHE_SIZE, mLooperThread.getLooper());
+        // Registers the invalidation observer
+        mExecutor.runAll();
+        engine.getResults().observeForever(results -> {
+            if (results != null) {
+                mResults.add(ids(results));
+            }
+        });
+        return engine;
+    }
+
+    /** Sets the query on the looper thread and waits for a zero debounce to hand it over. */
+    private void setQuery(ProductSearchEngine engine, String query) {
+        onLooper(() -> engine.setQuery(query));
+        onLooper(() -> { });
+    }
+
+    /** Runs {@code action} on the looper thread, after everything posted before it is due. */
+    private void onLooper(Runnable action) {
+        CountDownLatch done = new CountDownLatch(1);
+        mHandler.post(() -> {
+            action.run();
+            done.countDown();
+        });
+        try {
+            assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private ProductColumns search(String query) {
+        return new ProductColumns.Builder(mStringTable, 0)
+                .addAll(mProductDao.searchProductColumns("*" + query + "*"))
+                .build();
+    }
+
+    private static String ids(ProductColumns products) {
+        int[] ids = products.getIds();
+        Arrays.sort(ids);
+        return Arrays.toString(ids);
+    }
+
+    /** Queues tasks until the test runs them. */
+    private static class ManualExecutor implements Executor {
+
+        private final LinkedBlockingQueue<Runnable> mTasks = new LinkedBlockingQueue<>();
+
+        @Override
+        public void execute(Runnable task) {
+            mTasks.add(task);
+        }
+
+        /** Runs the queued tasks, and those they queue, on the calling thread. */
+        int runAll() {
+            int count = 0;
+            Runnable task;
+            while ((task = mTasks.poll()) != null) {
+                task.run();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /** Counts the full-text searches, and runs a hook after each one. */
+    private static class HookedRepository extends DataRepository {
+
+        volatile int mSearches;
+
+        volatile Runnable mAfterSearch;
+
+        HookedRepository(AppDatabase database) {
+            super(database);
+        }
+
+        @Override
+        public ProductColumns searchProductColumnsSync(String query) {
+            ProductColumns results = super.searchProductColumnsSync(query);
+            mSearches++;
+            Runnable hook = mAfterSearch;
+            if (hook != null) {
+                hook.run();
+            }
+            return results;
+        }
+    }
+}
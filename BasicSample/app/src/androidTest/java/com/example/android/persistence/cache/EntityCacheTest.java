@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.cache;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test the implementation of {@link EntityCache}
+ */
+@RunWith(AndroidJUnit4.class)
+public class EntityCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        EntityCache<String> cache = new EntityCache<>(2);
+        cache.put(1, "one", cache.getVersion());
+        cache.put(2, "two", cache.getVersion());
+        cache.get(1);
+        cache.put(3, "three", cache.getVersion());
+
+        assertThat(cache.get(1), is("one"));
+        assertNull(cache.get(2));
+        assertThat(cache.get(3), is("three"));
+        assertThat(cache.getEvictionCount(), is(1L));
+        assertThat(cache.getHitCount(), is(3L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void invalidateDropsEntriesAndStaleWrites() {
+        EntityCache<String> cache = new EntityCache<>(4);
+        final boolean[] notified = new boolean[1];
+        cache.addInvalidationListener(1, () -> notified[0] = true);
+        int version = cache.getVersion();
+        cache.put(1, "one", version);
+
+        cache.invalidate();
+
+        assertTrue(notified[0]);
+        assertNull(cache.get(1));
+        assertFalse(cache.put(1, "stale", version));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void invalidateKeyOnlyDropsThatEntry() {
+        EntityCache<String> cache = new EntityCache<>(4);
+        final boolean[] notified = new boolean[2];
+        cache.addInvalidationListener(1, () -> notified[0] = true);
+        cache.addInvalidationListener(2, () -> notified[1] = true);
+        cache.put(1, "one", cache.getVersion());
+        cache.put(2, "two", cache.getVersion());
+        cache.put(3, "three", cache.getVersion());
+
+        cache.invalidate(1);
+
+        assertTrue(notified[0]);
+        assertFalse(notified[1]);
+        assertNull(cache.get(1));
+        assertThat(cache.get(2), is("two"));
+        assertThat(cache.get(3), is("three"));
+        assertThat(cache.size(), is(2));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import static com.example.android.persistence.db.TestData.COMMENT_ENTITY2;
+import static com.example.android.persistence.db.TestData.PRODUCTS;
+import static com.example.android.persistence.db.TestData.PRODUCT_ENTITY;
+import static com.example.android.persistence.db.TestData.PRODUCT_ENTITY2;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.example.android.persistence.db.entity.ProductEntity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test that {@link ChangeFeed} reports the keys of the rows that changed, and nothing else.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChangeFeedTest {
+
+    private AppDatabase mDatabase;
+
+    // Each change as "table" followed by its keys
+    private final BlockingQueue<String> mChanges = new LinkedBlockingQueue<>();
+
+    @Before
+    public void initDb() {
+        ChangeFeed changeFeed = AppDatabase.newChangeFeed();
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(),
+                AppDatabase.class)
+                .addCallback(changeFeed)
+                .build();
+        changeFeed.attach(mDatabase).addObserver(
+                (table, keys) -> mChanges.add(table + " " + Arrays.toString(keys)));
+    }
+
+    @After
+    public void closeDb() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void productWrite_reportsItsId() throws InterruptedException {
+        mDatabase.productDao().insertAll(Collections.singletonList(PRODUCT_ENTITY2));
+
+        assertThat(nextChange(), is("products [" + PRODUCT_ENTITY2.getId() + "]"));
+    }
+
+    @Test
+    public void commentWrite_reportsItsProductId() throws InterruptedException {
+        mDatabase.productDao().insertAll(PRODUCTS);
+        nextChange();
+
+        mDatabase.commentDao().insertAll(Collections.singletonList(COMMENT_ENTITY2));
+
+        assertThat(nextChange(), is("comments [" + COMMENT_ENTITY2.getProductId() + "]"));
+    }
+
+    @Test
+    public void otherTableWrite_reportsNothing() throws InterruptedException {
+        // Written through Room, so that the invalidation tracker looks for changes afterwards
+        mDatabase.runInTransaction(() -> mDatabase.getOpenHelper().getWritableDatabase()
+                .execSQL("INSERT INTO productsFts(productsFts) VALUES ('optimize')"));
+        mDatabase.productDao().insertAll(Collections.singletonList(PRODUCT_ENTITY));
+
+        // Changes are reported in order, so the product is the first one
+        assertThat(nextChange(), is("products [" + PRODUCT_ENTITY.getId() + "]"));
+        assertThat(mChanges.poll(500, TimeUnit.MILLISECONDS), is((String) null));
+    }
+
+    @Test
+    public void updateOfSeveralRows_reportsEachIdOnce() throws InterruptedException {
+        mDatabase.productDao().insertAll(PRODUCTS);
+        nextChange();
+
+        mDatabase.runInTransaction(() -> {
+            for (int i = 0; i < 3; i++) {
+                mDatabase.productDao().insertAll(Arrays.asList(
+                        new ProductEntity(PRODUCT_ENTITY.getId(), "name", "description", i),
+                        new ProductEntity(PRODUCT_ENTITY2.getId(), "name", "description", i)));
+            }
+        });
+
+        assertThat(nextChange(), is("products [" + PRODUCT_ENTITY.getId() + ", "
+                + PRODUCT_ENTITY2.getId() + "]"));
+    }
+
+    private String nextChange() throws InterruptedException {
+        String change = mChanges.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No change reported", change);
+        return change;
+    }
+}
@@ -42,6 +42,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -118,4 +121,55 @@ public class CommentDaoTest {
         assertThat(comments.size(), is(1));
     }
 
+    @Test
+    public void getCommentPagesNewestFirst() {
+        mProductDao.insertAll(PRODUCTS);
+        int productId = COMMENT_ENTITY.getProductId();
+        mCommentDao.insertAll(Arrays.asList(
+                new CommentEntity(1, productId, "old", new Date(1000)),
+                new CommentEntity(2, productId, "new", new Date(3000)),
+                new CommentEntity(3, productId, "middle", new Date(2000)),
+                new CommentEntity(4, productId, "also middle", new Date(2000))));
+
+        List<CommentEntity> first = mCommentDao.loadOlderComments(productId, Long.MAX_VALUE,
+                Integer.MAX_VALUE, 2);
+        CommentEntity last = first.get(first.size() - 1);
+        List<CommentEntity> second = mCommentDao.loadOlderComments(productId,
+                last.getPostedAt().getTime(), last.getId(), 2);
+        List<CommentEntity> newer = mCommentDao.loadNewerComments(productId,
+                last.getPostedAt().getTime(), last.getId(), 2);
+
+        assertThat(ids(first), is(Arrays.asList(2, 4)));
+        assertThat(ids(second), is(Arrays.asList(3, 1)));
+        assertThat(ids(newer), is(Arrays.asList(2)));
+    }
+
+    @Test
+    public void getUndatedCommentPagesById() {
+        mProductDao.insertAll(PRODUCTS);
+        int productId = COMMENT_ENTITY.getProductId();
+        mCommentDao.insertAll(Arrays.asList(
+                new CommentEntity(1, productId, "dated", new Date(1000)),
+                new CommentEntity(2, productId, "undated", null),
+                new CommentEntity(3, productId, "also undated", null)));
+
+        // The keyset pages over dates skip the undated comments
+        List<CommentEntity> dated = mCommentDao.loadOlderComments(productId, Long.MAX_VALUE,
+                Integer.MAX_VALUE, 3);
+        List<CommentEntity> older = mCommentDao.loadOlderUndatedComments(productId,
+                Integer.MAX_VALUE, 3);
+        List<CommentEntity> newer = mCommentDao.loadNewerUndatedComments(productId, 2, 3);
+
+        assertThat(ids(dated), is(Arrays.asList(1)));
+        assertThat(ids(older), is(Arrays.asList(3, 2)));
+        assertThat(ids(newer), is(Arrays.asList(3)));
+    }
+
+    private static List<Integer> ids(List<CommentEntity> comments) {
+        List<Integer> ids = new ArrayList<>();
+        for (CommentEntity comment : comments) {
+            ids.add(comment.getId());
+        }
+        return ids;
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.example.android.persistence.db.entity.CommentEntity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Test the implementation of {@link DatabaseSeeder}
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseSeederTest {
+
+    private AppDatabase mDatabase;
+
+    @Before
+    public void initDb() throws Exception {
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(),
+                AppDatabase.class)
+                // allowing main thread queries, just for testing
+                .allowMainThreadQueries()
+                .build();
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        mDatabase.close();
+    }
+
+    @Test
+    public void seedWritesEveryProductInChunks() {
+        final List<Integer> progress = new ArrayList<>();
+
+        int written = new DatabaseSeeder(mDatabase, 7).seed(DataGenerator.streamProducts(20),
+                (product, out) -> out.add(new CommentEntity(0, product.getId(), "text",
+                        new Date())),
+                progress::add);
+
+        assertThat(written, is(20));
+        assertThat(progress, contains(7, 14, 20));
+        assertThat(mDatabase.productDao().loadProductSync(20).getId(), is(20));
+        assertThat(mDatabase.commentDao().loadCommentsSync(20).size(), is(1));
+    }
+
+    @Test
+    public void seededProductsAreSearchable() {
+        new DatabaseSeeder(mDatabase, DatabaseSeeder.DEFAULT_CHUNK_SIZE).seed(
+                DataGenerator.streamProducts(DataGenerator.PRODUCT_COUNT),
+                (product, out) -> { },
+                null);
+
+        assertThat(mDatabase.productDao().searchAllProductsSync("Monocle").size(), is(5));
+    }
+}
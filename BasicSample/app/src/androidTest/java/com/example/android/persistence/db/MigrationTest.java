@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import static com.example.android.persistence.db.AppDatabase.MIGRATION_2_3;
+import static com.example.android.persistence.db.AppDatabase.MIGRATION_3_4;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test the migrations of {@link AppDatabase} against the exported schemas.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TEST_DB_NAME = "migration-test-db";
+
+    // Helper for creating Room databases and migrations
+    @Rule
+    public MigrationTestHelper mMigrationTestHelper =
+            new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+                    AppDatabase.class.getCanonicalName(),
+                    new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migrationFrom2To3_rebuildsFullTextIndexWithPrefixes() throws IOException {
+        // Create the database in version 2, with the products but an empty full-text index
+        SupportSQLiteDatabase db = mMigrationTestHelper.createDatabase(TEST_DB_NAME, 2);
+        insertProduct(db, 1, "Rubber chicken", "Squeaks");
+        insertProduct(db, 2, "Paper clip", "Holds paper");
+        db.execSQL("INSERT INTO productsFts(productsFts) VALUES ('delete-all')");
+        db.close();
+
+        // MigrationTestHelper checks the FTS options, prefix included, against 3.json
+        db = mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 3, true, MIGRATION_2_3);
+
+        // The index was rebuilt from the products
+        assertThat(search(db, "rub*"), is(Arrays.asList(1)));
+        assertThat(search(db, "paper"), is(Arrays.asList(2)));
+        assertThat(search(db, "squeaks"), is(Arrays.asList(1)));
+    }
+
+    @Test
+    public void migrationFrom3To4_pagesCommentsOverTheNewIndex() throws IOException {
+        SupportSQLiteDatabase db = mMigrationTestHelper.createDatabase(TEST_DB_NAME, 3);
+        insertProduct(db, 1, "Rubber chicken", "Squeaks");
+        insertComment(db, 1, 1, 1000);
+        insertComment(db, 2, 1, 2000);
+        db.close();
+
+        // MigrationTestHelper checks the indices against 4.json
+        db = mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, true, MIGRATION_3_4);
+
+        // The comments are kept, and paging them newest first reads the index in order
+        String page = "SELECT id FROM comments WHERE productId = 1 ORDER BY postedAt DESC";
+        assertThat(queryIds(db, page), is(Arrays.asList(2, 1)));
+        String plan = queryPlan(db, page);
+        assertThat(plan, containsString("index_comments_productId_postedAt"));
+        assertThat(plan.contains("TEMP B-TREE"), is(false));
+    }
+
+    private static void insertProduct(SupportSQLiteDatabase db, int id, String name,
+            String description) {
+        ContentValues values = new ContentValues();
+        values.put("id", id);
+        values.put("name", name);
+        values.put("description", description);
+        values.put("price", 10);
+        db.insert("products", SQLiteDatabase.CONFLICT_REPLACE, values);
+    }
+
+    private static void insertComment(SupportSQLiteDatabase db, int id, int productId,
+            long postedAt) {
+        ContentValues values = new ContentValues();
+        values.put("id", id);
+        values.put("productId", productId);
+        values.put("text", "comment " + id);
+        values.put("postedAt", postedAt);
+        db.insert("comments", SQLiteDatabase.CONFLICT_REPLACE, values);
+    }
+
+    private static List<Integer> search(SupportSQLiteDatabase db, String query) {
+        return queryIds(db, "SELECT rowid FROM productsFts WHERE productsFts MATCH ? "
+                + "ORDER BY rowid", query);
+    }
+
+    private static List<Integer> queryIds(SupportSQLiteDatabase db, String sql,
+            Object... args) {
+        List<Integer> ids = new ArrayList<>();
+        Cursor cursor = db.query(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private static String queryPlan(SupportSQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.query("EXPLAIN QUERY PLAN " + sql);
+        try {
+            while (cursor.moveToNext()) {
+                // The detail is the last column on every SQLite version
+                plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import android.content.Context;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.example.android.persistence.db.entity.ProductEntity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Test that the database the build generates opens as {@link AppDatabase}. Room checks the
+ * identity hash of a copied database against the compiled schema, so this fails when the asset
+ * was generated from a different schema than the app was compiled with.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PrepackagedDatabaseTest {
+
+    private static final String TEST_DB_NAME = "prepackaged-test-db";
+
+    private Context mContext;
+
+    private AppDatabase mDatabase;
+
+    @Before
+    public void deleteDb() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mContext.deleteDatabase(TEST_DB_NAME);
+    }
+
+    @After
+    public void closeDb() {
+        if (mDatabase != null) {
+            mDatabase.close();
+        }
+        mContext.deleteDatabase(TEST_DB_NAME);
+    }
+
+    @Test
+    public void openFromAsset_readsProducts() {
+        mDatabase = Room.databaseBuilder(mContext, AppDatabase.class, TEST_DB_NAME)
+                .createFromAsset(AppDatabase.PREPACKAGED_DATABASE_ASSET)
+                .build();
+
+        List<ProductEntity> products = mDatabase.productDao().loadProductsAfter(0, 1);
+
+        assertThat(products.size(), is(1));
+        ProductEntity product = mDatabase.productDao().loadProductSync(products.get(0).getId());
+        assertThat(product, notNullValue());
+        assertThat(product.getName(), notNullValue());
+    }
+}
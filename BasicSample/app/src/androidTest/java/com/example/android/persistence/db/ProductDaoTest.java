@@ -16,9 +16,12 @@
 
 package com.example.android.persistence.db;
 
+import static com.example.android.persistence.db.TestData.COMMENT_ENTITY;
 import static com.example.android.persistence.db.TestData.PRODUCTS;
 import static com.example.android.persistence.db.TestData.PRODUCT_ENTITY;
+import static com.example.android.persistence.db.TestData.PRODUCT_ENTITY2;
 
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 import static org.hamcrest.Matchers.is;
@@ -30,6 +33,7 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.example.android.persistence.LiveDataTestUtil;
 import com.example.android.persistence.db.dao.ProductDao;
 import com.example.android.persistence.db.entity.ProductEntity;
+import com.example.android.persistence.model.ProductSummary;
 
 import org.junit.After;
 import org.junit.Before;
@@ -37,6 +41,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -99,4 +104,45 @@ public class ProductDaoTest {
         assertThat(product.getPrice(), is(PRODUCT_ENTITY.getPrice()));
     }
 
+    @Test
+    public void searchProductsRanked() {
+        mProductDao.insertAll(PRODUCTS);
+
+        ProductSearchResult result = ProductSearchResult.search(mProductDao, "name*", 1);
+
+        assertThat(result.getCount(), is(PRODUCTS.size()));
+        assertThat(result.getTopHits().size(), is(1));
+        assertTrue(result.getTopHits().get(0).snippet.contains("<b>"));
+        assertThat(result.loadHits(mProductDao, 1, 10).size(), is(1));
+    }
+
+    @Test
+    public void getProductPagesByKey() {
+        mProductDao.insertAll(PRODUCTS);
+
+        List<ProductEntity> after = mProductDao.loadProductsAfter(PRODUCT_ENTITY.getId(), 10);
+        List<ProductEntity> before = mProductDao.loadProductsBefore(PRODUCT_ENTITY2.getId(), 10);
+
+        assertThat(after.size(), is(1));
+        assertThat(after.get(0).getId(), is(PRODUCT_ENTITY2.getId()));
+        assertThat(before.size(), is(1));
+        assertThat(before.get(0).getId(), is(PRODUCT_ENTITY.getId()));
+    }
+
+    @Test
+    public void getProductSummariesWithCommentCounts() {
+        mProductDao.insertAll(PRODUCTS);
+        mDatabase.commentDao().insertAll(Collections.singletonList(COMMENT_ENTITY));
+
+        List<ProductSummary> summaries =
+                mProductDao.loadProductSummariesAfter(Integer.MIN_VALUE, 10);
+
+        assertThat(summaries.size(), is(2));
+        assertThat(summaries.get(0).getId(), is(PRODUCT_ENTITY.getId()));
+        assertThat(summaries.get(0).getCommentCount(), is(1));
+        assertThat(summaries.get(0).getLastCommentAt(), is(COMMENT_ENTITY.getPostedAt()));
+        assertThat(summaries.get(1).getId(), is(PRODUCT_ENTITY2.getId()));
+        assertThat(summaries.get(1).getCommentCount(), is(0));
+        assertNull(summaries.get(1).getLastCommentAt());
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import static com.example.android.persistence.db.TestData.PRODUCTS;
+import static com.example.android.persistence.db.TestData.PRODUCT_ENTITY;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import androidx.room.Room;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.example.android.persistence.db.dao.ProductDao;
+import com.example.android.persistence.db.tracing.QueryStats;
+import com.example.android.persistence.db.tracing.QueryTracer;
+import com.example.android.persistence.db.tracing.SlowQuery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks what {@link QueryTracer} records for the statements Room runs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryTracerTest {
+
+    private static final String LOAD_PRODUCT = "select * from products where id = ?";
+
+    // Every statement counts as slow, so each one is explained
+    private final QueryTracer mTracer = new QueryTracer(0);
+
+    private AppDatabase mDatabase;
+
+    private ProductDao mProductDao;
+
+    @Before
+    public void initDb() throws Exception {
+        mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(),
+                AppDatabase.class)
+                .openHelperFactory(mTracer.wrap(new FrameworkSQLiteOpenHelperFactory()))
+                // allowing main thread queries, just for testing
+                .allowMainThreadQueries()
+                .build();
+        mProductDao = mDatabase.productDao();
+        mProductDao.insertAll(PRODUCTS);
+        mTracer.reset();
+    }
+
+    @After
+    public void closeDb() throws Exception {
+        mDatabase.close();
+    }
+
+    @Test
+    public void recordsEveryRunOfAQuery() {
+        mProductDao.loadProductSync(PRODUCT_ENTITY.getId());
+        mProductDao.loadProductSync(PRODUCT_ENTITY.getId());
+        mProductDao.loadProductSync(-1);
+
+        QueryStats stats = mTracer.getQueryStats(LOAD_PRODUCT);
+        assertThat(stats, notNullValue());
+        assertThat(stats.getCount(), is(3L));
+        assertThat(stats.getRows(), is(2L));
+        assertThat(stats.getPercentileNanos(100), is(stats.getMaxNanos()));
+    }
+
+    @Test
+    public void explainsSlowQueries() {
+        mProductDao.loadProductSync(PRODUCT_ENTITY.getId());
+
+        List<String> plans = new ArrayList<>();
+        for (SlowQuery slowQuery : mTracer.getSlowQueries()) {
+            if (slowQuery.getSql().equals(LOAD_PRODUCT)) {
+                plans.addAll(slowQuery.getPlan());
+            }
+        }
+        assertThat(plans, hasItem(startsWith("SEARCH")));
+    }
+
+    @Test
+    public void recordsTransactions() {
+        mProductDao.insertAll(PRODUCTS);
+
+        // Room's invalidation tracker may run transactions of its own
+        assertThat(mTracer.getTransactionStats().getCount(), greaterThanOrEqualTo(1L));
+    }
+}
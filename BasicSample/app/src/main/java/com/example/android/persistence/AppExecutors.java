@@ -18,47 +18,95 @@ package com.example.android.persistence;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import androidx.annotation.NonNull;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 /**
  * Global executor pools for the whole application.
  * <p>
  * Grouping tasks like this avoids the effects of task starvation (e.g. disk reads don't wait behind
- * webservice requests).
+ * webservice requests). The background pools record queue depth, wait and run times, which
+ * {@link #getStats()} reports; use a {@link Builder} to size them.
  */
 public class AppExecutors {
 
-    private final Executor mDiskIO;
+    private final InstrumentedExecutor mDiskIO;
 
-    private final Executor mNetworkIO;
+    private final InstrumentedExecutor mDiskRead;
+
+    private final InstrumentedExecutor mNetworkIO;
+
+    private final InstrumentedExecutor mListDiff;
 
     private final Executor mMainThread;
 
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+    private AppExecutors(InstrumentedExecutor diskIO, InstrumentedExecutor diskRead,
+            InstrumentedExecutor networkIO, InstrumentedExecutor listDiff, Executor mainThread) {
         this.mDiskIO = diskIO;
+        this.mDiskRead = diskRead;
         this.mNetworkIO = networkIO;
+        this.mListDiff = listDiff;
         this.mMainThread = mainThread;
     }
 
     public AppExecutors() {
-        this(Executors.newSingleThreadExecutor(), Executors.newFixedThreadPool(3),
+        this(new Builder());
+    }
+
+    private AppExecutors(Builder builder) {
+        this(new InstrumentedExecutor("diskIO", builder.mDiskThreads, builder.mDiskQueueCapacity,
+                        builder.mDiskPriority),
+                new InstrumentedExecutor("diskRead", builder.mReadThreads,
+                        builder.mReadQueueCapacity, builder.mReadPriority),
+                new InstrumentedExecutor("networkIO", builder.mNetworkThreads,
+                        builder.mNetworkQueueCapacity, builder.mNetworkPriority),
+                new InstrumentedExecutor("listDiff", builder.mDiffThreads,
+                        builder.mDiffQueueCapacity, builder.mDiffPriority),
                 new MainThreadExecutor());
     }
 
+    /**
+     * A single thread for long database writes, such as seeding. Room writes on whatever thread
+     * calls it, so only the work queued here is serialized.
+     */
     public Executor diskIO() {
         return mDiskIO;
     }
 
+    /**
+     * A pool for database reads. With write-ahead logging they run in parallel with each other
+     * and with the one write SQLite lets through at a time.
+     */
+    public Executor diskRead() {
+        return mDiskRead;
+    }
+
     public Executor networkIO() {
         return mNetworkIO;
     }
 
+    /**
+     * A thread for diffing lists before they are shown, kept apart from {@link #diskRead()} so
+     * that a long diff doesn't hold up queries.
+     */
+    public Executor listDiff() {
+        return mListDiff;
+    }
+
     public Executor mainThread() {
         return mMainThread;
     }
 
+    /** Returns a snapshot of the counters of every background pool. */
+    @NonNull
+    public List<InstrumentedExecutor.Stats> getStats() {
+        return Arrays.asList(mDiskIO.getStats(), mDiskRead.getStats(), mNetworkIO.getStats(),
+                mListDiff.getStats());
+    }
+
     private static class MainThreadExecutor implements Executor {
         private Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
@@ -67,4 +115,77 @@ public class AppExecutors {
             mainThreadHandler.post(command);
         }
     }
+
+    /**
+     * Configures the pools. By default disk IO is a single thread, so work queued on it runs in
+     * order, disk reads use four threads, as many as SQLite's default WAL connection pool has
+     * connections, network IO uses three threads, and list diffing a single thread at background
+     * priority; all of them have unbounded queues.
+     */
+    public static class Builder {
+
+        private int mDiskThreads = 1;
+        private int mDiskQueueCapacity = InstrumentedExecutor.UNBOUNDED;
+        private int mDiskPriority = Process.THREAD_PRIORITY_DEFAULT;
+
+        private int mReadThreads = 4;
+        private int mReadQueueCapacity = InstrumentedExecutor.UNBOUNDED;
+        private int mReadPriority = Process.THREAD_PRIORITY_DEFAULT;
+
+        private int mNetworkThreads = 3;
+        private int mNetworkQueueCapacity = InstrumentedExecutor.UNBOUNDED;
+        private int mNetworkPriority = Process.THREAD_PRIORITY_DEFAULT;
+
+        private int mDiffThreads = 1;
+        private int mDiffQueueCapacity = InstrumentedExecutor.UNBOUNDED;
+        private int mDiffPriority = Process.THREAD_PRIORITY_BACKGROUND;
+
+        /**
+         * @param threadPriority an {@link Process} thread priority, such as
+         *                       {@link Process#THREAD_PRIORITY_BACKGROUND}.
+         */
+        public Builder setDiskIO(int threads, int queueCapacity, int threadPriority) {
+            mDiskThreads = threads;
+            mDiskQueueCapacity = queueCapacity;
+            mDiskPriority = threadPriority;
+            return this;
+        }
+
+        /**
+         * @param threadPriority an {@link Process} thread priority, such as
+         *                       {@link Process#THREAD_PRIORITY_BACKGROUND}.
+         */
+        public Builder setDiskRead(int threads, int queueCapacity, int threadPriority) {
+            mReadThreads = threads;
+            mReadQueueCapacity = queueCapacity;
+            mReadPriority = threadPriority;
+            return this;
+        }
+
+        /**
+         * @param threadPriority an {@link Process} thread priority, such as
+         *                       {@link Process#THREAD_PRIORITY_BACKGROUND}.
+         */
+        public Builder setNetworkIO(int threads, int queueCapacity, int threadPriority) {
+            mNetworkThreads = threads;
+            mNetworkQueueCapacity = queueCapacity;
+            mNetworkPriority = threadPriority;
+            return this;
+        }
+
+        /**
+         * @param threadPriority an {@link Process} thread priority, such as
+         *                       {@link Process#THREAD_PRIORITY_BACKGROUND}.
+         */
+        public Builder setListDiff(int threads, int queueCapacity, int threadPriority) {
+            mDiffThreads = threads;
+            mDiffQueueCapacity = queueCapacity;
+            mDiffPriority = threadPriority;
+            return this;
+        }
+
+        public AppExecutors build() {
+            return new AppExecutors(this);
+        }
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.PagingState;
+import androidx.paging.rxjava2.RxPagingSource;
+import com.example.android.persistence.db.AppDatabase;
+import com.example.android.persistence.db.dao.CommentDao;
+import com.example.android.persistence.db.entity.CommentEntity;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Pages through the comments of one product, newest first.
+ * <p>
+ * The key is the comment at the edge of the loaded range, and pages are read with a range scan on
+ * the (productId, postedAt) index that starts right after it. The first page is available as soon
+ * as the newest comments have been read, however many comments the product has. The source
+ * invalidates itself when the comments table changes.
+ */
+public class CommentPagingSource extends RxPagingSource<CommentEntity, CommentEntity> {
+
+    private final AppDatabase mDatabase;
+
+    private final int mProductId;
+
+    public CommentPagingSource(AppDatabase database, int productId) {
+        mDatabase = database;
+        mProductId = productId;
+        PagingSourceInvalidator.install(database.getInvalidationTracker(), this, "comments");
+    }
+
+    @NonNull
+    @Override
+    public Single<LoadResult<CommentEntity, CommentEntity>> loadSingle(
+            @NonNull LoadParams<CommentEntity> params) {
+        return Single.fromCallable(() -> load(params))
+                .subscribeOn(Schedulers.from(mDatabase.getQueryExecutor()));
+    }
+
+    private LoadResult<CommentEntity, CommentEntity> load(LoadParams<CommentEntity> params) {
+        CommentEntity key = params.getKey();
+        int limit = params.getLoadSize();
+        if (params instanceof LoadParams.Prepend) {
+            List<CommentEntity> comments = loadNewer(key, limit);
+            Collections.reverse(comments);
+            return page(comments, comments.size() < limit, false);
+        }
+        List<CommentEntity> comments = loadOlder(key, limit);
+        return page(comments, key == null, comments.size() < limit);
+    }
+
+    /**
+     * Loads the comments after {@code key}, newest first. Comments without a date come after all
+     * the dated ones, so they fill the rest of the page once those run out.
+     */
+    private List<CommentEntity> loadOlder(@Nullable CommentEntity key, int limit) {
+        CommentDao dao = mDatabase.commentDao();
+        if (key != null && key.getPostedAt() == null) {
+            return dao.loadOlderUndatedComments(mProductId, key.getId(), limit);
+        }
+        List<CommentEntity> comments = key == null
+                ? dao.loadOlderComments(mProductId, Long.MAX_VALUE, Integer.MAX_VALUE, limit)
+                : dao.loadOlderComments(mProductId, key.getPostedAt().getTime(), key.getId(),
+                        limit);
+        if (comments.size() < limit) {
+            comments.addAll(dao.loadOlderUndatedComments(mProductId, Integer.MAX_VALUE,
+                    limit - comments.size()));
+        }
+        return comments;
+    }
+
+    /**
+     * Loads the comments before {@code key}, oldest first: from an undated key the remaining
+     * undated comments, then the dated ones from the oldest.
+     */
+    private List<CommentEntity> loadNewer(@NonNull CommentEntity key, int limit) {
+        CommentDao dao = mDatabase.commentDao();
+        if (key.getPostedAt() != null) {
+            return dao.loadNewerComments(mProductId, key.getPostedAt().getTime(), key.getId(),
+                    limit);
+        }
+        List<CommentEntity> comments = dao.loadNewerUndatedComments(mProductId, key.getId(),
+                limit);
+        if (comments.size() < limit) {
+            comments.addAll(dao.loadNewerComments(mProductId, Long.MIN_VALUE, Integer.MIN_VALUE,
+                    limit - comments.size()));
+        }
+        return comments;
+    }
+
+    private static LoadResult<CommentEntity, CommentEntity> page(List<CommentEntity> comments,
+            boolean isNewest, boolean isOldest) {
+        if (comments.isEmpty()) {
+            return new LoadResult.Page<>(comments, null, null);
+        }
+        CommentEntity prevKey = isNewest ? null : comments.get(0);
+        CommentEntity nextKey = isOldest ? null : comments.get(comments.size() - 1);
+        return new LoadResult.Page<>(comments, prevKey, nextKey);
+    }
+
+    /**
+     * Restarts after an invalidation from the comment shown just above the anchor, so the
+     * refreshed page begins where the user was reading.
+     */
+    @Nullable
+    @Override
+    public CommentEntity getRefreshKey(@NonNull PagingState<CommentEntity, CommentEntity> state) {
+        Integer anchorPosition = state.getAnchorPosition();
+        if (anchorPosition == null || anchorPosition == 0) {
+            return null;
+        }
+        return state.closestItemToPosition(anchorPosition - 1);
+    }
+}
@@ -1,11 +1,28 @@
 package com.example.android.persistence;
 
+import android.util.SparseIntArray;
+
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+import androidx.room.InvalidationTracker;
+import com.example.android.persistence.cache.CachedEntityLiveData;
+import com.example.android.persistence.cache.EntityCache;
 import com.example.android.persistence.db.AppDatabase;
+import com.example.android.persistence.db.ChangeFeed;
+import com.example.android.persistence.db.ProductColumns;
+import com.example.android.persistence.db.ProductSearchResult;
+import com.example.android.persistence.db.StringTable;
 import com.example.android.persistence.db.entity.CommentEntity;
 import com.example.android.persistence.db.entity.ProductEntity;
+import com.example.android.persistence.model.ProductSummary;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -13,12 +30,48 @@ import java.util.List;
  */
 public class DataRepository {
 
+    private static final int PAGE_SIZE = 50;
+
+    private static final int MAX_BOUND_IDS = 500;
+
+    private static final int PRODUCT_CACHE_SIZE = 256;
+
+    private static final int COMMENT_CACHE_SIZE = 64;
+
+    // A product has a name and a description, so a string table with more than this many strings
+    // per product mostly holds values that have since been changed
+    private static final int MAX_STRINGS_PER_PRODUCT = 4;
+
     private static DataRepository sInstance;
 
     private final AppDatabase mDatabase;
     private MediatorLiveData<List<ProductEntity>> mObservableProducts;
 
-    private DataRepository(final AppDatabase database) {
+    // Shared by the product lists read in columns, so each distinct name is only kept once.
+    // Replaced by an empty table once it has outgrown the products, see stringTable().
+    private final Object mStringTableLock = new Object();
+    private StringTable mStringTable = new StringTable();
+    private boolean mProductsChanged;
+
+    private final EntityCache<ProductEntity> mProductCache =
+            new EntityCache<>(PRODUCT_CACHE_SIZE);
+    private final EntityCache<List<CommentEntity>> mCommentCache =
+            new EntityCache<>(COMMENT_CACHE_SIZE);
+
+    private final ChangeFeed.Observer mChangeObserver = (table, keys) -> {
+        if ("products".equals(table)) {
+            synchronized (mStringTableLock) {
+                mProductsChanged = true;
+            }
+        }
+        EntityCache<?> cache = "products".equals(table) ? mProductCache : mCommentCache;
+        for (int key : keys) {
+            cache.invalidate(key);
+        }
+    };
+
+    @VisibleForTesting
+    DataRepository(final AppDatabase database) {
         mDatabase = database;
         mObservableProducts = new MediatorLiveData<>();
 
@@ -28,6 +81,9 @@ public class DataRepository {
                         mObservableProducts.postValue(productEntities);
                     }
                 });
+
+        // Drop only the cached entities whose rows changed
+        mDatabase.getChangeFeed().addObserver(mChangeObserver);
     }
 
     public static DataRepository getInstance(final AppDatabase database) {
@@ -48,15 +104,136 @@ public class DataRepository {
         return mObservableProducts;
     }
 
+    /**
+     * Get the product summaries page by page, in id order. Only the pages around what is on
+     * screen are loaded, and only those are reloaded when the data changes.
+     */
+    public LiveData<PagingData<ProductSummary>> getProductPages() {
+        final Pager<Integer, ProductSummary> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE, PAGE_SIZE, false), null,
+                () -> new ProductPagingSource(mDatabase));
+        // Like getProducts(), wait until the database has been pre-populated
+        return Transformations.switchMap(mDatabase.getDatabaseCreated(),
+                created -> PagingLiveData.getLiveData(pager));
+    }
+
+    /**
+     * Get a product and get notified when it changes. Products that were loaded recently are
+     * served from memory.
+     */
     public LiveData<ProductEntity> loadProduct(final int productId) {
-        return mDatabase.productDao().loadProduct(productId);
+        return new CachedEntityLiveData<>(mProductCache, productId,
+                mDatabase.getQueryExecutor(), mDatabase.productDao()::loadProductSync);
     }
 
+    /**
+     * Get all comments of a product and get notified when they change. Comments of products that
+     * were loaded recently are served from memory.
+     */
     public LiveData<List<CommentEntity>> loadComments(final int productId) {
-        return mDatabase.commentDao().loadComments(productId);
+        return new CachedEntityLiveData<>(mCommentCache, productId,
+                mDatabase.getQueryExecutor(), mDatabase.commentDao()::loadCommentsSync);
+    }
+
+    /** The product cache, for reading its hit, miss and eviction counts. */
+    public EntityCache<ProductEntity> getProductCache() {
+        return mProductCache;
+    }
+
+    /** The comment cache, for reading its hit, miss and eviction counts. */
+    public EntityCache<List<CommentEntity>> getCommentCache() {
+        return mCommentCache;
+    }
+
+    /**
+     * Get the comments of a product page by page, newest first. The first page is shown
+     * immediately and older pages are loaded as the user scrolls.
+     */
+    public LiveData<PagingData<CommentEntity>> getCommentPages(final int productId) {
+        Pager<CommentEntity, CommentEntity> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE, PAGE_SIZE, false), null,
+                () -> new CommentPagingSource(mDatabase, productId));
+        return PagingLiveData.getLiveData(pager);
     }
 
     public LiveData<List<ProductEntity>> searchProducts(String query) {
         return mDatabase.productDao().searchAllProducts(query);
     }
+
+    /**
+     * Ranks the products matching {@code query} and loads snippets for the best {@code limit}
+     * of them, on the calling thread. More can be loaded from the result as the user scrolls.
+     */
+    public ProductSearchResult searchProductsRanked(String query, int limit) {
+        return ProductSearchResult.search(mDatabase.productDao(), query, limit);
+    }
+
+    /** Loads more hits of a ranked search on the calling thread. */
+    public List<ProductSearchResult.Hit> loadSearchHits(ProductSearchResult result, int from,
+            int count) {
+        return result.loadHits(mDatabase.productDao(), from, count);
+    }
+
+    /**
+     * Runs a full-text search on the calling thread. The strings of the results are shared with
+     * every other list returned by this and {@link #loadProductColumnsSync(int[])}.
+     */
+    public ProductColumns searchProductColumnsSync(String query) {
+        return new ProductColumns.Builder(stringTable(), 0)
+                .addAll(mDatabase.productDao().searchProductColumns(query))
+                .build();
+    }
+
+    /**
+     * Loads the given products on the calling thread, in the order of {@code productIds}. Ids
+     * that don't exist anymore are skipped.
+     */
+    public ProductColumns loadProductColumnsSync(int[] productIds) {
+        ProductColumns.Builder builder = new ProductColumns.Builder(stringTable(),
+                productIds.length);
+        // Stay well below SQLite's limit of 999 bound variables per statement
+        for (int start = 0; start < productIds.length; start += MAX_BOUND_IDS) {
+            int[] chunk = Arrays.copyOfRange(productIds, start,
+                    Math.min(start + MAX_BOUND_IDS, productIds.length));
+            builder.addAll(mDatabase.productDao().loadProductColumns(chunk));
+        }
+        ProductColumns loaded = builder.build();
+        SparseIntArray positions = new SparseIntArray(loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            positions.put(loaded.getId(i), i);
+        }
+        int[] order = new int[loaded.size()];
+        int count = 0;
+        for (int productId : productIds) {
+            int position = positions.get(productId, -1);
+            if (position >= 0) {
+                order[count++] = position;
+            }
+        }
+        return loaded.select(order, count);
+    }
+
+    /**
+     * The string table for the next list read in columns. Strings are never removed from a
+     * table, so after the products changed, a table that holds many more strings than the
+     * products do is dropped and the next lists start a new one. Lists read before keep theirs,
+     * and are then compared with the new ones by value.
+     */
+    private StringTable stringTable() {
+        synchronized (mStringTableLock) {
+            if (mProductsChanged) {
+                mProductsChanged = false;
+                int products = mDatabase.productDao().countProducts();
+                if (mStringTable.size() > MAX_STRINGS_PER_PRODUCT * Math.max(products, 1)) {
+                    mStringTable = new StringTable();
+                }
+            }
+            return mStringTable;
+        }
+    }
+
+    /** Lets callers that cache query results find out when the underlying tables change. */
+    public InvalidationTracker getInvalidationTracker() {
+        return mDatabase.getInvalidationTracker();
+    }
 }
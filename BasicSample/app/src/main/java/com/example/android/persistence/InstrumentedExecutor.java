@@ -0,0 +1,229 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed size thread pool that records how long tasks wait in its queue and how long they run.
+ * <p>
+ * Tasks that don't fit into a bounded queue are counted and rejected with a
+ * {@link RejectedExecutionException}, as a plain {@link ThreadPoolExecutor} would.
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor {
+
+    /** A queue capacity without a bound. */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private final String mName;
+
+    private long mSubmittedCount;
+    private long mCompletedCount;
+    private long mRejectedCount;
+    private int mMaxQueueDepth;
+    private long mTotalWaitNanos;
+    private long mMaxWaitNanos;
+    private long mTotalRunNanos;
+    private long mMaxRunNanos;
+
+    /**
+     * @param threadPriority an {@link Process} thread priority, such as
+     *                       {@link Process#THREAD_PRIORITY_BACKGROUND}.
+     */
+    public InstrumentedExecutor(@NonNull String name, int threads, int queueCapacity,
+            int threadPriority) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new PriorityThreadFactory(name, threadPriority));
+        mName = name;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        TimedTask task = new TimedTask(command);
+        synchronized (this) {
+            mSubmittedCount++;
+        }
+        try {
+            super.execute(task);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                mSubmittedCount--;
+                mRejectedCount++;
+            }
+            throw e;
+        }
+        int depth = getQueue().size();
+        synchronized (this) {
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, depth);
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /** Returns a snapshot of the counters since the pool was created. */
+    @NonNull
+    public synchronized Stats getStats() {
+        return new Stats(mName, getQueue().size(), mMaxQueueDepth, mSubmittedCount,
+                mCompletedCount, mRejectedCount, mTotalWaitNanos, mMaxWaitNanos, mTotalRunNanos,
+                mMaxRunNanos);
+    }
+
+    private synchronized void onTaskFinished(long waitNanos, long runNanos) {
+        mCompletedCount++;
+        mTotalWaitNanos += waitNanos;
+        mMaxWaitNanos = Math.max(mMaxWaitNanos, waitNanos);
+        mTotalRunNanos += runNanos;
+        mMaxRunNanos = Math.max(mMaxRunNanos, runNanos);
+    }
+
+    private class TimedTask implements Runnable {
+
+        private final Runnable mTask;
+
+        private final long mEnqueuedNanos = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                mTask.run();
+            } finally {
+                onTaskFinished(start - mEnqueuedNanos, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class PriorityThreadFactory implements ThreadFactory {
+
+        private final String mName;
+
+        private final int mPriority;
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        PriorityThreadFactory(String name, int priority) {
+            mName = name;
+            mPriority = priority;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(mPriority);
+                runnable.run();
+            }, mName + "-" + mCount.incrementAndGet());
+        }
+    }
+
+    /** Counters of an {@link InstrumentedExecutor} at one point in time. */
+    public static class Stats {
+
+        private final String mName;
+        private final int mQueueDepth;
+        private final int mMaxQueueDepth;
+        private final long mSubmittedCount;
+        private final long mCompletedCount;
+        private final long mRejectedCount;
+        private final long mTotalWaitNanos;
+        private final long mMaxWaitNanos;
+        private final long mTotalRunNanos;
+        private final long mMaxRunNanos;
+
+        Stats(String name, int queueDepth, int maxQueueDepth, long submittedCount,
+                long completedCount, long rejectedCount, long totalWaitNanos, long maxWaitNanos,
+                long totalRunNanos, long maxRunNanos) {
+            mName = name;
+            mQueueDepth = queueDepth;
+            mMaxQueueDepth = maxQueueDepth;
+            mSubmittedCount = submittedCount;
+            mCompletedCount = completedCount;
+            mRejectedCount = rejectedCount;
+            mTotalWaitNanos = totalWaitNanos;
+            mMaxWaitNanos = maxWaitNanos;
+            mTotalRunNanos = totalRunNanos;
+            mMaxRunNanos = maxRunNanos;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /** Tasks waiting for a thread when the snapshot was taken. */
+        public int getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return mMaxQueueDepth;
+        }
+
+        public long getSubmittedCount() {
+            return mSubmittedCount;
+        }
+
+        public long getCompletedCount() {
+            return mCompletedCount;
+        }
+
+        public long getRejectedCount() {
+            return mRejectedCount;
+        }
+
+        public long getAverageWaitMillis() {
+            return mCompletedCount == 0 ? 0
+                    : TimeUnit.NANOSECONDS.toMillis(mTotalWaitNanos / mCompletedCount);
+        }
+
+        public long getMaxWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mMaxWaitNanos);
+        }
+
+        public long getAverageRunMillis() {
+            return mCompletedCount == 0 ? 0
+                    : TimeUnit.NANOSECONDS.toMillis(mTotalRunNanos / mCompletedCount);
+        }
+
+        public long getMaxRunMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mMaxRunNanos);
+        }
+
+        @Override
+        public String toString() {
+            return mName + "[queued=" + mQueueDepth + ",maxQueued=" + mMaxQueueDepth
+                    + ",submitted=" + mSubmittedCount + ",completed=" + mCompletedCount
+                    + ",rejected=" + mRejectedCount + ",waitMs(avg/max)="
+                    + getAverageWaitMillis() + "/" + getMaxWaitMillis() + ",runMs(avg/max)="
+                    + getAverageRunMillis() + "/" + getMaxRunMillis() + "]";
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingSource;
+import androidx.room.InvalidationTracker;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+
+import kotlin.Unit;
+
+/**
+ * Invalidates a {@link PagingSource} when any of its tables change, without the
+ * {@link InvalidationTracker} keeping the source, and the DAOs it uses, reachable.
+ * <p>
+ * The observer is removed as soon as the source is invalidated, for whatever reason. A source
+ * that is dropped without being invalidated, as when nothing collects its pager any more, is only
+ * weakly referenced, and its observer removes itself at the next change of the tables.
+ */
+final class PagingSourceInvalidator extends InvalidationTracker.Observer {
+
+    private final InvalidationTracker mTracker;
+
+    private final WeakReference<PagingSource<?, ?>> mSource;
+
+    private PagingSourceInvalidator(InvalidationTracker tracker, PagingSource<?, ?> source,
+            String[] tables) {
+        super(tables);
+        mTracker = tracker;
+        mSource = new WeakReference<PagingSource<?, ?>>(source);
+    }
+
+    /** Invalidates {@code source} at the next change of any of {@code tables}. */
+    static void install(@NonNull final InvalidationTracker tracker,
+            @NonNull PagingSource<?, ?> source, @NonNull String... tables) {
+        final PagingSourceInvalidator observer =
+                new PagingSourceInvalidator(tracker, source, tables);
+        tracker.addObserver(observer);
+        source.registerInvalidatedCallback(() -> {
+            tracker.removeObserver(observer);
+            return Unit.INSTANCE;
+        });
+    }
+
+    @Override
+    public void onInvalidated(@NonNull Set<String> tables) {
+        PagingSource<?, ?> source = mSource.get();
+        if (source == null) {
+            mTracker.removeObserver(this);
+        } else {
+            // Removes this observer through the callback registered in install()
+            source.invalidate();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.PagingState;
+import androidx.paging.rxjava2.RxPagingSource;
+import com.example.android.persistence.db.AppDatabase;
+import com.example.android.persistence.db.dao.ProductDao;
+import com.example.android.persistence.model.ProductSummary;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Pages through the {@link ProductSummary summaries} of the products ordered by id, using the id
+ * of the first or last loaded product as the key.
+ * <p>
+ * Every page is a {@code WHERE id > ? LIMIT ?} (or {@code id < ?}) range scan on the primary key,
+ * so loading a page deep into the catalog costs the same as loading the first one, unlike an
+ * {@code OFFSET} that has to step over every preceding row. The source invalidates itself when
+ * the products or comments change.
+ */
+public class ProductPagingSource extends RxPagingSource<Integer, ProductSummary> {
+
+    private final AppDatabase mDatabase;
+
+    public ProductPagingSource(AppDatabase database) {
+        mDatabase = database;
+        PagingSourceInvalidator.install(database.getInvalidationTracker(), this, "products", "comments");
+    }
+
+    @NonNull
+    @Override
+    public Single<LoadResult<Integer, ProductSummary>> loadSingle(
+            @NonNull LoadParams<Integer> params) {
+        return Single.fromCallable(() -> load(params))
+                .subscribeOn(Schedulers.from(mDatabase.getQueryExecutor()));
+    }
+
+    private LoadResult<Integer, ProductSummary> load(LoadParams<Integer> params) {
+        ProductDao dao = mDatabase.productDao();
+        Integer key = params.getKey();
+        int limit = params.getLoadSize();
+        if (params instanceof LoadParams.Prepend) {
+            List<ProductSummary> products = dao.loadProductSummariesBefore(key, limit);
+            Collections.reverse(products);
+            return page(products, products.size() < limit, false);
+        }
+        List<ProductSummary> products =
+                dao.loadProductSummariesAfter(key == null ? Integer.MIN_VALUE : key, limit);
+        return page(products, key == null, products.size() < limit);
+    }
+
+    private static LoadResult<Integer, ProductSummary> page(List<ProductSummary> products,
+            boolean isFirst, boolean isLast) {
+        if (products.isEmpty()) {
+            return new LoadResult.Page<>(products, null, null);
+        }
+        Integer prevKey = isFirst ? null : products.get(0).getId();
+        Integer nextKey = isLast ? null : products.get(products.size() - 1).getId();
+        return new LoadResult.Page<>(products, prevKey, nextKey);
+    }
+
+    /**
+     * Restarts after an invalidation just before the product closest to what was on screen, so
+     * only the visible window is reloaded.
+     */
+    @Nullable
+    @Override
+    public Integer getRefreshKey(@NonNull PagingState<Integer, ProductSummary> state) {
+        Integer anchorPosition = state.getAnchorPosition();
+        if (anchorPosition == null) {
+            return null;
+        }
+        ProductSummary anchor = state.closestItemToPosition(anchorPosition);
+        return anchor == null ? null : anchor.getId() - 1;
+    }
+}
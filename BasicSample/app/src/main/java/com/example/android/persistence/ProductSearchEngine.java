@@ -0,0 +1,360 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.room.InvalidationTracker;
+import com.example.android.persistence.db.ProductColumns;
+import com.example.android.persistence.db.StringTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns the text typed in the search box into product search results.
+ * <p>
+ * Keystrokes are debounced, and a query that was superseded by a newer one before it ran is
+ * skipped; if it already ran, its results are dropped. Results are kept in an LRU cache of
+ * query to product ids. When the new query only extends the previous one, its results are a
+ * subset of the previous results, so they are filtered in memory instead of querying SQLite.
+ * Everything cached is dropped when the products table changes.
+ */
+public class ProductSearchEngine {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+
+    /** Total number of product ids kept across all cached queries. */
+    public static final int DEFAULT_CACHE_SIZE = 100_000;
+
+    private final DataRepository mRepository;
+
+    private final Executor mExecutor;
+
+    private final long mDebounceMillis;
+
+    private final Handler mHandler;
+
+    private final MutableLiveData<ProductColumns> mResults = new MutableLiveData<>();
+
+    private final LruCache<String, int[]> mCache;
+
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    @Nullable
+    private Runnable mPendingSearch;
+
+    @Nullable
+    private String mQuery;
+
+    // Last results, kept for narrowing, and the version of the products they were read from,
+    // which changes with the products table. Only touched while holding the lock.
+    private final Object mLock = new Object();
+    @Nullable
+    private String mLastQuery;
+    @Nullable
+    private ProductColumns mLastResults;
+    private int mDataVersion;
+
+    private final InvalidationTracker.Observer mObserver =
+            new InvalidationTracker.Observer("products") {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    onProductsChanged();
+                }
+            };
+
+    // Whether mObserver is registered, and whether it must no longer be. Guarded by mObserver,
+    // since registering and unregistering may run in either order on a pool.
+    private boolean mObserving;
+    private boolean mCancelled;
+
+    public ProductSearchEngine(DataRepository repository, Executor executor) {
+        this(repository, executor, DEFAULT_DEBOUNCE_MILLIS, DEFAULT_CACHE_SIZE);
+    }
+
+    public ProductSearchEngine(DataRepository repository, Executor executor, long debounceMillis,
+            int cacheSize) {
+        this(repository, executor, debounceMillis, cacheSize, Looper.getMainLooper());
+    }
+
+    /**
+     * @param looper runs the debounce and the refreshes after a change, and must be the looper
+     *               {@link #setQuery} is called on.
+     */
+    @VisibleForTesting
+    ProductSearchEngine(DataRepository repository, Executor executor, long debounceMillis,
+            int cacheSize, Looper looper) {
+        mRepository = repository;
+        mHandler = new Handler(looper);
+        mExecutor = executor;
+        mDebounceMillis = debounceMillis;
+        mCache = new LruCache<String, int[]>(cacheSize) {
+            @Override
+            protected int sizeOf(String query, int[] productIds) {
+                return Math.max(1, productIds.length);
+            }
+        };
+        // Registering an observer may touch the database, so keep it off the main thread
+        mExecutor.execute(() -> {
+            synchronized (mObserver) {
+                if (!mCancelled) {
+                    mRepository.getInvalidationTracker().addObserver(mObserver);
+                    mObserving = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Search results for the current query, or {@code null} while there is no query.
+     */
+    public LiveData<ProductColumns> getResults() {
+        return mResults;
+    }
+
+    /**
+     * Searches for {@code query} once the user has stopped typing for the debounce interval.
+     * An empty query clears the results immediately.
+     */
+    @MainThread
+    public void setQuery(@Nullable CharSequence query) {
+        String normalized = query == null ? "" : query.toString().trim();
+        mQuery = normalized;
+        final int generation = mGeneration.incrementAndGet();
+        if (mPendingSearch != null) {
+            mHandler.removeCallbacks(mPendingSearch);
+            mPendingSearch = null;
+        }
+        if (normalized.isEmpty()) {
+            mResults.setValue(null);
+            return;
+        }
+        mPendingSearch = () -> mExecutor.execute(() -> search(normalized, generation));
+        mHandler.postDelayed(mPendingSearch, mDebounceMillis);
+    }
+
+    /** Drops pending work and stops listening for changes. */
+    @MainThread
+    public void cancel() {
+        mGeneration.incrementAndGet();
+        if (mPendingSearch != null) {
+            mHandler.removeCallbacks(mPendingSearch);
+            mPendingSearch = null;
+        }
+        mExecutor.execute(() -> {
+            synchronized (mObserver) {
+                mCancelled = true;
+                if (mObserving) {
+                    mRepository.getInvalidationTracker().removeObserver(mObserver);
+                    mObserving = false;
+                }
+            }
+        });
+    }
+
+    public int getCacheHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getCacheMissCount() {
+        return mCache.missCount();
+    }
+
+    @WorkerThread
+    private void search(String query, int generation) {
+        if (generation != mGeneration.get()) {
+            // Superseded while waiting for the executor
+            return;
+        }
+        ProductColumns results = find(query);
+        if (generation == mGeneration.get()) {
+            mResults.postValue(results);
+        }
+    }
+
+    @WorkerThread
+    private ProductColumns find(String query) {
+        int version;
+        synchronized (mLock) {
+            version = mDataVersion;
+            if (query.equals(mLastQuery) && mLastResults != null) {
+                return mLastResults;
+            }
+            if (mLastQuery != null && mLastResults != null && query.startsWith(mLastQuery)
+                    && isPlain(mLastQuery) && isPlain(query)) {
+                return remember(query, version, narrow(mLastResults, query));
+            }
+        }
+        int[] cachedIds = mCache.get(query);
+        ProductColumns results = cachedIds != null
+                ? mRepository.loadProductColumnsSync(cachedIds)
+                : mRepository.searchProductColumnsSync("*" + query + "*");
+        synchronized (mLock) {
+            return remember(query, version, results);
+        }
+    }
+
+    /**
+     * Caches {@code results} unless the products changed since {@code version} was read, in
+     * which case they may be stale, and the refresh that the change posted reads them again.
+     * Must hold the lock.
+     */
+    private ProductColumns remember(String query, int version, ProductColumns results) {
+        if (version == mDataVersion) {
+            mCache.put(query, results.getIds());
+            mLastQuery = query;
+            mLastResults = results;
+        }
+        return results;
+    }
+
+    @VisibleForTesting
+    void onProductsChanged() {
+        synchronized (mLock) {
+            mDataVersion++;
+            mCache.evictAll();
+            mLastQuery = null;
+            mLastResults = null;
+        }
+        // Refresh whatever is on screen
+        mHandler.post(() -> {
+            if (mQuery != null && !mQuery.isEmpty()) {
+                setQuery(mQuery);
+            }
+        });
+    }
+
+    /**
+     * Keeps the products that match {@code query} the way the FTS4 simple tokenizer would: every
+     * term must be a token of the name or description, and the last one, which the search box
+     * turns into a prefix query, only has to start a token.
+     * <p>
+     * Names and descriptions repeat across products, so each distinct one is only tokenized
+     * once.
+     */
+    @VisibleForTesting
+    static ProductColumns narrow(ProductColumns products, String query) {
+        List<String> terms = tokenize(query);
+        SparseArray<List<String>> tokensByRef = new SparseArray<>();
+        int[] matches = new int[products.size()];
+        int count = 0;
+        for (int i = 0; i < products.size(); i++) {
+            List<String> nameTokens =
+                    tokens(tokensByRef, products.getNameRef(i), products.getName(i));
+            List<String> descriptionTokens = tokens(tokensByRef, products.getDescriptionRef(i),
+                    products.getDescription(i));
+            if (matches(nameTokens, descriptionTokens, terms)) {
+                matches[count++] = i;
+            }
+        }
+        return products.select(matches, count);
+    }
+
+    private static List<String> tokens(SparseArray<List<String>> tokensByRef, int ref,
+            @Nullable String text) {
+        if (ref == StringTable.NULL) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = tokensByRef.get(ref);
+        if (tokens == null) {
+            tokens = tokenize(text);
+            tokensByRef.put(ref, tokens);
+        }
+        return tokens;
+    }
+
+    private static boolean matches(List<String> nameTokens, List<String> descriptionTokens,
+            List<String> terms) {
+        for (int i = 0; i < terms.size(); i++) {
+            boolean prefix = i == terms.size() - 1;
+            if (!contains(nameTokens, terms.get(i), prefix)
+                    && !contains(descriptionTokens, terms.get(i), prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(List<String> tokens, String term, boolean prefix) {
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (prefix ? token.startsWith(term) : token.equals(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether {@code query} is only words, without anything the FTS query syntax would treat as
+     * an operator. Only such queries can be narrowed in memory.
+     */
+    private static boolean isPlain(String query) {
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c != ' ' && !Character.isLetterOrDigit(c)) {
+                return false;
+            }
+        }
+        for (String word : query.split(" ")) {
+            if (word.equals("OR") || word.equals("AND") || word.equals("NOT")
+                    || word.startsWith("NEAR")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Splits like the FTS simple tokenizer: on ASCII non-alphanumerics, folding ASCII case. */
+    private static List<String> tokenize(@Nullable String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && !Character.isLetterOrDigit(c)) {
+                if (token.length() > 0) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                token.append(c < 128 ? Character.toLowerCase(c) : c);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
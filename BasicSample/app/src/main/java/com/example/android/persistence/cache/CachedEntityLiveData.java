@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.cache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.LiveData;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link LiveData} for the entity with a given id that is served from an {@link EntityCache}
+ * when possible. It only queries the database on a cache miss, and again whenever its id is
+ * invalidated while it is observed.
+ */
+public class CachedEntityLiveData<T> extends LiveData<T>
+        implements EntityCache.InvalidationListener {
+
+    /** Loads one entity from the database. */
+    public interface Loader<T> {
+        @WorkerThread
+        @Nullable
+        T load(int id);
+    }
+
+    private final EntityCache<T> mCache;
+
+    private final int mId;
+
+    private final Executor mExecutor;
+
+    private final Loader<T> mLoader;
+
+    public CachedEntityLiveData(EntityCache<T> cache, int id, Executor executor,
+            Loader<T> loader) {
+        mCache = cache;
+        mId = id;
+        mExecutor = executor;
+        mLoader = loader;
+    }
+
+    @Override
+    protected void onActive() {
+        mCache.addInvalidationListener(mId, this);
+        T cached = mCache.get(mId);
+        if (cached == null) {
+            refresh();
+        } else if (cached != getValue()) {
+            setValue(cached);
+        }
+    }
+
+    @Override
+    protected void onInactive() {
+        mCache.removeInvalidationListener(mId, this);
+    }
+
+    @Override
+    public void onInvalidated() {
+        refresh();
+    }
+
+    private void refresh() {
+        // Read the version first: if the cache is invalidated while loading, the value may be
+        // stale and is only delivered, not cached
+        final int version = mCache.getVersion();
+        mExecutor.execute(() -> {
+            T value = mLoader.load(mId);
+            if (value != null) {
+                mCache.put(mId, value, version);
+            }
+            postValue(value);
+        });
+    }
+}
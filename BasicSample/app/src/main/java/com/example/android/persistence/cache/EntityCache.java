@@ -0,0 +1,314 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.cache;
+
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounded, least-recently-used cache of entities keyed by their int id.
+ * <p>
+ * Keys are kept in primitive arrays (an open hash table with chaining plus an intrusive LRU
+ * list), so lookups neither box the id nor allocate. The owner calls {@link #invalidate(int)}
+ * for every row that changed, which drops that entry and tells only the listeners registered for
+ * its key to reload, or {@link #invalidate()} to drop everything.
+ */
+public class EntityCache<V> {
+
+    /** Notified after the cache has been invalidated. */
+    public interface InvalidationListener {
+        void onInvalidated();
+    }
+
+    private static final int NONE = -1;
+
+    private final int mCapacity;
+
+    private final int[] mKeys;
+    private final Object[] mValues;
+    // Doubly linked LRU list through the slots, most recently used first
+    private final int[] mPrev;
+    private final int[] mNext;
+    // Hash buckets pointing at the first slot of their chain
+    private final int[] mBuckets;
+    private final int[] mChain;
+
+    private int mHead = NONE;
+    private int mTail = NONE;
+    private int mSize;
+
+    private int mVersion;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    // Listeners by key. Only touched while holding the lock.
+    private final SparseArray<List<InvalidationListener>> mListeners = new SparseArray<>();
+
+    public EntityCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mCapacity = capacity;
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        mPrev = new int[capacity];
+        mNext = new int[capacity];
+        mChain = new int[capacity];
+        mBuckets = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        Arrays.fill(mBuckets, NONE);
+    }
+
+    /** Returns the cached entity for {@code key}, or {@code null}, and marks it recently used. */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public synchronized V get(int key) {
+        int slot = find(key);
+        if (slot == NONE) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        moveToHead(slot);
+        return (V) mValues[slot];
+    }
+
+    /**
+     * Caches {@code value} unless the cache was invalidated since {@code version} was read with
+     * {@link #getVersion()}, in which case the value may already be stale.
+     *
+     * @return whether the value was cached.
+     */
+    public synchronized boolean put(int key, @NonNull V value, int version) {
+        if (version != mVersion) {
+            return false;
+        }
+        int slot = find(key);
+        if (slot != NONE) {
+            mValues[slot] = value;
+            moveToHead(slot);
+            return true;
+        }
+        if (mSize == mCapacity) {
+            slot = mTail;
+            unlink(slot);
+            removeFromBucket(slot);
+            mEvictionCount++;
+        } else {
+            slot = mSize++;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        int bucket = bucket(key);
+        mChain[slot] = mBuckets[bucket];
+        mBuckets[bucket] = slot;
+        linkAtHead(slot);
+        return true;
+    }
+
+    /** Drops every entry and notifies all listeners. */
+    public void invalidate() {
+        List<InvalidationListener> listeners = new ArrayList<>();
+        synchronized (this) {
+            mVersion++;
+            Arrays.fill(mBuckets, NONE);
+            Arrays.fill(mValues, null);
+            mHead = NONE;
+            mTail = NONE;
+            mSize = 0;
+            for (int i = 0; i < mListeners.size(); i++) {
+                listeners.addAll(mListeners.valueAt(i));
+            }
+        }
+        for (InvalidationListener listener : listeners) {
+            listener.onInvalidated();
+        }
+    }
+
+    /** Drops the entry for {@code key} and notifies the listeners registered for it. */
+    public void invalidate(int key) {
+        List<InvalidationListener> listeners;
+        synchronized (this) {
+            // Loads of any key that are in flight can't tell whether they read the row before or
+            // after this change, so none of them may be cached
+            mVersion++;
+            int slot = find(key);
+            if (slot != NONE) {
+                unlink(slot);
+                removeFromBucket(slot);
+                mValues[slot] = null;
+                // Keep the slots dense by moving the last used one into the hole
+                int last = --mSize;
+                if (slot != last) {
+                    moveSlot(last, slot);
+                }
+            }
+            List<InvalidationListener> registered = mListeners.get(key);
+            if (registered == null) {
+                return;
+            }
+            listeners = new ArrayList<>(registered);
+        }
+        for (InvalidationListener listener : listeners) {
+            listener.onInvalidated();
+        }
+    }
+
+    /** Changes every time the cache is invalidated. */
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    public synchronized void addInvalidationListener(int key,
+            @NonNull InvalidationListener listener) {
+        List<InvalidationListener> listeners = mListeners.get(key);
+        if (listeners == null) {
+            listeners = new ArrayList<>(1);
+            mListeners.put(key, listeners);
+        }
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public synchronized void removeInvalidationListener(int key,
+            @NonNull InvalidationListener listener) {
+        List<InvalidationListener> listeners = mListeners.get(key);
+        if (listeners != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                mListeners.remove(key);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EntityCache[size=" + mSize + ",capacity=" + mCapacity + ",hits=" + mHitCount
+                + ",misses=" + mMissCount + ",evictions=" + mEvictionCount + "]";
+    }
+
+    private int bucket(int key) {
+        // Fibonacci hashing spreads sequential ids over the buckets
+        return (key * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(mBuckets.length) + 1);
+    }
+
+    private int find(int key) {
+        for (int slot = mBuckets[bucket(key)]; slot != NONE; slot = mChain[slot]) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    private void removeFromBucket(int slot) {
+        int bucket = bucket(mKeys[slot]);
+        if (mBuckets[bucket] == slot) {
+            mBuckets[bucket] = mChain[slot];
+            return;
+        }
+        for (int prev = mBuckets[bucket]; prev != NONE; prev = mChain[prev]) {
+            if (mChain[prev] == slot) {
+                mChain[prev] = mChain[slot];
+                return;
+            }
+        }
+    }
+
+    /** Moves the entry in slot {@code from} to the unused slot {@code to}. */
+    private void moveSlot(int from, int to) {
+        removeFromBucket(from);
+        int prev = mPrev[from];
+        int next = mNext[from];
+        mKeys[to] = mKeys[from];
+        mValues[to] = mValues[from];
+        mValues[from] = null;
+        mPrev[to] = prev;
+        mNext[to] = next;
+        if (prev != NONE) {
+            mNext[prev] = to;
+        } else {
+            mHead = to;
+        }
+        if (next != NONE) {
+            mPrev[next] = to;
+        } else {
+            mTail = to;
+        }
+        int bucket = bucket(mKeys[to]);
+        mChain[to] = mBuckets[bucket];
+        mBuckets[bucket] = to;
+    }
+
+    private void moveToHead(int slot) {
+        if (slot != mHead) {
+            unlink(slot);
+            linkAtHead(slot);
+        }
+    }
+
+    private void linkAtHead(int slot) {
+        mPrev[slot] = NONE;
+        mNext[slot] = mHead;
+        if (mHead != NONE) {
+            mPrev[mHead] = slot;
+        }
+        mHead = slot;
+        if (mTail == NONE) {
+            mTail = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        int prev = mPrev[slot];
+        int next = mNext[slot];
+        if (prev != NONE) {
+            mNext[prev] = next;
+        } else {
+            mHead = next;
+        }
+        if (next != NONE) {
+            mPrev[next] = prev;
+        } else {
+            mTail = prev;
+        }
+    }
+}
@@ -25,7 +25,10 @@ import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
 import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.example.android.persistence.AppExecutors;
 import com.example.android.persistence.db.converter.DateConverter;
@@ -35,9 +38,12 @@ import com.example.android.persistence.db.entity.CommentEntity;
 import com.example.android.persistence.db.entity.ProductEntity;
 
 import com.example.android.persistence.db.entity.ProductFtsEntity;
-import java.util.List;
+import com.example.android.persistence.db.tracing.QueryTracer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
-@Database(entities = {ProductEntity.class, ProductFtsEntity.class, CommentEntity.class}, version = 2)
+@Database(entities = {ProductEntity.class, ProductFtsEntity.class, CommentEntity.class}, version = 4)
 @TypeConverters(DateConverter.class)
 public abstract class AppDatabase extends RoomDatabase {
 
@@ -46,18 +52,33 @@ public abstract class AppDatabase extends RoomDatabase {
     @VisibleForTesting
     public static final String DATABASE_NAME = "basic-sample-db";
 
+    /** The pre-populated database, generated at build time by the {@code prepackaged} module. */
+    @VisibleForTesting
+    static final String PREPACKAGED_DATABASE_ASSET = "database/" + DATABASE_NAME;
+
+    private static final String TAG = "AppDatabase";
+
     public abstract ProductDao productDao();
 
     public abstract CommentDao commentDao();
 
     private final MutableLiveData<Boolean> mIsDatabaseCreated = new MutableLiveData<>();
 
+    private final MutableLiveData<Integer> mSeededProducts = new MutableLiveData<>();
+
+    // Replaced by an attached feed in buildDatabase(). Databases built elsewhere, such as in
+    // tests, keep this one, which never reports a change.
+    private ChangeFeed mChangeFeed = newChangeFeed();
+
+    @Nullable
+    private QueryTracer mQueryTracer;
+
     public static AppDatabase getInstance(final Context context, final AppExecutors executors) {
         if (sInstance == null) {
             synchronized (AppDatabase.class) {
                 if (sInstance == null) {
                     sInstance = buildDatabase(context.getApplicationContext(), executors);
-                    sInstance.updateDatabaseCreated(context.getApplicationContext());
+                    sInstance.updateDatabaseCreated(context.getApplicationContext(), executors);
                 }
             }
         }
@@ -68,39 +89,93 @@ public abstract class AppDatabase extends RoomDatabase {
      * Build the database. {@link Builder#build()} only sets up the database configuration and
      * creates a new instance of the database.
      * The SQLite database is only created when it's accessed for the first time.
+     * <p>
+     * The database uses write-ahead logging so that queries, which run on the
+     * {@link AppExecutors#diskRead()} pool, read the last committed state instead of waiting for
+     * a long write transaction, such as seeding, to finish. Room runs DAO writes and
+     * {@link #runInTransaction} on the calling thread; SQLite still allows only one writer at a
+     * time, so seeding is queued on {@link AppExecutors#diskIO()} to keep the app's only bulk
+     * write off the read pool.
+     * <p>
+     * If the app ships a prepackaged database, Room copies it on first access and the generated
+     * data is only written when the asset is missing.
+     * <p>
+     * Debuggable builds trace every statement, see {@link #getQueryTracer()}.
      */
     private static AppDatabase buildDatabase(final Context appContext,
             final AppExecutors executors) {
-        return Room.databaseBuilder(appContext, AppDatabase.class, DATABASE_NAME)
-                .addCallback(new Callback() {
+        Builder<AppDatabase> builder =
+                Room.databaseBuilder(appContext, AppDatabase.class, DATABASE_NAME);
+        if (hasPrepackagedDatabase(appContext)) {
+            builder.createFromAsset(PREPACKAGED_DATABASE_ASSET);
+        }
+        QueryTracer tracer = QueryTracer.installIfDebuggable(appContext, builder);
+        ChangeFeed changeFeed = newChangeFeed();
+        AppDatabase instance = builder.addCallback(changeFeed)
+            .addCallback(new Callback() {
                     @Override
                     public void onCreate(@NonNull SupportSQLiteDatabase db) {
                         super.onCreate(db);
                         executors.diskIO().execute(() -> {
-                            // Add a delay to simulate a long-running operation
-                            addDelay();
-                            // Generate the data for pre-population
+                            // Stream the generated data into the database in bounded chunks
                             AppDatabase database = AppDatabase.getInstance(appContext, executors);
-                            List<ProductEntity> products = DataGenerator.generateProducts();
-                            List<CommentEntity> comments =
-                                    DataGenerator.generateCommentsForProducts(products);
-
-                            insertData(database, products, comments);
+                            final Random rnd = new Random();
+                            new DatabaseSeeder(database, DatabaseSeeder.DEFAULT_CHUNK_SIZE).seed(
+                                    DataGenerator.streamProducts(DataGenerator.PRODUCT_COUNT),
+                                    (product, out) -> DataGenerator.generateCommentsForProduct(
+                                            product, rnd, out),
+                                    database.mSeededProducts::postValue);
                             // notify that the database was created and it's ready to be used
                             database.setDatabaseCreated();
                         });
                     }
                 })
-            .addMigrations(MIGRATION_1_2)
+            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4)
+            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+            .setQueryExecutor(executors.diskRead())
             .build();
+        instance.mQueryTracer = tracer;
+        instance.mChangeFeed = changeFeed.attach(instance);
+        return instance;
     }
 
     /**
-     * Check whether the database already exists and expose it via {@link #getDatabaseCreated()}
+     * A feed of the changes to this database's rows, to add as a callback to its builder: products
+     * are keyed by id, comments by the product they belong to.
      */
-    private void updateDatabaseCreated(final Context context) {
+    @VisibleForTesting
+    static ChangeFeed newChangeFeed() {
+        return new ChangeFeed()
+                .track("products", "id")
+                .track("comments", "productId");
+    }
+
+    /**
+     * Check whether the database already exists and expose it via {@link #getDatabaseCreated()}.
+     * Otherwise, if there is a prepackaged database, open the database right away so that Room
+     * copies it, and log how long that took.
+     */
+    private void updateDatabaseCreated(final Context context, final AppExecutors executors) {
         if (context.getDatabasePath(DATABASE_NAME).exists()) {
             setDatabaseCreated();
+        } else if (hasPrepackagedDatabase(context)) {
+            executors.diskIO().execute(() -> {
+                // Room streams the asset into place before opening it
+                long start = SystemClock.elapsedRealtime();
+                getOpenHelper().getWritableDatabase();
+                Log.i(TAG, "Copied the prepackaged database in "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+                setDatabaseCreated();
+            });
+        }
+    }
+
+    private static boolean hasPrepackagedDatabase(Context context) {
+        try {
+            String[] assets = context.getAssets().list("database");
+            return assets != null && Arrays.asList(assets).contains(DATABASE_NAME);
+        } catch (IOException e) {
+            return false;
         }
     }
 
@@ -108,25 +183,35 @@ public abstract class AppDatabase extends RoomDatabase {
         mIsDatabaseCreated.postValue(true);
     }
 
-    private static void insertData(final AppDatabase database, final List<ProductEntity> products,
-            final List<CommentEntity> comments) {
-        database.runInTransaction(() -> {
-            database.productDao().insertAll(products);
-            database.commentDao().insertAll(comments);
-        });
+    /**
+     * Row-level change notifications: changed product ids, and ids of the products whose
+     * comments changed.
+     */
+    public ChangeFeed getChangeFeed() {
+        return mChangeFeed;
     }
 
-    private static void addDelay() {
-        try {
-            Thread.sleep(4000);
-        } catch (InterruptedException ignored) {
-        }
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, {@code null} otherwise.
+     */
+    @Nullable
+    public QueryTracer getQueryTracer() {
+        return mQueryTracer;
     }
 
     public LiveData<Boolean> getDatabaseCreated() {
         return mIsDatabaseCreated;
     }
 
+    /**
+     * Number of products written so far while the database is being pre-populated. Updated after
+     * every committed chunk, before {@link #getDatabaseCreated()} becomes true.
+     */
+    public LiveData<Integer> getSeedProgress() {
+        return mSeededProducts;
+    }
+
     private static final Migration MIGRATION_1_2 = new Migration(1, 2) {
 
         @Override
@@ -138,4 +223,35 @@ public abstract class AppDatabase extends RoomDatabase {
 
         }
     };
+
+    /**
+     * Rebuilds the full-text index with prefix indexes. The table only holds the index, since the
+     * text lives in {@code products}, so it is recreated and repopulated with FTS4's rebuild.
+     */
+    @VisibleForTesting
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TABLE IF EXISTS `productsFts`");
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `productsFts` USING FTS4("
+                + "`name` TEXT, `description` TEXT, content=`products`, prefix=`2,3`)");
+            database.execSQL("INSERT INTO productsFts(productsFts) VALUES ('rebuild')");
+        }
+    };
+
+    /**
+     * Replaces the index on the comments' product with one on product and posting date, which
+     * also serves lookups by product alone and lets comments be paged in date order.
+     */
+    @VisibleForTesting
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP INDEX IF EXISTS `index_comments_productId`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_comments_productId_postedAt` "
+                + "ON `comments` (`productId`, `postedAt`)");
+        }
+    };
 }
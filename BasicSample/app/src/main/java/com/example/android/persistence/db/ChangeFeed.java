@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Reports which rows changed, not just which tables.
+ * <p>
+ * Room's {@link InvalidationTracker} only knows that a table was written to. For every tracked
+ * table this installs temporary triggers that record the key of each inserted, updated or deleted
+ * row in a temporary log table. When Room reports a change, the log is drained and observers get
+ * the distinct keys changed since the last drain, so they can refresh only what they show.
+ * <p>
+ * The key doesn't have to be the primary key: comments, for example, are tracked by the product
+ * they belong to.
+ * <p>
+ * Add the feed to the database builder as a callback, so that the triggers are installed when
+ * the database opens, as Room does with its own, then {@link #attach} it to the built database.
+ */
+public class ChangeFeed extends RoomDatabase.Callback {
+
+    /** Receives changed keys on a background thread. */
+    public interface Observer {
+        void onChanged(@NonNull String table, @NonNull int[] keys);
+    }
+
+    private static final String LOG_TABLE = "change_feed_log";
+
+    @Nullable
+    private volatile RoomDatabase mDatabase;
+
+    private final List<String> mTables = new ArrayList<>();
+
+    private final List<String> mKeyColumns = new ArrayList<>();
+
+    private final CopyOnWriteArrayList<Observer> mObservers = new CopyOnWriteArrayList<>();
+
+    /** Records changes to {@code table}, keyed by the int column {@code keyColumn}. */
+    public ChangeFeed track(@NonNull String table, @NonNull String keyColumn) {
+        mTables.add(table);
+        mKeyColumns.add(keyColumn);
+        return this;
+    }
+
+    /**
+     * Starts reading the changes of {@code database}, which was built with this feed as a
+     * callback. Doesn't touch the database, so it can be called before the database is opened.
+     */
+    public ChangeFeed attach(@NonNull RoomDatabase database) {
+        mDatabase = database;
+        database.getInvalidationTracker().addObserver(
+                new InvalidationTracker.Observer(mTables.toArray(new String[0])) {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        dispatch();
+                    }
+                });
+        return this;
+    }
+
+    /** Starts delivering changes to {@code observer}. */
+    public void addObserver(@NonNull Observer observer) {
+        mObservers.addIfAbsent(observer);
+    }
+
+    public void removeObserver(@NonNull Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    /**
+     * Installs the log table and the triggers. Temporary objects only exist on the connection
+     * that created them, and this is the connection Room writes through.
+     */
+    @Override
+    public void onOpen(@NonNull SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TEMP TABLE IF NOT EXISTS " + LOG_TABLE
+                + " (table_id INTEGER NOT NULL, row_key INTEGER NOT NULL,"
+                + " PRIMARY KEY(table_id, row_key))");
+        for (int i = 0; i < mTables.size(); i++) {
+            String table = mTables.get(i);
+            String key = mKeyColumns.get(i);
+            createTrigger(db, i, table, "INSERT", "NEW." + key);
+            createTrigger(db, i, table, "UPDATE", "OLD." + key, "NEW." + key);
+            createTrigger(db, i, table, "DELETE", "OLD." + key);
+        }
+    }
+
+    private static void createTrigger(SupportSQLiteDatabase db, int tableId, String table,
+            String operation, String... keys) {
+        StringBuilder sql = new StringBuilder("CREATE TEMP TRIGGER IF NOT EXISTS `")
+                .append(LOG_TABLE).append('_').append(table).append('_').append(operation)
+                .append("` AFTER ").append(operation).append(" ON `").append(table)
+                .append("` BEGIN ");
+        for (String key : keys) {
+            sql.append("INSERT OR IGNORE INTO ").append(LOG_TABLE).append(" VALUES(")
+                    .append(tableId).append(", ").append(key).append("); ");
+        }
+        db.execSQL(sql.append("END").toString());
+    }
+
+    /** Drains the log and hands the keys to the observers, one call per table. */
+    @WorkerThread
+    private void dispatch() {
+        int[][] keys = new int[mTables.size()][];
+        int[] counts = new int[mTables.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new int[16];
+        }
+        RoomDatabase database = mDatabase;
+        if (database == null) {
+            return;
+        }
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        // The triggers write through the connection that owns the temp table; a transaction
+        // pins that connection for the read and the delete
+        db.beginTransactionNonExclusive();
+        try {
+            try (Cursor cursor = db.query("SELECT table_id, row_key FROM " + LOG_TABLE)) {
+                while (cursor.moveToNext()) {
+                    int table = cursor.getInt(0);
+                    if (counts[table] == keys[table].length) {
+                        keys[table] = Arrays.copyOf(keys[table], counts[table] * 2);
+                    }
+                    keys[table][counts[table]++] = cursor.getInt(1);
+                }
+            }
+            db.execSQL("DELETE FROM " + LOG_TABLE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            int[] changed = Arrays.copyOf(keys[i], counts[i]);
+            for (Observer observer : mObservers) {
+                observer.onChanged(mTables.get(i), changed);
+            }
+        }
+    }
+}
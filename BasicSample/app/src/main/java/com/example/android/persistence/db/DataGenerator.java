@@ -22,7 +22,9 @@ import com.example.android.persistence.model.Product;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -41,18 +43,14 @@ public class DataGenerator {
     private static final String[] COMMENTS = new String[]{
             "Comment 1", "Comment 2", "Comment 3", "Comment 4", "Comment 5", "Comment 6"};
 
+    /** Number of products {@link #streamProducts(int)} can generate before names repeat. */
+    public static final int PRODUCT_COUNT = FIRST.length * SECOND.length;
+
     public static List<ProductEntity> generateProducts() {
-        List<ProductEntity> products = new ArrayList<>(FIRST.length * SECOND.length);
-        Random rnd = new Random();
-        for (int i = 0; i < FIRST.length; i++) {
-            for (int j = 0; j < SECOND.length; j++) {
-                ProductEntity product = new ProductEntity();
-                product.setName(FIRST[i] + " " + SECOND[j]);
-                product.setDescription(product.getName() + " " + DESCRIPTION[j]);
-                product.setPrice(rnd.nextInt(240));
-                product.setId(FIRST.length * i + j + 1);
-                products.add(product);
-            }
+        List<ProductEntity> products = new ArrayList<>(PRODUCT_COUNT);
+        Iterator<ProductEntity> iterator = streamProducts(PRODUCT_COUNT);
+        while (iterator.hasNext()) {
+            products.add(iterator.next());
         }
         return products;
     }
@@ -63,17 +61,58 @@ public class DataGenerator {
         Random rnd = new Random();
 
         for (Product product : products) {
-            int commentsNumber = rnd.nextInt(5) + 1;
-            for (int i = 0; i < commentsNumber; i++) {
-                CommentEntity comment = new CommentEntity();
-                comment.setProductId(product.getId());
-                comment.setText(COMMENTS[i] + " for " + product.getName());
-                comment.setPostedAt(new Date(System.currentTimeMillis()
-                        - TimeUnit.DAYS.toMillis(commentsNumber - i) + TimeUnit.HOURS.toMillis(i)));
-                comments.add(comment);
-            }
+            generateCommentsForProduct(product, rnd, comments);
         }
 
         return comments;
     }
+
+    /**
+     * Lazily generates {@code count} products with ids starting at 1. Nothing is allocated for a
+     * product until {@link Iterator#next()} is called, so arbitrarily large catalogs can be
+     * streamed into the database.
+     */
+    public static Iterator<ProductEntity> streamProducts(final int count) {
+        return new Iterator<ProductEntity>() {
+            private final Random mRnd = new Random();
+            private int mNext = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < count;
+            }
+
+            @Override
+            public ProductEntity next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int first = (mNext / SECOND.length) % FIRST.length;
+                int second = mNext % SECOND.length;
+                ProductEntity product = new ProductEntity();
+                product.setName(FIRST[first] + " " + SECOND[second]);
+                product.setDescription(product.getName() + " " + DESCRIPTION[second]);
+                product.setPrice(mRnd.nextInt(240));
+                product.setId(++mNext);
+                return product;
+            }
+        };
+    }
+
+    /**
+     * Generates between one and five comments for {@code product} and appends them to
+     * {@code out}.
+     */
+    public static void generateCommentsForProduct(final Product product, final Random rnd,
+            final List<CommentEntity> out) {
+        int commentsNumber = rnd.nextInt(5) + 1;
+        for (int i = 0; i < commentsNumber; i++) {
+            CommentEntity comment = new CommentEntity();
+            comment.setProductId(product.getId());
+            comment.setText(COMMENTS[i] + " for " + product.getName());
+            comment.setPostedAt(new Date(System.currentTimeMillis()
+                    - TimeUnit.DAYS.toMillis(commentsNumber - i) + TimeUnit.HOURS.toMillis(i)));
+            out.add(comment);
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import com.example.android.persistence.db.converter.DateConverter;
+import com.example.android.persistence.db.entity.CommentEntity;
+import com.example.android.persistence.model.Product;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streams products and their comments into the database.
+ * <p>
+ * Rows are pulled from an {@link Iterator} one at a time and written in transactions of at most
+ * {@code chunkSize} products, so memory use and transaction length stay bounded no matter how large
+ * the catalog is. The insert statements are compiled once and re-bound for every row.
+ */
+public class DatabaseSeeder {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String INSERT_PRODUCT = "INSERT OR REPLACE INTO `products` "
+            + "(`id`,`name`,`description`,`price`) VALUES (?,?,?,?)";
+
+    private static final String INSERT_COMMENT = "INSERT OR REPLACE INTO `comments` "
+            + "(`id`,`productId`,`text`,`postedAt`) VALUES (nullif(?, 0),?,?,?)";
+
+    /** Produces the comments to store along with a product. */
+    public interface CommentFactory {
+        /** Appends the comments for {@code product} to {@code out}. */
+        void createComments(@NonNull Product product, @NonNull List<CommentEntity> out);
+    }
+
+    /** Notified on the seeding thread after every committed chunk. */
+    public interface ProgressListener {
+        void onProgress(int productsWritten);
+    }
+
+    private final RoomDatabase mDatabase;
+
+    private final int mChunkSize;
+
+    public DatabaseSeeder(@NonNull RoomDatabase database, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        mDatabase = database;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Writes every product of {@code products} together with its comments.
+     *
+     * @return the number of products written.
+     */
+    public int seed(@NonNull Iterator<? extends Product> products,
+            @NonNull CommentFactory comments, @Nullable ProgressListener listener) {
+        final SupportSQLiteStatement insertProduct = mDatabase.compileStatement(INSERT_PRODUCT);
+        final SupportSQLiteStatement insertComment = mDatabase.compileStatement(INSERT_COMMENT);
+        final List<CommentEntity> buffer = new ArrayList<>();
+        final int[] written = new int[1];
+        try {
+            while (products.hasNext()) {
+                mDatabase.runInTransaction(() -> {
+                    for (int i = 0; i < mChunkSize && products.hasNext(); i++) {
+                        Product product = products.next();
+                        bindProduct(insertProduct, product);
+                        insertProduct.executeInsert();
+
+                        buffer.clear();
+                        comments.createComments(product, buffer);
+                        for (CommentEntity comment : buffer) {
+                            bindComment(insertComment, comment);
+                            insertComment.executeInsert();
+                        }
+                        written[0]++;
+                    }
+                });
+                if (listener != null) {
+                    listener.onProgress(written[0]);
+                }
+            }
+        } finally {
+            closeQuietly(insertProduct);
+            closeQuietly(insertComment);
+        }
+        return written[0];
+    }
+
+    private static void bindProduct(SupportSQLiteStatement statement, Product product) {
+        statement.bindLong(1, product.getId());
+        bindString(statement, 2, product.getName());
+        bindString(statement, 3, product.getDescription());
+        statement.bindLong(4, product.getPrice());
+    }
+
+    private static void bindComment(SupportSQLiteStatement statement, CommentEntity comment) {
+        statement.bindLong(1, comment.getId());
+        statement.bindLong(2, comment.getProductId());
+        bindString(statement, 3, comment.getText());
+        Long postedAt = DateConverter.toTimestamp(comment.getPostedAt());
+        if (postedAt == null) {
+            statement.bindNull(4);
+        } else {
+            statement.bindLong(4, postedAt);
+        }
+    }
+
+    private static void bindString(SupportSQLiteStatement statement, int index,
+            @Nullable String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void closeQuietly(SupportSQLiteStatement statement) {
+        try {
+            statement.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
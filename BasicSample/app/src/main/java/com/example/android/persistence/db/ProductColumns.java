@@ -0,0 +1,304 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.android.persistence.model.Product;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A list of products stored column by column: ids and prices in int arrays, and names and
+ * descriptions as references into a {@link StringTable}.
+ * <p>
+ * Reading a list this way allocates a few arrays instead of an entity and its strings per row,
+ * and re-reading it after a change only allocates the strings that weren't there before. Lists
+ * that share a string table can compare names and descriptions by reference.
+ */
+public final class ProductColumns {
+
+    public static final ProductColumns EMPTY = new Builder(new StringTable(), 0).build();
+
+    private final StringTable mTable;
+    private final String[] mStrings;
+    private final int mSize;
+    private final int[] mIds;
+    private final int[] mPrices;
+    private final int[] mNames;
+    private final int[] mDescriptions;
+
+    private ProductColumns(StringTable table, String[] strings, int size, int[] ids,
+            int[] prices, int[] names, int[] descriptions) {
+        mTable = table;
+        mStrings = strings;
+        mSize = size;
+        mIds = ids;
+        mPrices = prices;
+        mNames = names;
+        mDescriptions = descriptions;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getId(int position) {
+        return mIds[position];
+    }
+
+    public int getPrice(int position) {
+        return mPrices[position];
+    }
+
+    public String getName(int position) {
+        return string(mNames[position]);
+    }
+
+    public String getDescription(int position) {
+        return string(mDescriptions[position]);
+    }
+
+    /** Whether the name at {@code position} equals the name at {@code otherPosition} of other. */
+    public boolean nameEquals(int position, ProductColumns other, int otherPosition) {
+        return stringEquals(mNames[position], other, other.mNames[otherPosition]);
+    }
+
+    /** Like {@link #nameEquals}, for descriptions. */
+    public boolean descriptionEquals(int position, ProductColumns other, int otherPosition) {
+        return stringEquals(mDescriptions[position], other, other.mDescriptions[otherPosition]);
+    }
+
+    /** The {@link StringTable} reference of the name at {@code position}. */
+    public int getNameRef(int position) {
+        return mNames[position];
+    }
+
+    /** The {@link StringTable} reference of the description at {@code position}. */
+    public int getDescriptionRef(int position) {
+        return mDescriptions[position];
+    }
+
+    /** Returns a copy of the ids, in list order. */
+    @NonNull
+    public int[] getIds() {
+        return Arrays.copyOf(mIds, mSize);
+    }
+
+    /** Returns the products at the given positions, in that order. */
+    @NonNull
+    public ProductColumns select(@NonNull int[] positions, int count) {
+        int[] ids = new int[count];
+        int[] prices = new int[count];
+        int[] names = new int[count];
+        int[] descriptions = new int[count];
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            ids[i] = mIds[position];
+            prices[i] = mPrices[position];
+            names[i] = mNames[position];
+            descriptions[i] = mDescriptions[position];
+        }
+        return new ProductColumns(mTable, mStrings, count, ids, prices, names, descriptions);
+    }
+
+    /**
+     * A read-only list view of the products, for code that diffs lists, such as
+     * {@link androidx.recyclerview.widget.AsyncListDiffer}. The view moves one {@link Row} to
+     * every position it is asked for, so an item is only valid until the next call to
+     * {@link List#get}, and the view must only be read from one thread at a time.
+     */
+    @NonNull
+    public List<Product> asList() {
+        return new RowList(this);
+    }
+
+    @Nullable
+    private String string(int ref) {
+        return ref == StringTable.NULL ? null : mStrings[ref];
+    }
+
+    private boolean stringEquals(int ref, ProductColumns other, int otherRef) {
+        if (mTable == other.mTable) {
+            return ref == otherRef;
+        }
+        String value = string(ref);
+        return value == null ? otherRef == StringTable.NULL : value.equals(other.string(otherRef));
+    }
+
+    /**
+     * A {@link Product} view of one row, for code that works with products. Move it with
+     * {@link #set} rather than allocating one per row.
+     */
+    public static final class Row implements Product {
+
+        private ProductColumns mColumns = EMPTY;
+
+        private int mPosition;
+
+        public Row set(@NonNull ProductColumns columns, int position) {
+            mColumns = columns;
+            mPosition = position;
+            return this;
+        }
+
+        @Override
+        public int getId() {
+            return mColumns.getId(mPosition);
+        }
+
+        @Override
+        public String getName() {
+            return mColumns.getName(mPosition);
+        }
+
+        @Override
+        public String getDescription() {
+            return mColumns.getDescription(mPosition);
+        }
+
+        @Override
+        public int getPrice() {
+            return mColumns.getPrice(mPosition);
+        }
+
+        /** Like {@link ProductColumns#nameEquals}, from one row to another. */
+        public boolean nameEquals(@NonNull Row other) {
+            return mColumns.nameEquals(mPosition, other.mColumns, other.mPosition);
+        }
+
+        /** Like {@link ProductColumns#descriptionEquals}, from one row to another. */
+        public boolean descriptionEquals(@NonNull Row other) {
+            return mColumns.descriptionEquals(mPosition, other.mColumns, other.mPosition);
+        }
+    }
+
+    private static final class RowList extends AbstractList<Product> {
+
+        private final ProductColumns mColumns;
+
+        private final Row mRow = new Row();
+
+        RowList(ProductColumns columns) {
+            mColumns = columns;
+        }
+
+        @Override
+        public Row get(int index) {
+            if (index < 0 || index >= mColumns.mSize) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            return mRow.set(mColumns, index);
+        }
+
+        @Override
+        public int size() {
+            return mColumns.mSize;
+        }
+    }
+
+    /** Collects rows, interning their strings into a shared {@link StringTable}. */
+    public static final class Builder {
+
+        private final StringTable mTable;
+
+        private final CharArrayBuffer mBuffer = new CharArrayBuffer(64);
+
+        private int mSize;
+        private int[] mIds;
+        private int[] mPrices;
+        private int[] mNames;
+        private int[] mDescriptions;
+
+        public Builder(@NonNull StringTable table, int capacity) {
+            mTable = table;
+            capacity = Math.max(capacity, 1);
+            mIds = new int[capacity];
+            mPrices = new int[capacity];
+            mNames = new int[capacity];
+            mDescriptions = new int[capacity];
+        }
+
+        /**
+         * Adds every row of {@code cursor}, which must have {@code id}, {@code name},
+         * {@code description} and {@code price} columns, and closes it.
+         */
+        @WorkerThread
+        public Builder addAll(@NonNull Cursor cursor) {
+            try {
+                int id = cursor.getColumnIndexOrThrow("id");
+                int name = cursor.getColumnIndexOrThrow("name");
+                int description = cursor.getColumnIndexOrThrow("description");
+                int price = cursor.getColumnIndexOrThrow("price");
+                ensureCapacity(mSize + cursor.getCount());
+                while (cursor.moveToNext()) {
+                    mIds[mSize] = cursor.getInt(id);
+                    mPrices[mSize] = cursor.getInt(price);
+                    mNames[mSize] = readString(cursor, name);
+                    mDescriptions[mSize] = readString(cursor, description);
+                    mSize++;
+                }
+            } finally {
+                cursor.close();
+            }
+            return this;
+        }
+
+        public Builder add(@NonNull Product product) {
+            ensureCapacity(mSize + 1);
+            mIds[mSize] = product.getId();
+            mPrices[mSize] = product.getPrice();
+            mNames[mSize] = mTable.intern(product.getName());
+            mDescriptions[mSize] = mTable.intern(product.getDescription());
+            mSize++;
+            return this;
+        }
+
+        @NonNull
+        public ProductColumns build() {
+            // Taken last, so the array covers every reference read above
+            return new ProductColumns(mTable, mTable.strings(), mSize, mIds, mPrices, mNames,
+                    mDescriptions);
+        }
+
+        private int readString(Cursor cursor, int column) {
+            if (cursor.isNull(column)) {
+                return StringTable.NULL;
+            }
+            // Copies the characters into the reused buffer instead of allocating a String
+            cursor.copyStringToBuffer(column, mBuffer);
+            return mTable.intern(mBuffer);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > mIds.length) {
+                int length = Math.max(capacity, mIds.length * 2);
+                mIds = Arrays.copyOf(mIds, length);
+                mPrices = Arrays.copyOf(mPrices, length);
+                mNames = Arrays.copyOf(mNames, length);
+                mDescriptions = Arrays.copyOf(mDescriptions, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import android.database.Cursor;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.room.Ignore;
+import com.example.android.persistence.db.dao.ProductDao;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Products matching a full-text query, ranked by BM25.
+ * <p>
+ * The platform's SQLite has FTS4 but neither FTS5 nor its {@code bm25()} function, so the score
+ * is computed here from FTS4's {@code matchinfo}. Ranking only reads ids and match statistics
+ * from the index; snippets and products are loaded for the top hits only, and for the rest
+ * when {@link #loadHits(ProductDao, int, int)} asks for them.
+ */
+public class ProductSearchResult {
+
+    /** Phrases, columns, rows, average and row lengths, and per phrase/column hit counts. */
+    public static final String MATCHINFO_FORMAT = "pcnalx";
+
+    // BM25 parameters, as used by SQLite's FTS5
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /** A match with its highlighted snippet. */
+    public static class Hit {
+        public int id;
+
+        public String snippet;
+
+        @Ignore
+        public double score;
+    }
+
+    private final String mQuery;
+
+    private final int[] mRankedIds;
+
+    private final double[] mScores;
+
+    private final List<Hit> mTopHits;
+
+    private ProductSearchResult(String query, int[] rankedIds, double[] scores,
+            List<Hit> topHits) {
+        mQuery = query;
+        mRankedIds = rankedIds;
+        mScores = scores;
+        mTopHits = topHits;
+    }
+
+    /**
+     * Runs {@code query} and loads the snippets of the {@code limit} best matches.
+     */
+    @WorkerThread
+    public static ProductSearchResult search(@NonNull ProductDao dao, @NonNull String query,
+            int limit) {
+        // Pack each score and id into a long so that all matches can be sorted without boxing.
+        // Scores are positive, so their float bits sort like the floats themselves.
+        long[] ranked;
+        int count = 0;
+        try (Cursor cursor = dao.searchMatchInfo(query)) {
+            ranked = new long[cursor.getCount()];
+            while (cursor.moveToNext()) {
+                float score = (float) bm25(cursor.getBlob(1));
+                ranked[count++] = ((long) Float.floatToIntBits(score) << 32)
+                        | (cursor.getInt(0) & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(ranked, 0, count);
+
+        int[] ids = new int[count];
+        double[] scores = new double[count];
+        for (int i = 0; i < count; i++) {
+            long packed = ranked[count - 1 - i];
+            ids[i] = (int) packed;
+            scores[i] = Float.intBitsToFloat((int) (packed >>> 32));
+        }
+        return new ProductSearchResult(query, ids, scores,
+                loadHits(dao, query, ids, scores, 0, limit));
+    }
+
+    /** Number of products matching the query. */
+    public int getCount() {
+        return mRankedIds.length;
+    }
+
+    /** Ids of all matching products, best match first. */
+    public int[] getRankedIds() {
+        return mRankedIds;
+    }
+
+    /** The best matches, with snippets. */
+    public List<Hit> getTopHits() {
+        return mTopHits;
+    }
+
+    /**
+     * Loads the snippets of {@code count} matches starting at rank {@code from}, in rank order.
+     * Load at most a few hundred at a time: every id is bound as a query argument.
+     */
+    @WorkerThread
+    public List<Hit> loadHits(@NonNull ProductDao dao, int from, int count) {
+        return loadHits(dao, mQuery, mRankedIds, mScores, from, count);
+    }
+
+    private static List<Hit> loadHits(ProductDao dao, String query, int[] rankedIds,
+            double[] scores, int from, int count) {
+        int to = Math.min(from + count, rankedIds.length);
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        int[] ids = Arrays.copyOfRange(rankedIds, from, to);
+        SparseArray<Hit> byId = new SparseArray<>(ids.length);
+        for (Hit hit : dao.loadSearchHits(query, ids)) {
+            byId.put(hit.id, hit);
+        }
+        List<Hit> hits = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            Hit hit = byId.get(ids[i]);
+            if (hit != null) {
+                hit.score = scores[from + i];
+                hits.add(hit);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Okapi BM25 of one row, summed over all phrases and columns, from a matchinfo blob in
+     * {@link #MATCHINFO_FORMAT} format.
+     */
+    @VisibleForTesting
+    static double bm25(byte[] matchInfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        int rows = buffer.getInt(8);
+        int averageLengths = 3;
+        int rowLengths = averageLengths + columns;
+        int hits = rowLengths + columns;
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int base = hits + 3 * (phrase * columns + column);
+                int hitsInRow = buffer.getInt(4 * base);
+                if (hitsInRow == 0) {
+                    continue;
+                }
+                int rowsWithHits = buffer.getInt(4 * (base + 2));
+                double idf = Math.log((rows - rowsWithHits + 0.5) / (rowsWithHits + 0.5));
+                // Terms in more than half of the rows would score negative
+                idf = Math.max(idf, 1e-6);
+                double length = buffer.getInt(4 * (rowLengths + column));
+                double averageLength = Math.max(1, buffer.getInt(4 * (averageLengths + column)));
+                score += idf * (hitsInRow * (K1 + 1))
+                        / (hitsInRow + K1 * (1 - B + B * length / averageLength));
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.db;
+
+import android.database.CharArrayBuffer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings read from a cursor, so that every distinct value is only allocated once no
+ * matter how many rows, or how many reloads, it appears in.
+ * <p>
+ * Values are referred to by an int; {@link #NULL} stands for SQL {@code NULL}. Within one table,
+ * two values are equal exactly when their references are. Reading a value with
+ * {@link #intern(CharArrayBuffer)} only allocates when the table hasn't seen it before.
+ */
+public final class StringTable {
+
+    public static final int NULL = -1;
+
+    private static final int EMPTY = -1;
+
+    private String[] mStrings = new String[64];
+
+    private int mSize;
+
+    // Open addressing hash set of references into mStrings
+    private int[] mSlots = newSlots(128);
+
+    /** Returns the reference for the characters in {@code buffer}, adding them if needed. */
+    public synchronized int intern(@NonNull CharArrayBuffer buffer) {
+        return intern(buffer.data, buffer.sizeCopied, null);
+    }
+
+    /** Returns the reference for {@code value}, adding it if needed. */
+    public synchronized int intern(@Nullable String value) {
+        return value == null ? NULL : intern(null, value.length(), value);
+    }
+
+    /** Number of distinct values in the table. */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * The values by reference, valid for every reference handed out so far. Later additions may
+     * go to a new array, so callers keep the array they got along with their references.
+     */
+    synchronized String[] strings() {
+        return mStrings;
+    }
+
+    private int intern(@Nullable char[] chars, int length, @Nullable String value) {
+        int hash = value != null ? value.hashCode() : hash(chars, length);
+        int mask = mSlots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int ref = mSlots[slot];
+            if (ref == EMPTY) {
+                break;
+            }
+            String candidate = mStrings[ref];
+            if (value != null ? value.equals(candidate) : contentEquals(candidate, chars, length)) {
+                return ref;
+            }
+        }
+        if (value == null) {
+            value = new String(chars, 0, length);
+        }
+        if (mSize == mStrings.length) {
+            mStrings = Arrays.copyOf(mStrings, mSize * 2);
+        }
+        int ref = mSize++;
+        mStrings[ref] = value;
+        if (mSize * 2 > mSlots.length) {
+            rehash();
+        } else {
+            insert(mSlots, ref, hash);
+        }
+        return ref;
+    }
+
+    private void rehash() {
+        int[] slots = newSlots(mSlots.length * 2);
+        for (int ref = 0; ref < mSize; ref++) {
+            insert(slots, ref, mStrings[ref].hashCode());
+        }
+        mSlots = slots;
+    }
+
+    private static void insert(int[] slots, int ref, int hash) {
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = ref;
+    }
+
+    private static int[] newSlots(int size) {
+        int[] slots = new int[size];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    /** Same as {@link String#hashCode()}, so both kinds of lookup find the same slots. */
+    private static int hash(char[] chars, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean contentEquals(String value, char[] chars, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -33,6 +33,41 @@ public interface CommentDao {
     @Query("SELECT * FROM comments where productId = :productId")
     List<CommentEntity> loadCommentsSync(int productId);
 
+    /**
+     * Keyset page, newest first: the comments of {@code productId} posted before the comment
+     * identified by {@code beforePostedAt} and {@code beforeId}. Served by the
+     * (productId, postedAt) index, which also holds the id.
+     */
+    @Query("SELECT * FROM comments WHERE productId = :productId "
+            + "AND (postedAt < :beforePostedAt OR (postedAt = :beforePostedAt AND id < :beforeId)) "
+            + "ORDER BY postedAt DESC, id DESC LIMIT :limit")
+    List<CommentEntity> loadOlderComments(int productId, long beforePostedAt, int beforeId,
+            int limit);
+
+    /**
+     * Keyset page in the other direction: the comments posted after the given one, oldest first.
+     */
+    @Query("SELECT * FROM comments WHERE productId = :productId "
+            + "AND (postedAt > :afterPostedAt OR (postedAt = :afterPostedAt AND id > :afterId)) "
+            + "ORDER BY postedAt ASC, id ASC LIMIT :limit")
+    List<CommentEntity> loadNewerComments(int productId, long afterPostedAt, int afterId,
+            int limit);
+
+    /**
+     * Keyset page, newest first, over the comments that have no date: SQLite sorts nulls first,
+     * so they come after every dated comment and are paged by id alone.
+     */
+    @Query("SELECT * FROM comments WHERE productId = :productId AND postedAt IS NULL "
+            + "AND id < :beforeId ORDER BY id DESC LIMIT :limit")
+    List<CommentEntity> loadOlderUndatedComments(int productId, int beforeId, int limit);
+
+    /**
+     * Keyset page in the other direction over the comments that have no date, oldest first.
+     */
+    @Query("SELECT * FROM comments WHERE productId = :productId AND postedAt IS NULL "
+            + "AND id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<CommentEntity> loadNewerUndatedComments(int productId, int afterId, int limit);
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<CommentEntity> comments);
 }
@@ -16,30 +16,102 @@
 
 package com.example.android.persistence.db.dao;
 
+import android.database.Cursor;
+
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import com.example.android.persistence.db.ProductColumns;
+import com.example.android.persistence.db.ProductSearchResult;
 import com.example.android.persistence.db.entity.ProductEntity;
+import com.example.android.persistence.model.ProductSummary;
 
 import java.util.List;
 
 @Dao
 public interface ProductDao {
+    String SELECT_SUMMARIES = "SELECT products.*, COUNT(comments.id) AS commentCount, "
+        + "MAX(comments.postedAt) AS lastCommentAt "
+        + "FROM products LEFT JOIN comments ON comments.productId = products.id ";
+
     @Query("SELECT * FROM products")
     LiveData<List<ProductEntity>> loadAllProducts();
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<ProductEntity> products);
 
+    /** Keyset page: the first {@code limit} products with an id greater than {@code afterId}. */
+    @Query("SELECT * FROM products WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<ProductEntity> loadProductsAfter(int afterId, int limit);
+
+    /**
+     * Keyset page: the last {@code limit} products with an id lower than {@code beforeId}, in
+     * descending id order.
+     */
+    @Query("SELECT * FROM products WHERE id < :beforeId ORDER BY id DESC LIMIT :limit")
+    List<ProductEntity> loadProductsBefore(int beforeId, int limit);
+
+    /**
+     * Keyset page of {@link ProductSummary summaries}: the first {@code limit} products with an id
+     * greater than {@code afterId}, with their comment count and latest comment date.
+     * <p>
+     * One grouped join serves the whole page. Products are walked in id order, so the grouping
+     * needs no sort and stops after {@code limit} products, and each product's comments are
+     * counted from the (productId, postedAt) index without reading the comment rows.
+     */
+    @Query(SELECT_SUMMARIES + "WHERE products.id > :afterId "
+        + "GROUP BY products.id ORDER BY products.id LIMIT :limit")
+    List<ProductSummary> loadProductSummariesAfter(int afterId, int limit);
+
+    /**
+     * Keyset page of {@link ProductSummary summaries}: the last {@code limit} products with an id
+     * lower than {@code beforeId}, in descending id order.
+     */
+    @Query(SELECT_SUMMARIES + "WHERE products.id < :beforeId "
+        + "GROUP BY products.id ORDER BY products.id DESC LIMIT :limit")
+    List<ProductSummary> loadProductSummariesBefore(int beforeId, int limit);
+
     @Query("select * from products where id = :productId")
     LiveData<ProductEntity> loadProduct(int productId);
 
     @Query("select * from products where id = :productId")
     ProductEntity loadProductSync(int productId);
 
+    @Query("SELECT COUNT(*) FROM products")
+    int countProducts();
+
+    /** The given products, for reading into {@link ProductColumns}. */
+    @Query("SELECT id, name, description, price FROM products WHERE id IN (:productIds)")
+    Cursor loadProductColumns(int[] productIds);
+
     @Query("SELECT products.* FROM products JOIN productsFts ON (products.id = productsFts.rowid) "
         + "WHERE productsFts MATCH :query")
     LiveData<List<ProductEntity>> searchAllProducts(String query);
+
+    @Query("SELECT products.* FROM products JOIN productsFts ON (products.id = productsFts.rowid) "
+        + "WHERE productsFts MATCH :query")
+    List<ProductEntity> searchAllProductsSync(String query);
+
+    /** Products matching {@code query}, for reading into {@link ProductColumns}. */
+    @Query("SELECT products.id, products.name, products.description, products.price "
+        + "FROM products JOIN productsFts ON (products.id = productsFts.rowid) "
+        + "WHERE productsFts MATCH :query")
+    Cursor searchProductColumns(String query);
+
+    /**
+     * Id and FTS4 {@code matchinfo} of every product matching {@code query}. Only touches the
+     * full-text index, so it stays cheap even when most of the catalog matches.
+     *
+     * @see ProductSearchResult
+     */
+    @Query("SELECT docid, matchinfo(productsFts, '" + ProductSearchResult.MATCHINFO_FORMAT + "') "
+        + "FROM productsFts WHERE productsFts MATCH :query")
+    Cursor searchMatchInfo(String query);
+
+    /** Highlighted snippets of the given products for {@code query}. */
+    @Query("SELECT docid AS id, snippet(productsFts, '<b>', '</b>', '…', -1, 10) AS snippet "
+        + "FROM productsFts WHERE productsFts MATCH :query AND docid IN (:productIds)")
+    List<ProductSearchResult.Hit> loadSearchHits(String query, int[] productIds);
 }
@@ -31,7 +31,7 @@ import java.util.Date;
                         parentColumns = "id",
                         childColumns = "productId",
                         onDelete = ForeignKey.CASCADE)},
-        indices = {@Index(value = "productId")
+        indices = {@Index(value = {"productId", "postedAt"})
         })
 public class CommentEntity implements Comment {
     @PrimaryKey(autoGenerate = true)
@@ -19,8 +19,14 @@ package com.example.android.persistence.db.entity;
 import androidx.room.Entity;
 import androidx.room.Fts4;
 
+/**
+ * Full-text index over the product names and descriptions.
+ * <p>
+ * The prefix indexes on 2 and 3 character prefixes let the short prefix queries typed into the
+ * search box be answered from the index instead of scanning every term.
+ */
 @Entity(tableName = "productsFts")
-@Fts4(contentEntity = ProductEntity.class)
+@Fts4(contentEntity = ProductEntity.class, prefix = {2, 3})
 public class ProductFtsEntity {
   private String name;
   private String description;
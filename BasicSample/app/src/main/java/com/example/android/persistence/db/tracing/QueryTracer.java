@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/java/QueryTracer.java by update_tracing.sh, do not edit.
+package com.example.android.persistence.db.tracing;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long every statement run against a database takes.
+ * <p>
+ * Install it with {@code RoomDatabase.Builder#openHelperFactory}, wrapping the factory the
+ * database would otherwise use:
+ * <pre>
+ * builder.openHelperFactory(tracer.wrap(new FrameworkSQLiteOpenHelperFactory()))
+ * </pre>
+ * Statements are keyed by their SQL, so every call of a DAO method lands in the same
+ * {@link QueryStats}. A query is timed until its cursor is closed, because SQLite only steps
+ * through the rows while the cursor is read. Transactions are timed from {@code BEGIN} to the
+ * outermost {@code endTransaction()}.
+ * <p>
+ * Statements slower than the threshold are logged with the output of
+ * {@code EXPLAIN QUERY PLAN}, and the most recent ones are kept for {@link #getSlowQueries()}.
+ */
+public class QueryTracer {
+
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD_MS = 100;
+
+    private static final String TAG = "QueryTracer";
+
+    private static final int MAX_SLOW_QUERIES = 32;
+
+    private final long mSlowQueryThresholdNanos;
+
+    // All guarded by this
+    private final Map<String, QueryStats> mQueryStats = new HashMap<>();
+    private final QueryStats mTransactionStats = new QueryStats();
+    private final ArrayDeque<SlowQuery> mSlowQueries = new ArrayDeque<>();
+
+    public QueryTracer() {
+        this(DEFAULT_SLOW_QUERY_THRESHOLD_MS);
+    }
+
+    public QueryTracer(long slowQueryThresholdMs) {
+        mSlowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMs);
+    }
+
+    /**
+     * Traces the database built by {@code builder} if the app is debuggable.
+     *
+     * @return the tracer, or {@code null} in release builds.
+     */
+    @Nullable
+    public static QueryTracer installIfDebuggable(@NonNull Context context,
+            @NonNull RoomDatabase.Builder<?> builder) {
+        if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return null;
+        }
+        QueryTracer tracer = new QueryTracer();
+        builder.openHelperFactory(tracer.wrap(new FrameworkSQLiteOpenHelperFactory()));
+        return tracer;
+    }
+
+    /** Returns a factory whose databases report to this tracer. */
+    @NonNull
+    public SupportSQLiteOpenHelper.Factory wrap(@NonNull SupportSQLiteOpenHelper.Factory factory) {
+        return new TracingOpenHelper.Factory(factory, this);
+    }
+
+    /** A snapshot of the stats of every statement run so far, keyed by SQL. */
+    @NonNull
+    public synchronized Map<String, QueryStats> getQueryStats() {
+        Map<String, QueryStats> snapshot = new HashMap<>();
+        for (Map.Entry<String, QueryStats> entry : mQueryStats.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().copy());
+        }
+        return snapshot;
+    }
+
+    /** A snapshot of the stats of {@code sql}, or {@code null} if it hasn't run. */
+    @Nullable
+    public synchronized QueryStats getQueryStats(@NonNull String sql) {
+        QueryStats stats = mQueryStats.get(sql);
+        return stats == null ? null : stats.copy();
+    }
+
+    @NonNull
+    public synchronized QueryStats getTransactionStats() {
+        return mTransactionStats.copy();
+    }
+
+    /** The most recent slow statements, oldest first. */
+    @NonNull
+    public synchronized List<SlowQuery> getSlowQueries() {
+        return new ArrayList<>(mSlowQueries);
+    }
+
+    public synchronized void reset() {
+        mQueryStats.clear();
+        mSlowQueries.clear();
+        mTransactionStats.reset();
+    }
+
+    /** Logs the stats of every statement, most expensive first. */
+    public void logStats() {
+        List<Map.Entry<String, QueryStats>> entries = new ArrayList<>(getQueryStats().entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, QueryStats>>() {
+            @Override
+            public int compare(Map.Entry<String, QueryStats> a, Map.Entry<String, QueryStats> b) {
+                long difference = b.getValue().getTotalNanos() - a.getValue().getTotalNanos();
+                return difference < 0 ? -1 : difference == 0 ? 0 : 1;
+            }
+        });
+        for (Map.Entry<String, QueryStats> entry : entries) {
+            Log.d(TAG, entry.getValue() + " " + entry.getKey());
+        }
+        Log.d(TAG, getTransactionStats() + " transactions");
+    }
+
+    boolean isSlow(long nanos) {
+        return nanos >= mSlowQueryThresholdNanos;
+    }
+
+    synchronized void onStatement(String sql, long nanos, long rows) {
+        QueryStats stats = mQueryStats.get(sql);
+        if (stats == null) {
+            stats = new QueryStats();
+            mQueryStats.put(sql, stats);
+        }
+        stats.record(nanos, rows);
+    }
+
+    void onSlowStatement(String sql, long nanos, List<String> plan) {
+        SlowQuery slowQuery = new SlowQuery(sql, nanos, plan);
+        Log.w(TAG, "Slow query " + slowQuery);
+        synchronized (this) {
+            if (mSlowQueries.size() == MAX_SLOW_QUERIES) {
+                mSlowQueries.removeFirst();
+            }
+            mSlowQueries.addLast(slowQuery);
+        }
+    }
+
+    synchronized void onTransaction(long nanos) {
+        mTransactionStats.record(nanos, 0);
+    }
+}
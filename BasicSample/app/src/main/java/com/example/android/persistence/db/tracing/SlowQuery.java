@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/java/SlowQuery.java by update_tracing.sh, do not edit.
+package com.example.android.persistence.db.tracing;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** A statement that took longer than the {@link QueryTracer} threshold, with its query plan. */
+public class SlowQuery {
+
+    private final String mSql;
+
+    private final long mNanos;
+
+    private final List<String> mPlan;
+
+    SlowQuery(String sql, long nanos, List<String> plan) {
+        mSql = sql;
+        mNanos = nanos;
+        mPlan = plan;
+    }
+
+    public String getSql() {
+        return mSql;
+    }
+
+    public long getNanos() {
+        return mNanos;
+    }
+
+    /**
+     * The {@code detail} column of {@code EXPLAIN QUERY PLAN}, one line per step. Empty for
+     * statements that have no plan, such as schema changes.
+     */
+    public List<String> getPlan() {
+        return mPlan;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(TimeUnit.NANOSECONDS.toMillis(mNanos)).append(" ms: ").append(mSql);
+        for (String step : mPlan) {
+            builder.append("\n  ").append(step);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.model;
+
+import java.util.Date;
+
+/**
+ * A product together with how many comments it has and when the latest one was posted, as shown
+ * in the product list.
+ */
+public class ProductSummary implements Product {
+    private int id;
+    private String name;
+    private String description;
+    private int price;
+    private int commentCount;
+    private Date lastCommentAt;
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    @Override
+    public int getPrice() {
+        return price;
+    }
+
+    public void setPrice(int price) {
+        this.price = price;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    public void setCommentCount(int commentCount) {
+        this.commentCount = commentCount;
+    }
+
+    /** When the latest comment was posted, or {@code null} if there are no comments. */
+    public Date getLastCommentAt() {
+        return lastCommentAt;
+    }
+
+    public void setLastCommentAt(Date lastCommentAt) {
+        this.lastCommentAt = lastCommentAt;
+    }
+}
@@ -16,8 +16,14 @@
 
 package com.example.android.persistence.ui;
 
+import androidx.annotation.Nullable;
 import androidx.databinding.BindingAdapter;
+import android.text.format.DateUtils;
 import android.view.View;
+import android.widget.TextView;
+
+import com.example.android.persistence.R;
+import com.example.android.persistence.model.ProductSummary;
 
 
 public class BindingAdapters {
@@ -25,4 +31,17 @@ public class BindingAdapters {
     public static void showHide(View view, boolean show) {
         view.setVisibility(show ? View.VISIBLE : View.GONE);
     }
+
+    @BindingAdapter("commentSummary")
+    public static void showCommentSummary(TextView view, @Nullable ProductSummary summary) {
+        if (summary == null) {
+            view.setText(null);
+        } else if (summary.getCommentCount() == 0 || summary.getLastCommentAt() == null) {
+            view.setText(R.string.no_comments);
+        } else {
+            view.setText(view.getResources().getQuantityString(R.plurals.product_comments,
+                    summary.getCommentCount(), summary.getCommentCount(),
+                    DateUtils.getRelativeTimeSpanString(summary.getLastCommentAt().getTime())));
+        }
+    }
 }
\ No newline at end of file
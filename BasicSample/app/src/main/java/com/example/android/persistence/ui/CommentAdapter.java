@@ -19,9 +19,8 @@ package com.example.android.persistence.ui;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.databinding.DataBindingUtil;
-import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.paging.PagingDataAdapter;
 import androidx.recyclerview.widget.DiffUtil;
-import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -31,13 +30,14 @@ import com.example.android.persistence.databinding.CommentItemBinding;
 import com.example.android.persistence.db.entity.CommentEntity;
 import com.example.android.persistence.R;
 
-public class CommentAdapter extends ListAdapter<CommentEntity, CommentAdapter.CommentViewHolder> {
+public class CommentAdapter
+        extends PagingDataAdapter<CommentEntity, CommentAdapter.CommentViewHolder> {
 
     @Nullable
     private final CommentClickCallback mCommentClickCallback;
 
     CommentAdapter(@Nullable CommentClickCallback commentClickCallback) {
-        super(new AsyncDifferConfig.Builder<>(new DiffUtil.ItemCallback<CommentEntity>() {
+        super(new DiffUtil.ItemCallback<CommentEntity>() {
             @Override
             public boolean areItemsTheSame(@NonNull CommentEntity old,
                     @NonNull CommentEntity comment) {
@@ -52,7 +52,7 @@ public class CommentAdapter extends ListAdapter<CommentEntity, CommentAdapter.Co
                         && old.getProductId() == comment.getProductId()
                         && TextUtils.equals(old.getText(), comment.getText());
             }
-        }).build());
+        });
         mCommentClickCallback = commentClickCallback;
     }
 
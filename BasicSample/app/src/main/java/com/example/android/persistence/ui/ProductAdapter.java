@@ -16,69 +16,71 @@
 
 package com.example.android.persistence.ui;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.databinding.DataBindingUtil;
 import androidx.annotation.Nullable;
-import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
-import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import com.example.android.persistence.databinding.ProductItemBinding;
+import com.example.android.persistence.db.ProductColumns;
 import com.example.android.persistence.model.Product;
+import com.example.android.persistence.model.ProductSummary;
 import com.example.android.persistence.R;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
+/**
+ * Shows a list of products, binding every row straight from a {@link ProductColumns} list.
+ * <p>
+ * New lists are diffed on a background thread; a list that is replaced before its diff finishes
+ * is dropped, and changed products only rebind the fields that changed.
+ */
 public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductViewHolder> {
 
-    List<? extends Product> mProductList;
+    // Only diffs the lists. The rows are bound from mProducts with each holder's own row, since
+    // a list view moves a single row and the differ reads it on the diff thread.
+    private final AsyncListDiffer<Product> mDiffer;
+
+    // The list the differ has shown, and the last one handed to it
+    private ProductColumns mProducts = ProductColumns.EMPTY;
+    private ProductColumns mSubmitted = ProductColumns.EMPTY;
 
     @Nullable
     private final ProductClickCallback mProductClickCallback;
 
-    public ProductAdapter(@Nullable ProductClickCallback clickCallback) {
+    /**
+     * @param diffExecutor runs the diffs between the old and new lists. It must run one diff at a
+     *                     time, like {@code AppExecutors#listDiff()}, because a diff reads the
+     *                     list views that the previous diff read.
+     */
+    public ProductAdapter(@Nullable ProductClickCallback clickCallback,
+            @NonNull Executor diffExecutor) {
         mProductClickCallback = clickCallback;
+        mDiffer = new AsyncListDiffer<>(new AdapterListUpdateCallback(this),
+                new AsyncDifferConfig.Builder<>(new ProductColumnsDiffCallback())
+                        .setBackgroundThreadExecutor(diffExecutor)
+                        .build());
         setHasStableIds(true);
     }
 
-    public void setProductList(final List<? extends Product> productList) {
-        if (mProductList == null) {
-            mProductList = productList;
-            notifyItemRangeInserted(0, productList.size());
-        } else {
-            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-                @Override
-                public int getOldListSize() {
-                    return mProductList.size();
-                }
-
-                @Override
-                public int getNewListSize() {
-                    return productList.size();
-                }
-
-                @Override
-                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                    return mProductList.get(oldItemPosition).getId() ==
-                            productList.get(newItemPosition).getId();
-                }
-
-                @Override
-                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                    Product newProduct = productList.get(newItemPosition);
-                    Product oldProduct = mProductList.get(oldItemPosition);
-                    return newProduct.getId() == oldProduct.getId()
-                            && TextUtils.equals(newProduct.getDescription(), oldProduct.getDescription())
-                            && TextUtils.equals(newProduct.getName(), oldProduct.getName())
-                            && newProduct.getPrice() == oldProduct.getPrice();
-                }
-            });
-            mProductList = productList;
-            result.dispatchUpdatesTo(this);
+    @MainThread
+    public void setProducts(@Nullable ProductColumns products) {
+        final ProductColumns newProducts = products == null ? ProductColumns.EMPTY : products;
+        if (newProducts == mSubmitted) {
+            return;
         }
+        mSubmitted = newProducts;
+        // Runs right after the differ dispatched this list's updates, and never if a newer list
+        // replaced it first
+        mDiffer.submitList(newProducts.asList(), () -> mProducts = newProducts);
     }
 
     @Override
@@ -93,27 +95,83 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
 
     @Override
     public void onBindViewHolder(@NonNull ProductViewHolder holder, int position) {
-        holder.binding.setProduct(mProductList.get(position));
-        holder.binding.executePendingBindings();
+        holder.bind(holder.row.set(mProducts, position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ProductViewHolder holder, int position,
+            @NonNull List<Object> payloads) {
+        holder.bind(holder.row.set(mProducts, position), payloads);
     }
 
     @Override
     public int getItemCount() {
-        return mProductList == null ? 0 : mProductList.size();
+        // The differ's list is the one its updates were dispatched for
+        return mDiffer.getCurrentList().size();
     }
 
     @Override
     public long getItemId(int position) {
-        return mProductList.get(position).getId();
+        return mProducts.getId(position);
     }
 
     static class ProductViewHolder extends RecyclerView.ViewHolder {
 
         final ProductItemBinding binding;
 
+        // Bound instead of an entity by ProductAdapter, which moves it to the row being bound
+        final ProductColumns.Row row = new ProductColumns.Row();
+
         public ProductViewHolder(ProductItemBinding binding) {
             super(binding.getRoot());
             this.binding = binding;
         }
+
+        void bind(Product product) {
+            binding.setProduct(product);
+            binding.setSummary(null);
+            binding.executePendingBindings();
+        }
+
+        /** Binds the product along with its comment count and latest comment date. */
+        void bind(ProductSummary summary) {
+            binding.setProduct(summary);
+            binding.setSummary(summary);
+            binding.executePendingBindings();
+        }
+
+        /**
+         * Rebinds only the fields named by the {@link ProductDiffCallback} payloads, or the whole
+         * item if there are none.
+         */
+        void bind(Product product, List<Object> payloads) {
+            int changed = 0;
+            for (Object payload : payloads) {
+                changed |= (Integer) payload;
+            }
+            if (changed == 0) {
+                if (product instanceof ProductSummary) {
+                    bind((ProductSummary) product);
+                } else {
+                    bind(product);
+                }
+                return;
+            }
+            // The binding keeps the previous product for the click callback, which only needs
+            // the id, and that never changes for a payload
+            if ((changed & ProductDiffCallback.CHANGED_NAME) != 0) {
+                binding.name.setText(product.getName());
+            }
+            if ((changed & ProductDiffCallback.CHANGED_DESCRIPTION) != 0) {
+                binding.description.setText(product.getDescription());
+            }
+            if ((changed & ProductDiffCallback.CHANGED_PRICE) != 0) {
+                binding.price.setText(itemView.getResources()
+                        .getString(R.string.product_price, product.getPrice()));
+            }
+            if ((changed & ProductDiffCallback.CHANGED_COMMENTS) != 0) {
+                BindingAdapters.showCommentSummary(binding.comments, (ProductSummary) product);
+            }
+        }
     }
 }
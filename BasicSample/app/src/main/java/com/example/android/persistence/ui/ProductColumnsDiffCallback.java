@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.ui;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.android.persistence.db.ProductColumns;
+import com.example.android.persistence.model.Product;
+
+/**
+ * Diffs the rows of two {@link ProductColumns#asList()} views by id, with the same change
+ * payloads as {@link ProductDiffCallback}. Lists that share a string table compare names and
+ * descriptions by reference, so the diff reads no strings at all.
+ */
+class ProductColumnsDiffCallback extends DiffUtil.ItemCallback<Product> {
+
+    @Override
+    public boolean areItemsTheSame(@NonNull Product old, @NonNull Product product) {
+        return old.getId() == product.getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(@NonNull Product old, @NonNull Product product) {
+        return changedFields((ProductColumns.Row) old, (ProductColumns.Row) product) == 0;
+    }
+
+    @Nullable
+    @Override
+    public Object getChangePayload(@NonNull Product old, @NonNull Product product) {
+        return changedFields((ProductColumns.Row) old, (ProductColumns.Row) product);
+    }
+
+    private static int changedFields(ProductColumns.Row old, ProductColumns.Row product) {
+        int changed = 0;
+        if (old.getPrice() != product.getPrice()) {
+            changed |= ProductDiffCallback.CHANGED_PRICE;
+        }
+        if (!old.nameEquals(product)) {
+            changed |= ProductDiffCallback.CHANGED_NAME;
+        }
+        if (!old.descriptionEquals(product)) {
+            changed |= ProductDiffCallback.CHANGED_DESCRIPTION;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.ui;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.ObjectsCompat;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.android.persistence.model.Product;
+import com.example.android.persistence.model.ProductSummary;
+
+/**
+ * Diffs products by id and reports which fields of a changed product differ, so the adapters can
+ * rebind only those views.
+ * <p>
+ * The change payload is an {@link Integer} bit mask of the {@code CHANGED_*} flags.
+ */
+class ProductDiffCallback<T extends Product> extends DiffUtil.ItemCallback<T> {
+
+    static final int CHANGED_NAME = 1;
+    static final int CHANGED_DESCRIPTION = 1 << 1;
+    static final int CHANGED_PRICE = 1 << 2;
+    /** The comment count or latest comment date of a {@link ProductSummary}. */
+    static final int CHANGED_COMMENTS = 1 << 3;
+
+    @Override
+    public boolean areItemsTheSame(@NonNull T old, @NonNull T product) {
+        return old.getId() == product.getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(@NonNull T old, @NonNull T product) {
+        return changedFields(old, product) == 0;
+    }
+
+    @Nullable
+    @Override
+    public Object getChangePayload(@NonNull T old, @NonNull T product) {
+        return changedFields(old, product);
+    }
+
+    private static int changedFields(Product old, Product product) {
+        int changed = 0;
+        // Compare the price first, it's the cheapest and the most likely to change
+        if (old.getPrice() != product.getPrice()) {
+            changed |= CHANGED_PRICE;
+        }
+        if (!TextUtils.equals(old.getName(), product.getName())) {
+            changed |= CHANGED_NAME;
+        }
+        if (!TextUtils.equals(old.getDescription(), product.getDescription())) {
+            changed |= CHANGED_DESCRIPTION;
+        }
+        if (old instanceof ProductSummary && product instanceof ProductSummary) {
+            ProductSummary oldSummary = (ProductSummary) old;
+            ProductSummary summary = (ProductSummary) product;
+            if (oldSummary.getCommentCount() != summary.getCommentCount()
+                    || !ObjectsCompat.equals(oldSummary.getLastCommentAt(),
+                            summary.getLastCommentAt())) {
+                changed |= CHANGED_COMMENTS;
+            }
+        }
+        return changed;
+    }
+}
@@ -49,6 +49,7 @@ public class ProductFragment extends Fragment {
         // Create and set the adapter for the RecyclerView.
         mCommentAdapter = new CommentAdapter(mCommentClickCallback);
         mBinding.commentList.setAdapter(mCommentAdapter);
+        mBinding.setIsLoading(true);
         return mBinding.getRoot();
     }
 
@@ -71,14 +72,10 @@ public class ProductFragment extends Fragment {
     }
 
     private void subscribeToModel(final ProductViewModel model) {
-        // Observe comments
-        model.getComments().observe(getViewLifecycleOwner(), commentEntities -> {
-            if (commentEntities != null) {
-                mBinding.setIsLoading(false);
-                mCommentAdapter.submitList(commentEntities);
-            } else {
-                mBinding.setIsLoading(true);
-            }
+        // Observe comments. The newest page shows up first and older ones stream in on scroll.
+        model.getComments().observe(getViewLifecycleOwner(), pagingData -> {
+            mBinding.setIsLoading(false);
+            mCommentAdapter.submitData(getViewLifecycleOwner().getLifecycle(), pagingData);
         });
     }
 
@@ -18,6 +18,7 @@ package com.example.android.persistence.ui;
 
 import android.os.Bundle;
 import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,20 +28,20 @@ import androidx.annotation.Nullable;
 import androidx.databinding.DataBindingUtil;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Lifecycle;
-import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.android.persistence.BasicApp;
 import com.example.android.persistence.R;
 import com.example.android.persistence.databinding.ListFragmentBinding;
-import com.example.android.persistence.db.entity.ProductEntity;
 import com.example.android.persistence.viewmodel.ProductListViewModel;
 
-import java.util.List;
-
 public class ProductListFragment extends Fragment {
 
     public static final String TAG = "ProductListFragment";
 
+    private ProductPagingAdapter mProductPagingAdapter;
+
     private ProductAdapter mProductAdapter;
 
     private ListFragmentBinding mBinding;
@@ -51,8 +52,12 @@ public class ProductListFragment extends Fragment {
             @Nullable Bundle savedInstanceState) {
         mBinding = DataBindingUtil.inflate(inflater, R.layout.list_fragment, container, false);
 
-        mProductAdapter = new ProductAdapter(mProductClickCallback);
-        mBinding.productsList.setAdapter(mProductAdapter);
+        mProductPagingAdapter = new ProductPagingAdapter(mProductClickCallback);
+        // Diff the search results on their own thread, so queries never wait for a diff
+        mProductAdapter = new ProductAdapter(mProductClickCallback,
+                ((BasicApp) requireActivity().getApplication()).getExecutors().listDiff());
+        mBinding.productsList.setAdapter(mProductPagingAdapter);
+        mBinding.setIsLoading(true);
 
         return mBinding.getRoot();
     }
@@ -67,28 +72,57 @@ public class ProductListFragment extends Fragment {
             Editable query = mBinding.productsSearchBox.getText();
             viewModel.setQuery(query);
         });
+        // Search as the user types; the view model debounces the keystrokes
+        mBinding.productsSearchBox.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
 
-        subscribeUi(viewModel.getProducts());
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setQuery(s.toString());
+            }
+        });
+
+        subscribeUi(viewModel);
     }
 
-    private void subscribeUi(LiveData<List<ProductEntity>> liveData) {
-        // Update the list when the data changes
-        liveData.observe(getViewLifecycleOwner(), myProducts -> {
+    private void subscribeUi(ProductListViewModel viewModel) {
+        // Hand new pages of the catalog to the paging adapter
+        viewModel.getProductPages().observe(getViewLifecycleOwner(), pagingData -> {
+            mBinding.setIsLoading(false);
+            mProductPagingAdapter.submitData(getViewLifecycleOwner().getLifecycle(), pagingData);
+            // espresso does not know how to wait for data binding's loop so we execute changes
+            // sync.
+            mBinding.executePendingBindings();
+        });
+        // Show the search results while there is a query, and the catalog otherwise
+        viewModel.getSearchResults().observe(getViewLifecycleOwner(), myProducts -> {
             if (myProducts != null) {
                 mBinding.setIsLoading(false);
-                mProductAdapter.setProductList(myProducts);
+                showAdapter(mProductAdapter);
+                mProductAdapter.setProducts(myProducts);
             } else {
-                mBinding.setIsLoading(true);
+                showAdapter(mProductPagingAdapter);
             }
-            // espresso does not know how to wait for data binding's loop so we execute changes
-            // sync.
             mBinding.executePendingBindings();
         });
     }
 
+    private void showAdapter(RecyclerView.Adapter<?> adapter) {
+        if (mBinding.productsList.getAdapter() != adapter) {
+            mBinding.productsList.setAdapter(adapter);
+        }
+    }
+
     @Override
     public void onDestroyView() {
         mBinding = null;
+        mProductPagingAdapter = null;
         mProductAdapter = null;
         super.onDestroyView();
     }
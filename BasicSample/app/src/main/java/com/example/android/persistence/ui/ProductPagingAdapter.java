@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.ui;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.databinding.DataBindingUtil;
+import androidx.paging.PagingDataAdapter;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import com.example.android.persistence.databinding.ProductItemBinding;
+import com.example.android.persistence.model.ProductSummary;
+import com.example.android.persistence.R;
+
+import java.util.List;
+
+/**
+ * Shows the paged product catalog, with the comment count and latest comment of every product.
+ * Pages are diffed off the main thread by the paging library, and changed products only rebind
+ * the fields that changed.
+ */
+public class ProductPagingAdapter
+        extends PagingDataAdapter<ProductSummary, ProductAdapter.ProductViewHolder> {
+
+    @Nullable
+    private final ProductClickCallback mProductClickCallback;
+
+    ProductPagingAdapter(@Nullable ProductClickCallback clickCallback) {
+        super(new ProductDiffCallback<>());
+        mProductClickCallback = clickCallback;
+    }
+
+    @Override
+    @NonNull
+    public ProductAdapter.ProductViewHolder onCreateViewHolder(@NonNull ViewGroup parent,
+            int viewType) {
+        ProductItemBinding binding = DataBindingUtil
+                .inflate(LayoutInflater.from(parent.getContext()), R.layout.product_item,
+                        parent, false);
+        binding.setCallback(mProductClickCallback);
+        return new ProductAdapter.ProductViewHolder(binding);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ProductAdapter.ProductViewHolder holder, int position) {
+        holder.bind(getItem(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ProductAdapter.ProductViewHolder holder, int position,
+            @NonNull List<Object> payloads) {
+        holder.bind(getItem(position), payloads);
+    }
+}
@@ -17,27 +17,28 @@
 package com.example.android.persistence.viewmodel;
 
 import android.app.Application;
-import android.text.TextUtils;
 
 import com.example.android.persistence.BasicApp;
 import com.example.android.persistence.DataRepository;
-import com.example.android.persistence.db.entity.ProductEntity;
-
-import java.util.List;
+import com.example.android.persistence.ProductSearchEngine;
+import com.example.android.persistence.db.ProductColumns;
+import com.example.android.persistence.model.ProductSummary;
 
 import androidx.annotation.NonNull;
-import androidx.arch.core.util.Function;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.SavedStateHandle;
-import androidx.lifecycle.Transformations;
+import androidx.lifecycle.ViewModelKt;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 
 public class ProductListViewModel extends AndroidViewModel {
     private static final String QUERY_KEY = "QUERY";
 
     private final SavedStateHandle mSavedStateHandler;
     private final DataRepository mRepository;
-    private final LiveData<List<ProductEntity>> mProducts;
+    private final LiveData<PagingData<ProductSummary>> mProductPages;
+    private final ProductSearchEngine mSearchEngine;
 
     public ProductListViewModel(@NonNull Application application,
             @NonNull SavedStateHandle savedStateHandle) {
@@ -46,30 +47,41 @@ public class ProductListViewModel extends AndroidViewModel {
 
         mRepository = ((BasicApp) application).getRepository();
 
-        // Use the savedStateHandle.getLiveData() as the input to switchMap,
-        // allowing us to recalculate what LiveData to get from the DataRepository
-        // based on what query the user has entered
-        mProducts = Transformations.switchMap(
-                savedStateHandle.getLiveData("QUERY", null),
-                (Function<CharSequence, LiveData<List<ProductEntity>>>) query -> {
-                    if (TextUtils.isEmpty(query)) {
-                        return mRepository.getProducts();
-                    }
-                    return mRepository.searchProducts("*" + query + "*");
-                });
+        // Cache the pages in the ViewModel so they survive configuration changes
+        mProductPages = PagingLiveData.cachedIn(mRepository.getProductPages(),
+                ViewModelKt.getViewModelScope(this));
+
+        // Search as the user types. The engine debounces keystrokes and reuses earlier results
+        // where it can; restore the query that was saved before process death.
+        mSearchEngine = new ProductSearchEngine(mRepository,
+                ((BasicApp) application).getExecutors().diskRead());
+        mSearchEngine.setQuery(savedStateHandle.get(QUERY_KEY));
     }
 
     public void setQuery(CharSequence query) {
         // Save the user's query into the SavedStateHandle.
         // This ensures that we retain the value across process death
-        // and is used as the input into the Transformations.switchMap above
         mSavedStateHandler.set(QUERY_KEY, query);
+        mSearchEngine.setQuery(query);
+    }
+
+    @Override
+    protected void onCleared() {
+        mSearchEngine.cancel();
+    }
+
+    /**
+     * Expose the paged catalog so the UI can observe it.
+     */
+    public LiveData<PagingData<ProductSummary>> getProductPages() {
+        return mProductPages;
     }
 
     /**
-     * Expose the LiveData Products query so the UI can observe it.
+     * Expose the LiveData search results so the UI can observe it. Emits {@code null} while there
+     * is no query.
      */
-    public LiveData<List<ProductEntity>> getProducts() {
-        return mProducts;
+    public LiveData<ProductColumns> getSearchResults() {
+        return mSearchEngine.getResults();
     }
 }
@@ -20,7 +20,10 @@ import android.app.Application;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelKt;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 import androidx.annotation.NonNull;
 
 import com.example.android.persistence.BasicApp;
@@ -28,29 +31,29 @@ import com.example.android.persistence.DataRepository;
 import com.example.android.persistence.db.entity.CommentEntity;
 import com.example.android.persistence.db.entity.ProductEntity;
 
-import java.util.List;
-
 public class ProductViewModel extends AndroidViewModel {
 
     private final LiveData<ProductEntity> mObservableProduct;
 
     private final int mProductId;
 
-    private final LiveData<List<CommentEntity>> mObservableComments;
+    private final LiveData<PagingData<CommentEntity>> mObservableComments;
 
     public ProductViewModel(@NonNull Application application, DataRepository repository,
             final int productId) {
         super(application);
         mProductId = productId;
 
-        mObservableComments = repository.loadComments(mProductId);
+        // Cache the pages in the ViewModel so they survive configuration changes
+        mObservableComments = PagingLiveData.cachedIn(repository.getCommentPages(mProductId),
+                ViewModelKt.getViewModelScope(this));
         mObservableProduct = repository.loadProduct(mProductId);
     }
 
     /**
-     * Expose the LiveData Comments query so the UI can observe it.
+     * Expose the comments, newest first and page by page, so the UI can observe them.
      */
-    public LiveData<List<CommentEntity>> getComments() {
+    public LiveData<PagingData<CommentEntity>> getComments() {
         return mObservableComments;
     }
 
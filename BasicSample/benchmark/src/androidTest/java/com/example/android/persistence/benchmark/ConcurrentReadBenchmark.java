@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.persistence.benchmark;
+
+import android.os.Process;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.filters.LargeTest;
+
+import com.example.android.persistence.InstrumentedExecutor;
+import com.example.android.persistence.db.AppDatabase;
+import com.example.android.persistence.db.dao.ProductDao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how product reads scale with the number of reader threads on a write-ahead logged
+ * {@link AppDatabase}, on its own and while another thread keeps a write transaction open, as
+ * seeding or a sync does.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class ConcurrentReadBenchmark {
+
+    private static final int PRODUCT_COUNT = 100_000;
+
+    private static final int READS_PER_ITERATION = 400;
+
+    private static final int THROUGHPUT_ITERATIONS = 20;
+
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    @Parameterized.Parameters(name = "readers={0}")
+    public static Collection<Object[]> readerCounts() {
+        return Arrays.asList(new Object[][]{{1}, {2}, {4}, {8}});
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mReaders;
+
+    private AppDatabase mDatabase;
+
+    private InstrumentedExecutor mReadExecutor;
+
+    // One generator per reader, so readers don't contend on it
+    private Random[] mRandoms;
+
+    public ConcurrentReadBenchmark(int readers) {
+        mReaders = readers;
+    }
+
+    @Before
+    public void openDb() {
+        mDatabase = SeededDatabase.open(ApplicationProvider.getApplicationContext(),
+                PRODUCT_COUNT);
+        mReadExecutor = new InstrumentedExecutor("reader", mReaders,
+                InstrumentedExecutor.UNBOUNDED, Process.THREAD_PRIORITY_DEFAULT);
+        mRandoms = new Random[mReaders];
+        for (int r = 0; r < mReaders; r++) {
+            mRandoms[r] = new Random(r);
+        }
+    }
+
+    @After
+    public void closeDb() throws InterruptedException {
+        mReadExecutor.shutdown();
+        mReadExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        mDatabase.close();
+    }
+
+    @Test
+    public void loadProductSync() throws InterruptedException {
+        measureReads("loadProductSync_readers" + mReaders);
+    }
+
+    @Test
+    public void loadProductSyncDuringWrites() throws InterruptedException {
+        Thread writer = new Thread(this::writeUntilInterrupted, "writer");
+        writer.start();
+        try {
+            measureReads("loadProductSyncDuringWrites_readers" + mReaders);
+        } finally {
+            writer.interrupt();
+            writer.join();
+        }
+    }
+
+    private void measureReads(String label) throws InterruptedException {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            readBatch();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < THROUGHPUT_ITERATIONS; i++) {
+            readBatch();
+        }
+        LatencyReport.throughput(label, (long) READS_PER_ITERATION * THROUGHPUT_ITERATIONS,
+                System.nanoTime() - start);
+    }
+
+    /** Spreads a fixed number of lookups over the readers and waits for all of them. */
+    private void readBatch() throws InterruptedException {
+        final ProductDao productDao = mDatabase.productDao();
+        final CountDownLatch done = new CountDownLatch(mReaders);
+        final int readsPerReader = READS_PER_ITERATION / mReaders;
+        for (int r = 0; r < mReaders; r++) {
+            final Random random = mRandoms[r];
+            mReadExecutor.execute(() -> {
+                for (int i = 0; i < readsPerReader; i++) {
+                    productDao.loadProductSync(random.nextInt(PRODUCT_COUNT) + 1);
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    /** Inserts and deletes rows past the seeded catalog in long transactions. */
+    private void writeUntilInterrupted() {
+        SupportSQLiteDatabase db = mDatabase.getOpenHelper().getWritableDatabase();
+        while (!Thread.currentThread().isInterrupted()) {
+            db.beginTransaction();
+            try {
+                for (int i = 1; i <= WRITE_BATCH_SIZE; i++) {
+                    mDatabase.productDao().insertAll(Collections.singletonList(
+                            SeededDatabase.createProduct(PRODUCT_COUNT + i)));
+                }
+                db.execSQL("DELETE FROM products WHERE id > " + PRODUCT_COUNT);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+}
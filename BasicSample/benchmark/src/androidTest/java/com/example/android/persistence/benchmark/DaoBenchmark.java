@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.persistence.benchmark;
+
+import static org.junit.Assert.assertFalse;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.filters.LargeTest;
+
+import com.example.android.persistence.db.AppDatabase;
+import com.example.android.persistence.db.ProductSearchResult;
+import com.example.android.persistence.db.dao.CommentDao;
+import com.example.android.persistence.db.dao.ProductDao;
+import com.example.android.persistence.db.entity.ProductEntity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link ProductDao} and {@link CommentDao} against catalogs of production size, with
+ * {@link SeededDatabase#COMMENTS_PER_PRODUCT} comments per product.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class DaoBenchmark {
+
+    private static final int INSERT_BATCH_SIZE = 100;
+
+    private static final int LOOKUP_ITERATIONS = 1000;
+
+    private static final int SEARCH_ITERATIONS = 50;
+
+    private static final int RANKED_LIMIT = 50;
+
+    private static final int PAGE_SIZE = 50;
+
+    @Parameterized.Parameters(name = "products={0}")
+    public static Collection<Object[]> productCounts() {
+        return Arrays.asList(new Object[][]{{10_000}, {100_000}, {1_000_000}});
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mProductCount;
+
+    private final Random mRandom = new Random(42);
+
+    private AppDatabase mDatabase;
+
+    public DaoBenchmark(int productCount) {
+        mProductCount = productCount;
+    }
+
+    @Before
+    public void openDb() {
+        mDatabase = SeededDatabase.open(ApplicationProvider.getApplicationContext(),
+                mProductCount);
+    }
+
+    @After
+    public void closeDb() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void insertAll() {
+        final List<ProductEntity> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 1; i <= INSERT_BATCH_SIZE; i++) {
+            batch.add(SeededDatabase.createProduct(mProductCount + i));
+        }
+        final ProductDao productDao = mDatabase.productDao();
+        Runnable insert = () -> productDao.insertAll(batch);
+        Runnable delete = () -> mDatabase.getOpenHelper().getWritableDatabase()
+                .execSQL("DELETE FROM products WHERE id > " + mProductCount);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            insert.run();
+            state.pauseTiming();
+            delete.run();
+            state.resumeTiming();
+        }
+        LatencyReport.measure(label("insertAll"), LOOKUP_ITERATIONS / 10, insert, delete);
+    }
+
+    @Test
+    public void loadProductSync() {
+        final ProductDao productDao = mDatabase.productDao();
+        Runnable load = () -> productDao.loadProductSync(randomProductId());
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            load.run();
+        }
+        LatencyReport.measure(label("loadProductSync"), LOOKUP_ITERATIONS, load, null);
+    }
+
+    @Test
+    public void loadCommentsSync() {
+        final CommentDao commentDao = mDatabase.commentDao();
+        Runnable load = () -> commentDao.loadCommentsSync(randomProductId());
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            load.run();
+        }
+        LatencyReport.measure(label("loadCommentsSync"), LOOKUP_ITERATIONS, load, null);
+    }
+
+    @Test
+    public void loadProductSummariesAfter() {
+        final ProductDao productDao = mDatabase.productDao();
+        // A page of the product list with comment badges, anywhere in the catalog
+        Runnable load = () -> productDao.loadProductSummariesAfter(randomProductId(), PAGE_SIZE);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            load.run();
+        }
+        LatencyReport.measure(label("loadProductSummariesAfter"), LOOKUP_ITERATIONS, load, null);
+    }
+
+    @Test
+    public void searchAllProducts() {
+        final ProductDao productDao = mDatabase.productDao();
+        // Same shape of query as ProductListViewModel builds from the search box.
+        final String query = "*" + SeededDatabase.WORDS[3] + "*";
+        assertFalse(productDao.searchAllProductsSync(query).isEmpty());
+        Runnable search = () -> productDao.searchAllProductsSync(query);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            search.run();
+        }
+        LatencyReport.measure(label("searchAllProducts"), SEARCH_ITERATIONS, search, null);
+    }
+
+    @Test
+    public void searchProductsRanked() {
+        final ProductDao productDao = mDatabase.productDao();
+        final String query = "*" + SeededDatabase.WORDS[3] + "*";
+        Runnable search = () -> ProductSearchResult.search(productDao, query, RANKED_LIMIT);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            search.run();
+        }
+        LatencyReport.measure(label("searchProductsRanked"), SEARCH_ITERATIONS, search, null);
+    }
+
+    private int randomProductId() {
+        return mRandom.nextInt(mProductCount) + 1;
+    }
+
+    private String label(String operation) {
+        return operation + "_" + mProductCount;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.benchmark;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.Arrays;
+
+/**
+ * Measures the latency distribution of an operation.
+ * <p>
+ * {@link androidx.benchmark.junit4.BenchmarkRule} reports the median and minimum run time and the
+ * allocation count, but not tail latency. This runs a fixed number of timed iterations after the
+ * benchmark loop and reports ops/s, p50, p99 and allocations per operation, both to logcat and to
+ * the instrumentation status so they show up in the test output.
+ */
+final class LatencyReport {
+
+    private static final String TAG = "LatencyReport";
+
+    private LatencyReport() {
+    }
+
+    /**
+     * @param label identifies the operation in the report.
+     * @param iterations number of timed runs of {@code operation}.
+     * @param operation the code being measured.
+     * @param reset optional untimed step run after every iteration, e.g. to undo an insert.
+     */
+    @SuppressWarnings("deprecation")
+    static void measure(String label, int iterations, Runnable operation,
+            @Nullable Runnable reset) {
+        long[] samples = new long[iterations];
+        long totalNs = 0;
+        long allocations = 0;
+        for (int i = 0; i < iterations; i++) {
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            long start = System.nanoTime();
+            operation.run();
+            samples[i] = System.nanoTime() - start;
+            Debug.stopAllocCounting();
+            allocations += Debug.getThreadAllocCount();
+            totalNs += samples[i];
+            if (reset != null) {
+                reset.run();
+            }
+        }
+        Arrays.sort(samples);
+
+        Bundle status = new Bundle();
+        status.putDouble(label + "_ops_per_second", iterations * 1e9 / totalNs);
+        status.putLong(label + "_p50_ns", percentile(samples, 50));
+        status.putLong(label + "_p99_ns", percentile(samples, 99));
+        status.putLong(label + "_allocations_per_op", allocations / iterations);
+        Log.i(TAG, label + ": " + status);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    /**
+     * Reports the throughput of {@code operations} that completed in {@code elapsedNs}, for
+     * operations that run concurrently and so can't be timed one at a time.
+     */
+    static void throughput(String label, long operations, long elapsedNs) {
+        Bundle status = new Bundle();
+        status.putDouble(label + "_ops_per_second", operations * 1e9 / elapsedNs);
+        Log.i(TAG, label + ": " + status);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.benchmark;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+import com.example.android.persistence.db.AppDatabase;
+import com.example.android.persistence.db.DatabaseSeeder;
+import com.example.android.persistence.db.entity.CommentEntity;
+import com.example.android.persistence.db.entity.ProductEntity;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens an {@link AppDatabase} holding a fixed number of products, seeding it on first use.
+ * <p>
+ * Seeding a million products takes minutes, so each size gets its own database file that is kept
+ * between runs and only regenerated when its row count doesn't match.
+ */
+final class SeededDatabase {
+
+    static final int COMMENTS_PER_PRODUCT = 10;
+
+    /** Every product name contains exactly one of these, so each word matches 1/n of the rows. */
+    static final String[] WORDS = new String[]{
+            "Monkey", "Chicken", "Grog", "Monocle", "Banana", "Compass", "Map", "Sword",
+            "Parrot", "Cannon", "Hook", "Lantern", "Barrel", "Anchor", "Idol", "Skull",
+            "Feather", "Mug", "Rope", "Shovel"};
+
+    private static final int CHUNK_SIZE = 10_000;
+
+    private SeededDatabase() {
+    }
+
+    static AppDatabase open(Context context, int productCount) {
+        // Files seeded by an older schema are simply recreated and seeded again
+        AppDatabase database = Room.databaseBuilder(context, AppDatabase.class,
+                "benchmark-" + productCount + ".db")
+                .fallbackToDestructiveMigration()
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        if (countProducts(database) != productCount) {
+            database.clearAllTables();
+            seed(database, productCount);
+        }
+        return database;
+    }
+
+    static ProductEntity createProduct(int id) {
+        String name = "Product " + id + " " + WORDS[id % WORDS.length];
+        return new ProductEntity(id, name, name + " is fine", id % 240);
+    }
+
+    private static void seed(AppDatabase database, final int productCount) {
+        final long now = System.currentTimeMillis();
+        Iterator<ProductEntity> products = new Iterator<ProductEntity>() {
+            private int mNextId = 1;
+
+            @Override
+            public boolean hasNext() {
+                return mNextId <= productCount;
+            }
+
+            @Override
+            public ProductEntity next() {
+                return createProduct(mNextId++);
+            }
+        };
+        new DatabaseSeeder(database, CHUNK_SIZE).seed(products, (product, out) -> {
+            int id = product.getId();
+            for (int i = 0; i < COMMENTS_PER_PRODUCT; i++) {
+                out.add(new CommentEntity((id - 1) * COMMENTS_PER_PRODUCT + i + 1, id,
+                        "Comment " + i + " for product " + id,
+                        new Date(now - TimeUnit.HOURS.toMillis(i))));
+            }
+        }, null);
+    }
+
+    private static int countProducts(AppDatabase database) {
+        try (Cursor cursor = database.query("SELECT COUNT(*) FROM products", null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+}
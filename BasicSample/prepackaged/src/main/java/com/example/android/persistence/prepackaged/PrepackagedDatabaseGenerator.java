@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.prepackaged;
+
+import com.example.android.persistence.db.DataGenerator;
+import com.example.android.persistence.db.entity.CommentEntity;
+import com.example.android.persistence.db.entity.ProductEntity;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes the database that {@code AppDatabase} copies on first launch.
+ * <p>
+ * The schema statements come from the schema Room exports, so the file passes Room's validation
+ * when it is opened; the rows come from {@link DataGenerator}. The full-text index is filled by
+ * Room's content sync triggers as the products are inserted.
+ * <p>
+ * Usage: {@code PrepackagedDatabaseGenerator <schema statements> <version> <output file>}, where
+ * the statements file holds one SQL statement per line.
+ */
+public class PrepackagedDatabaseGenerator {
+
+    private static final String INSERT_PRODUCT = "INSERT INTO `products` "
+            + "(`id`,`name`,`description`,`price`) VALUES (?,?,?,?)";
+
+    private static final String INSERT_COMMENT = "INSERT INTO `comments` "
+            + "(`productId`,`text`,`postedAt`) VALUES (?,?,?)";
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException(
+                    "Usage: PrepackagedDatabaseGenerator <schema statements> <version> <output>");
+        }
+        List<String> schema = Files.readAllLines(new File(args[0]).toPath(),
+                StandardCharsets.UTF_8);
+        int version = Integer.parseInt(args[1]);
+        File output = new File(args[2]);
+
+        // Write next to the output and move it into place at the end, so an interrupted build
+        // never leaves a partial database behind
+        File temp = new File(output.getPath() + ".tmp");
+        Files.deleteIfExists(temp.toPath());
+        Files.createDirectories(output.getAbsoluteFile().getParentFile().toPath());
+        try (Connection connection =
+                     DriverManager.getConnection("jdbc:sqlite:" + temp.getAbsolutePath())) {
+            createSchema(connection, schema, version);
+            insertData(connection);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("VACUUM");
+            }
+        }
+        Files.move(temp.toPath(), output.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Wrote " + output + " (" + output.length() + " bytes)");
+    }
+
+    private static void createSchema(Connection connection, List<String> schema, int version)
+            throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : schema) {
+                if (!sql.trim().isEmpty()) {
+                    statement.execute(sql);
+                }
+            }
+            statement.execute("PRAGMA user_version = " + version);
+        }
+    }
+
+    private static void insertData(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        Random rnd = new Random();
+        List<CommentEntity> comments = new ArrayList<>();
+        try (PreparedStatement insertProduct = connection.prepareStatement(INSERT_PRODUCT);
+             PreparedStatement insertComment = connection.prepareStatement(INSERT_COMMENT)) {
+            Iterator<ProductEntity> products =
+                    DataGenerator.streamProducts(DataGenerator.PRODUCT_COUNT);
+            while (products.hasNext()) {
+                ProductEntity product = products.next();
+                insertProduct.setInt(1, product.getId());
+                insertProduct.setString(2, product.getName());
+                insertProduct.setString(3, product.getDescription());
+                insertProduct.setInt(4, product.getPrice());
+                insertProduct.executeUpdate();
+
+                comments.clear();
+                DataGenerator.generateCommentsForProduct(product, rnd, comments);
+                for (CommentEntity comment : comments) {
+                    insertComment.setInt(1, comment.getProductId());
+                    insertComment.setString(2, comment.getText());
+                    if (comment.getPostedAt() == null) {
+                        insertComment.setNull(3, Types.INTEGER);
+                    } else {
+                        insertComment.setLong(3, comment.getPostedAt().getTime());
+                    }
+                    insertComment.executeUpdate();
+                }
+            }
+        }
+        connection.commit();
+    }
+}
@@ -19,6 +19,7 @@ package com.android.example.github.db
 
 import androidx.room.Database
 import androidx.room.RoomDatabase
+import com.android.example.github.db.tracing.QueryTracer
 import com.android.example.github.vo.Contributor
 import com.android.example.github.vo.Repo
 import com.android.example.github.vo.RepoSearchResult
@@ -41,4 +42,11 @@ abstract class GithubDb : RoomDatabase() {
     abstract fun userDao(): UserDao
 
     abstract fun repoDao(): RepoDao
+
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, `null` otherwise.
+     */
+    var queryTracer: QueryTracer? = null
+        internal set
 }
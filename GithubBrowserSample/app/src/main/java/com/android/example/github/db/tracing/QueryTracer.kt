@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/kotlin/QueryTracer.kt by update_tracing.sh, do not edit.
+package com.android.example.github.db.tracing
+
+import android.content.Context
+import android.content.pm.ApplicationInfo
+import android.util.Log
+import androidx.room.RoomDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory
+import java.util.ArrayDeque
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records how long every statement run against a database takes.
+ *
+ * Install it with [RoomDatabase.Builder.openHelperFactory], wrapping the factory the database
+ * would otherwise use:
+ * ```
+ * builder.openHelperFactory(tracer.wrap(FrameworkSQLiteOpenHelperFactory()))
+ * ```
+ * Statements are keyed by their SQL, so every call of a DAO method lands in the same
+ * [QueryStats]. A query is timed until its cursor is closed, because SQLite only steps through
+ * the rows while the cursor is read. Transactions are timed from `BEGIN` to the outermost
+ * `endTransaction()`.
+ *
+ * Statements slower than the threshold are logged with the output of `EXPLAIN QUERY PLAN`, and
+ * the most recent ones are kept in [slowQueries].
+ */
+class QueryTracer(slowQueryThresholdMs: Long = DEFAULT_SLOW_QUERY_THRESHOLD_MS) {
+
+    private val slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMs)
+
+    // All guarded by this
+    private val stats = HashMap<String, QueryStats>()
+    private val transactions = QueryStats()
+    private val slow = ArrayDeque<SlowQuery>()
+
+    /** Returns a factory whose databases report to this tracer. */
+    fun wrap(factory: SupportSQLiteOpenHelper.Factory): SupportSQLiteOpenHelper.Factory =
+        TracingOpenHelper.Factory(factory, this)
+
+    /** A snapshot of the stats of every statement run so far, keyed by SQL. */
+    val queryStats: Map<String, QueryStats>
+        @Synchronized get() = stats.mapValues { it.value.copy() }
+
+    /** A snapshot of the stats of [sql], or `null` if it hasn't run. */
+    @Synchronized
+    fun getQueryStats(sql: String): QueryStats? = stats[sql]?.copy()
+
+    val transactionStats: QueryStats
+        @Synchronized get() = transactions.copy()
+
+    /** The most recent slow statements, oldest first. */
+    val slowQueries: List<SlowQuery>
+        @Synchronized get() = slow.toList()
+
+    @Synchronized
+    fun reset() {
+        stats.clear()
+        slow.clear()
+        transactions.reset()
+    }
+
+    /** Logs the stats of every statement, most expensive first. */
+    fun logStats() {
+        queryStats.entries.sortedByDescending { it.value.totalNanos }.forEach {
+            Log.d(TAG, "${it.value} ${it.key}")
+        }
+        Log.d(TAG, "$transactionStats transactions")
+    }
+
+    internal fun isSlow(nanos: Long) = nanos >= slowQueryThresholdNanos
+
+    @Synchronized
+    internal fun onStatement(sql: String, nanos: Long, rows: Long) {
+        stats.getOrPut(sql) { QueryStats() }.record(nanos, rows)
+    }
+
+    internal fun onSlowStatement(sql: String, nanos: Long, plan: List<String>) {
+        val slowQuery = SlowQuery(sql, nanos, plan)
+        Log.w(TAG, "Slow query $slowQuery")
+        synchronized(this) {
+            if (slow.size == MAX_SLOW_QUERIES) {
+                slow.removeFirst()
+            }
+            slow.addLast(slowQuery)
+        }
+    }
+
+    @Synchronized
+    internal fun onTransaction(nanos: Long) {
+        transactions.record(nanos, 0)
+    }
+
+    companion object {
+        const val DEFAULT_SLOW_QUERY_THRESHOLD_MS = 100L
+
+        private const val TAG = "QueryTracer"
+
+        private const val MAX_SLOW_QUERIES = 32
+
+        /**
+         * Traces the database built by [builder] if the app is debuggable.
+         *
+         * @return the tracer, or `null` in release builds.
+         */
+        fun installIfDebuggable(context: Context, builder: RoomDatabase.Builder<*>): QueryTracer? {
+            if (context.applicationInfo.flags and ApplicationInfo.FLAG_DEBUGGABLE == 0) {
+                return null
+            }
+            return QueryTracer().also {
+                builder.openHelperFactory(it.wrap(FrameworkSQLiteOpenHelperFactory()))
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.android.example.github.api.GithubService
 import com.android.example.github.db.GithubDb
 import com.android.example.github.db.RepoDao
 import com.android.example.github.db.UserDao
+import com.android.example.github.db.tracing.QueryTracer
 import com.android.example.github.util.LiveDataCallAdapterFactory
 import dagger.Module
 import dagger.Provides
@@ -45,10 +46,11 @@ class AppModule {
     @Singleton
     @Provides
     fun provideDb(app: Application): GithubDb {
-        return Room
+        val builder = Room
             .databaseBuilder(app, GithubDb::class.java, "github.db")
             .fallbackToDestructiveMigration()
-            .build()
+        val tracer = QueryTracer.installIfDebuggable(app, builder)
+        return builder.build().apply { queryTracer = tracer }
     }
 
     @Singleton
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package paging.android.example.com.pagingsample.tracing
+
+import androidx.room.Room
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.hamcrest.CoreMatchers.hasItem
+import org.hamcrest.CoreMatchers.`is`
+import org.hamcrest.CoreMatchers.notNullValue
+import org.hamcrest.CoreMatchers.startsWith
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import paging.android.example.com.pagingsample.Cheese
+import paging.android.example.com.pagingsample.CheeseDb
+
+/**
+ * Checks what [QueryTracer] records for the statements Room runs against [CheeseDb].
+ */
+@RunWith(AndroidJUnit4::class)
+class QueryTracerTest {
+
+    // Every statement counts as slow, so each one is explained
+    private val tracer = QueryTracer(slowQueryThresholdMs = 0)
+
+    private lateinit var db: CheeseDb
+
+    @Before
+    fun initDb() {
+        db = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(),
+                CheeseDb::class.java)
+                .openHelperFactory(tracer.wrap(FrameworkSQLiteOpenHelperFactory()))
+                // allowing main thread queries, just for testing
+                .allowMainThreadQueries()
+                .build()
+        db.cheeseDao().insert(CHEESES)
+        tracer.reset()
+    }
+
+    @After
+    fun closeDb() {
+        db.close()
+    }
+
+    @Test
+    fun recordsEveryRunOfAQuery() {
+        loadCheese(1)
+        loadCheese(1)
+        loadCheese(-1)
+
+        val stats = tracer.getQueryStats(LOAD_CHEESE)
+        assertThat(stats, notNullValue())
+        assertThat(stats!!.count, `is`(3L))
+        assertThat(stats.rows, `is`(2L))
+        assertThat(stats.getPercentileNanos(100.0), `is`(stats.maxNanos))
+    }
+
+    @Test
+    fun recordsEveryInsertedRow() {
+        db.cheeseDao().insert(CHEESES)
+
+        val inserts = tracer.queryStats.filterKeys { it.startsWith("INSERT") }.values
+        assertThat(inserts.map { it.rows }.sum(), `is`(CHEESES.size.toLong()))
+    }
+
+    @Test
+    fun explainsSlowQueries() {
+        loadCheese(1)
+
+        val plans = tracer.slowQueries.filter { it.sql == LOAD_CHEESE }.flatMap { it.plan }
+        assertThat(plans, hasItem(startsWith("SEARCH")))
+    }
+
+    @Test
+    fun recordsTransactions() {
+        db.cheeseDao().insert(CHEESES)
+
+        // Room's invalidation tracker may run transactions of its own
+        assertTrue(tracer.transactionStats.count >= 1)
+    }
+
+    private fun loadCheese(id: Int) {
+        db.query(LOAD_CHEESE, arrayOf(id)).use { cursor ->
+            while (cursor.moveToNext()) {
+                // Step through the rows, the tracer counts them as they are read
+            }
+        }
+    }
+
+    private companion object {
+        const val LOAD_CHEESE = "SELECT * FROM Cheese WHERE id = ?"
+
+        val CHEESES = listOf(Cheese(id = 0, name = "Brie"), Cheese(id = 0, name = "Comte"))
+    }
+}
@@ -19,6 +19,7 @@ package paging.android.example.com.pagingsample
 import androidx.sqlite.db.SupportSQLiteDatabase
 import androidx.room.*
 import android.content.Context
+import paging.android.example.com.pagingsample.tracing.QueryTracer
 
 /**
  * Singleton database object. Note that for a real app, you should probably use a Dependency
@@ -28,18 +29,27 @@ import android.content.Context
 abstract class CheeseDb : RoomDatabase() {
     abstract fun cheeseDao(): CheeseDao
 
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, `null` otherwise.
+     */
+    var queryTracer: QueryTracer? = null
+        private set
+
     companion object {
         private var instance: CheeseDb? = null
         @Synchronized
         fun get(context: Context): CheeseDb {
             if (instance == null) {
-                instance = Room.databaseBuilder(context.applicationContext,
+                val builder = Room.databaseBuilder(context.applicationContext,
                         CheeseDb::class.java, "CheeseDatabase")
                         .addCallback(object : RoomDatabase.Callback() {
                             override fun onCreate(db: SupportSQLiteDatabase) {
                                 fillInDb(context.applicationContext)
                             }
-                        }).build()
+                        })
+                val tracer = QueryTracer.installIfDebuggable(context, builder)
+                instance = builder.build().apply { queryTracer = tracer }
             }
             return instance!!
         }
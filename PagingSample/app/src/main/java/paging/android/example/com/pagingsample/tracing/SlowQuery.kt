@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/kotlin/SlowQuery.kt by update_tracing.sh, do not edit.
+package paging.android.example.com.pagingsample.tracing
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * A statement that took longer than the [QueryTracer] threshold.
+ *
+ * [plan] holds the `detail` column of `EXPLAIN QUERY PLAN`, one line per step. It is empty for
+ * statements that have no plan, such as schema changes.
+ */
+data class SlowQuery(val sql: String, val nanos: Long, val plan: List<String>) {
+    override fun toString() = buildString {
+        append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms: ").append(sql)
+        plan.forEach { append("\n  ").append(it) }
+    }
+}
@@ -20,6 +20,7 @@ import android.content.Context
 import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
+import com.android.example.paging.pagingwithnetwork.reddit.db.tracing.QueryTracer
 import com.android.example.paging.pagingwithnetwork.reddit.vo.RedditPost
 import com.android.example.paging.pagingwithnetwork.reddit.vo.SubredditRemoteKey
 
@@ -39,12 +40,19 @@ abstract class RedditDb : RoomDatabase() {
             } else {
                 Room.databaseBuilder(context, RedditDb::class.java, "reddit.db")
             }
-            return databaseBuilder
-                .fallbackToDestructiveMigration()
-                .build()
+            databaseBuilder.fallbackToDestructiveMigration()
+            val tracer = QueryTracer.installIfDebuggable(context, databaseBuilder)
+            return databaseBuilder.build().apply { queryTracer = tracer }
         }
     }
 
     abstract fun posts(): RedditPostDao
     abstract fun remoteKeys(): SubredditRemoteKeyDao
+
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, `null` otherwise.
+     */
+    var queryTracer: QueryTracer? = null
+        private set
 }
\ No newline at end of file
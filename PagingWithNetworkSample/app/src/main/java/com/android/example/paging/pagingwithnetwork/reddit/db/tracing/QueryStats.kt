@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/kotlin/QueryStats.kt by update_tracing.sh, do not edit.
+package com.android.example.paging.pagingwithnetwork.reddit.db.tracing
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Latency histogram and row count for one SQL statement, or for transactions.
+ *
+ * Durations fall into power-of-two microsecond buckets, so percentiles are upper bounds that are
+ * at most twice the real value. Instances returned by [QueryTracer] are snapshots.
+ */
+class QueryStats internal constructor() {
+
+    // Bucket i holds durations below 2^i microseconds, the last one everything longer
+    private val buckets = LongArray(BUCKETS)
+
+    /** How many times the statement ran. */
+    var count = 0L
+        private set
+
+    /** Rows returned by queries, or changed by updates and deletes, over all runs. */
+    var rows = 0L
+        private set
+
+    var totalNanos = 0L
+        private set
+
+    var maxNanos = 0L
+        private set
+
+    val meanNanos: Long
+        get() = if (count == 0L) 0 else totalNanos / count
+
+    internal fun record(nanos: Long, rows: Long) {
+        val micros = TimeUnit.NANOSECONDS.toMicros(nanos)
+        buckets[minOf(BUCKETS - 1, 64 - java.lang.Long.numberOfLeadingZeros(micros))]++
+        count++
+        this.rows += rows
+        totalNanos += nanos
+        maxNanos = maxOf(maxNanos, nanos)
+    }
+
+    internal fun reset() {
+        buckets.fill(0)
+        count = 0
+        rows = 0
+        totalNanos = 0
+        maxNanos = 0
+    }
+
+    internal fun copy() = QueryStats().also {
+        buckets.copyInto(it.buckets)
+        it.count = count
+        it.rows = rows
+        it.totalNanos = totalNanos
+        it.maxNanos = maxNanos
+    }
+
+    /**
+     * Returns an upper bound for the given percentile, between 0 and 100, of the recorded
+     * durations.
+     */
+    fun getPercentileNanos(percentile: Double): Long {
+        if (count == 0L) {
+            return 0
+        }
+        val rank = Math.ceil(count * percentile / 100).toLong()
+        var seen = 0L
+        for (i in 0 until BUCKETS - 1) {
+            seen += buckets[i]
+            if (seen >= rank) {
+                return minOf(maxNanos, TimeUnit.MICROSECONDS.toNanos(1L shl i))
+            }
+        }
+        return maxNanos
+    }
+
+    override fun toString() = "count=$count rows=$rows" +
+            " mean=${TimeUnit.NANOSECONDS.toMicros(meanNanos)}us" +
+            " p50=${TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(50.0))}us" +
+            " p99=${TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(99.0))}us" +
+            " max=${TimeUnit.NANOSECONDS.toMicros(maxNanos)}us"
+
+    private companion object {
+        const val BUCKETS = 32
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.contentprovidersample;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import com.example.android.contentprovidersample.data.Cheese;
+import com.example.android.contentprovidersample.data.SampleDatabase;
+import com.example.android.contentprovidersample.provider.SampleContentProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Calls the provider from many threads at once, to check that concurrent queries and inserts
+ * neither fail nor lose rows, and to measure how many calls per second it serves.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class SampleContentProviderStressTest {
+
+    private static final String TAG = "ProviderStressTest";
+
+    private static final int THREADS = 8;
+
+    private static final int CALLS_PER_THREAD = 500;
+
+    /** One in this many calls is an insert, the rest are queries. */
+    private static final int INSERT_EVERY = 4;
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        final Context context = ApplicationProvider.getApplicationContext();
+        SampleDatabase.switchToInMemory(context);
+        mContentResolver = context.getContentResolver();
+    }
+
+    @Test
+    public void queryAndInsertFromManyThreads() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                            if (i % INSERT_EVERY == 0) {
+                                insert("Cheese " + thread + "-" + i);
+                            } else {
+                                query();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, "provider-stress-" + t);
+            threads[t].start();
+        }
+
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        assertThat(failure.get(), is(nullValue()));
+        final int calls = THREADS * CALLS_PER_THREAD;
+        Log.i(TAG, String.format("%d calls on %d threads in %.1f ms: %.0f calls/s",
+                calls, THREADS, elapsedNanos / 1e6, calls * 1e9 / elapsedNanos));
+
+        final int insertsPerThread = (CALLS_PER_THREAD + INSERT_EVERY - 1) / INSERT_EVERY;
+        assertThat(count(), is(THREADS * insertsPerThread));
+    }
+
+    private void insert(String name) {
+        final ContentValues values = new ContentValues();
+        values.put(Cheese.COLUMN_NAME, name);
+        assertThat(mContentResolver.insert(SampleContentProvider.URI_CHEESE, values),
+                notNullValue());
+    }
+
+    private void query() {
+        final Cursor cursor = mContentResolver.query(
+                SampleContentProvider.URI_CHEESE.buildUpon()
+                        .appendQueryParameter(SampleContentProvider.QUERY_PARAMETER_LIMIT, "20")
+                        .build(),
+                new String[]{Cheese.COLUMN_ID, Cheese.COLUMN_NAME}, null, null,
+                Cheese.COLUMN_ID + " DESC");
+        assertThat(cursor, notNullValue());
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getString(1);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count() {
+        final Cursor cursor = mContentResolver.query(SampleContentProvider.URI_CHEESE,
+                new String[]{Cheese.COLUMN_ID}, null, null, null);
+        assertThat(cursor, notNullValue());
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
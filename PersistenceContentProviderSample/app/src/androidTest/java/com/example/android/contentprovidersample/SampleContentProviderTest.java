@@ -19,6 +19,7 @@ package com.example.android.contentprovidersample;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
@@ -26,21 +27,40 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.OperationApplicationException;
+import android.content.res.AssetFileDescriptor;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
 import com.example.android.contentprovidersample.data.Cheese;
 import com.example.android.contentprovidersample.data.SampleDatabase;
+import com.example.android.contentprovidersample.provider.CheeseStream;
 import com.example.android.contentprovidersample.provider.SampleContentProvider;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @RunWith(AndroidJUnit4.class)
@@ -130,6 +150,76 @@ public class SampleContentProviderTest {
         cursor.close();
     }
 
+    @Test
+    public void cheese_bulkInsertConflict() {
+        final ContentValues existing = cheeseWithName("Peynir");
+        existing.put(Cheese.COLUMN_ID, 1L);
+        mContentResolver.insert(SampleContentProvider.URI_CHEESE, existing);
+        final ContentValues replacement = cheeseWithName("Queso");
+        replacement.put(Cheese.COLUMN_ID, 1L);
+        final ContentValues[] values = {replacement, cheeseWithName("Daigo")};
+
+        final int ignored = mContentResolver.bulkInsert(withConflict("ignore"), values);
+        assertThat(ignored, is(1));
+        assertThat(namesByName(), is(Arrays.asList("Daigo", "Peynir")));
+
+        final int replaced = mContentResolver.bulkInsert(withConflict("replace"), values);
+        assertThat(replaced, is(2));
+        assertThat(namesByName(), is(Arrays.asList("Daigo", "Daigo", "Queso")));
+    }
+
+    @Test
+    public void cheese_bulkInsertConflictAbortsBatch() {
+        final ContentValues existing = cheeseWithName("Peynir");
+        existing.put(Cheese.COLUMN_ID, 1L);
+        mContentResolver.insert(SampleContentProvider.URI_CHEESE, existing);
+        final ContentValues conflicting = cheeseWithName("Queso");
+        conflicting.put(Cheese.COLUMN_ID, 1L);
+        final ContentValues[] values = {cheeseWithName("Daigo"), conflicting};
+
+        try {
+            mContentResolver.bulkInsert(SampleContentProvider.URI_CHEESE, values);
+            fail("The conflicting cheese should have aborted the batch");
+        } catch (SQLiteConstraintException expected) {
+            // The constraint error itself reaches the caller
+        }
+        // The cheese inserted before the conflict was rolled back too
+        assertThat(namesByName(), is(Collections.singletonList("Peynir")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cheese_bulkInsertRejectsRollback() {
+        mContentResolver.bulkInsert(withConflict("rollback"),
+                new ContentValues[]{cheeseWithName("Queso")});
+    }
+
+    @Test
+    public void cheese_bulkUpdate() {
+        insertCheeses("Peynir", "Queso", "Daigo", "Quark");
+        final int count = mContentResolver.update(SampleContentProvider.URI_CHEESE,
+                cheeseWithName("Q"), Cheese.COLUMN_NAME + " LIKE ?", new String[]{"Q%"});
+        assertThat(count, is(2));
+        assertThat(namesByName(), is(Arrays.asList("Daigo", "Peynir", "Q", "Q")));
+    }
+
+    @Test
+    public void cheese_bulkDelete() {
+        insertCheeses("Peynir", "Queso", "Daigo", "Quark");
+        final int count = mContentResolver.delete(SampleContentProvider.URI_CHEESE,
+                Cheese.COLUMN_NAME + " LIKE ?", new String[]{"Q%"});
+        assertThat(count, is(2));
+        assertThat(namesByName(), is(Arrays.asList("Daigo", "Peynir")));
+        assertThat(mContentResolver.delete(SampleContentProvider.URI_CHEESE, null, null), is(2));
+        assertThat(namesByName().size(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cheese_updateRejectsId() {
+        final ContentValues values = cheeseWithName("Queso");
+        values.put(Cheese.COLUMN_ID, 1L);
+        mContentResolver.update(SampleContentProvider.URI_CHEESE, values, null, null);
+    }
+
     @Test
     public void cheese_applyBatch() throws RemoteException, OperationApplicationException {
         final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
@@ -152,10 +242,223 @@ public class SampleContentProviderTest {
         cursor.close();
     }
 
+    @Test
+    public void cheese_queryPushesDownSelectionAndSortOrder() {
+        insertCheeses("Peynir", "Queso", "Daigo", "Quark");
+        final Cursor cursor = mContentResolver.query(SampleContentProvider.URI_CHEESE,
+                new String[]{Cheese.COLUMN_NAME}, Cheese.COLUMN_NAME + " LIKE ?",
+                new String[]{"Q%"}, Cheese.COLUMN_NAME + " DESC");
+        assertThat(cursor, notNullValue());
+        assertThat(cursor.getColumnCount(), is(1));
+        assertThat(cursor.getCount(), is(2));
+        assertThat(cursor.moveToFirst(), is(true));
+        assertThat(cursor.getString(0), is("Queso"));
+        assertThat(cursor.moveToNext(), is(true));
+        assertThat(cursor.getString(0), is("Quark"));
+        cursor.close();
+    }
+
+    @Test
+    public void cheese_queryLimitAndOffset() {
+        insertCheeses("Peynir", "Queso", "Daigo", "Quark");
+        final Uri uri = SampleContentProvider.URI_CHEESE.buildUpon()
+                .appendQueryParameter(SampleContentProvider.QUERY_PARAMETER_LIMIT, "2")
+                .appendQueryParameter(SampleContentProvider.QUERY_PARAMETER_OFFSET, "1")
+                .build();
+        final Cursor cursor = mContentResolver.query(uri, new String[]{Cheese.COLUMN_NAME},
+                null, null, Cheese.COLUMN_NAME);
+        assertThat(cursor, notNullValue());
+        assertThat(cursor.getCount(), is(2));
+        assertThat(cursor.moveToFirst(), is(true));
+        assertThat(cursor.getString(0), is("Peynir"));
+        assertThat(cursor.moveToNext(), is(true));
+        assertThat(cursor.getString(0), is("Quark"));
+        cursor.close();
+    }
+
+    @Test
+    public void cheese_queryCount() {
+        insertCheeses("Peynir", "Queso", "Daigo");
+        final Cursor cursor = mContentResolver.query(SampleContentProvider.URI_CHEESE,
+                new String[]{BaseColumns._COUNT}, null, null, null);
+        assertThat(cursor, notNullValue());
+        assertThat(cursor.moveToFirst(), is(true));
+        assertThat(cursor.getInt(0), is(3));
+        cursor.close();
+    }
+
+    @Test
+    public void cheese_queryItemWithSelection() {
+        final Uri itemUri = mContentResolver.insert(SampleContentProvider.URI_CHEESE,
+                cheeseWithName("Daigo"));
+        assertThat(itemUri, notNullValue());
+        final Cursor match = mContentResolver.query(itemUri, null,
+                Cheese.COLUMN_NAME + " = ?", new String[]{"Daigo"}, null);
+        assertThat(match, notNullValue());
+        assertThat(match.getCount(), is(1));
+        match.close();
+        final Cursor noMatch = mContentResolver.query(itemUri, null,
+                Cheese.COLUMN_NAME + " = ?", new String[]{"Queso"}, null);
+        assertThat(noMatch, notNullValue());
+        assertThat(noMatch.getCount(), is(0));
+        noMatch.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cheese_queryRejectsUnknownColumns() {
+        mContentResolver.query(SampleContentProvider.URI_CHEESE,
+                new String[]{"sql FROM sqlite_master --"}, null, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cheese_queryRejectsSubqueries() {
+        mContentResolver.query(SampleContentProvider.URI_CHEESE, null,
+                Cheese.COLUMN_NAME + " IN (SELECT name FROM sqlite_master)", null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cheese_queryRejectsInvalidSortOrder() {
+        mContentResolver.query(SampleContentProvider.URI_CHEESE, null, null, null,
+                Cheese.COLUMN_NAME + "; DROP TABLE " + Cheese.TABLE_NAME);
+    }
+
+    @Test
+    public void cheese_applyBatchNotifiesOnce() throws Exception {
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            operations.add(ContentProviderOperation
+                    .newInsert(SampleContentProvider.URI_CHEESE)
+                    .withValue(Cheese.COLUMN_NAME, "Cheese " + i)
+                    .build());
+        }
+        final CountingObserver observer = new CountingObserver();
+        mContentResolver.registerContentObserver(SampleContentProvider.URI_CHEESE, true,
+                observer);
+        try {
+            mContentResolver.applyBatch(SampleContentProvider.AUTHORITY, operations);
+            assertThat(observer.mFirstChange.await(5, TimeUnit.SECONDS), is(true));
+            // Give any further notifications time to arrive
+            SystemClock.sleep(500);
+            assertThat(observer.mChanges.get(), is(1));
+        } finally {
+            mContentResolver.unregisterContentObserver(observer);
+        }
+    }
+
+    @Test
+    public void cheese_exportAndImportStream() throws Exception {
+        insertCheeses("Peynir", "Queso", "Daigo");
+        final AssetFileDescriptor export = mContentResolver.openTypedAssetFileDescriptor(
+                SampleContentProvider.URI_CHEESE, SampleContentProvider.MIME_TYPE_CHEESE_STREAM,
+                null);
+        assertThat(export, notNullValue());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final InputStream in = export.createInputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        in.close();
+
+        final CheeseStream.Reader reader = new CheeseStream.Reader(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        final List<String> names = new ArrayList<>();
+        while (reader.next()) {
+            names.add(reader.getName());
+        }
+        assertThat(names, is(Arrays.asList("Peynir", "Queso", "Daigo")));
+
+        // Import into an empty database
+        SampleDatabase.switchToInMemory(ApplicationProvider.getApplicationContext());
+        final CountingObserver observer = new CountingObserver();
+        mContentResolver.registerContentObserver(SampleContentProvider.URI_CHEESE, true,
+                observer);
+        try {
+            final ParcelFileDescriptor pipe = mContentResolver.openFileDescriptor(
+                    SampleContentProvider.URI_CHEESE, "w");
+            assertThat(pipe, notNullValue());
+            final OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe);
+            out.write(bytes.toByteArray());
+            out.close();
+            assertThat(observer.mFirstChange.await(5, TimeUnit.SECONDS), is(true));
+        } finally {
+            mContentResolver.unregisterContentObserver(observer);
+        }
+        final Cursor cursor = mContentResolver.query(SampleContentProvider.URI_CHEESE,
+                new String[]{Cheese.COLUMN_NAME}, null, null, null);
+        assertThat(cursor, notNullValue());
+        assertThat(cursor.getCount(), is(3));
+        cursor.close();
+    }
+
+    @Test
+    public void cheeseStream_rejectsHugeNameLength() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CheeseStream.Writer writer = new CheeseStream.Writer(bytes);
+        writer.finish();
+        final byte[] header = Arrays.copyOf(bytes.toByteArray(), 8);
+        // A cheese whose name claims to be 2 GiB long
+        final ByteBuffer stream = ByteBuffer.allocate(header.length + 13);
+        stream.put(header).put((byte) 1).putLong(1).putInt(Integer.MAX_VALUE);
+
+        final CheeseStream.Reader reader = new CheeseStream.Reader(
+                new ByteArrayInputStream(stream.array()));
+        try {
+            reader.next();
+            fail("A name length over the maximum should be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Corrupt cheese stream"));
+        }
+    }
+
+    private void insertCheeses(String... names) {
+        final ContentValues[] values = new ContentValues[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = cheeseWithName(names[i]);
+        }
+        mContentResolver.bulkInsert(SampleContentProvider.URI_CHEESE, values);
+    }
+
+    private Uri withConflict(String conflict) {
+        return SampleContentProvider.URI_CHEESE.buildUpon()
+                .appendQueryParameter(SampleContentProvider.QUERY_PARAMETER_CONFLICT, conflict)
+                .build();
+    }
+
+    private List<String> namesByName() {
+        final Cursor cursor = mContentResolver.query(SampleContentProvider.URI_CHEESE,
+                new String[]{Cheese.COLUMN_NAME}, null, null, Cheese.COLUMN_NAME);
+        assertThat(cursor, notNullValue());
+        final List<String> names = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            names.add(cursor.getString(0));
+        }
+        cursor.close();
+        return names;
+    }
+
     private ContentValues cheeseWithName(String name) {
         final ContentValues values = new ContentValues();
         values.put(Cheese.COLUMN_NAME, name);
         return values;
     }
 
+    private static class CountingObserver extends ContentObserver {
+
+        final AtomicInteger mChanges = new AtomicInteger();
+
+        final CountDownLatch mFirstChange = new CountDownLatch(1);
+
+        CountingObserver() {
+            super(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mChanges.incrementAndGet();
+            mFirstChange.countDown();
+        }
+    }
+
 }
@@ -18,9 +18,12 @@ package com.example.android.contentprovidersample.data;
 
 import androidx.room.Dao;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.Update;
 import android.database.Cursor;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 
 /**
@@ -55,6 +58,14 @@ public interface CheeseDao {
     @Insert
     long[] insertAll(Cheese[] cheeses);
 
+    /**
+     * Inserts multiple cheeses, replacing the cheeses that have the same IDs.
+     *
+     * @param cheeses An array of cheeses.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAll(Cheese[] cheeses);
+
     /**
      * Select all cheeses.
      *
@@ -72,6 +83,26 @@ public interface CheeseDao {
     @Query("SELECT * FROM " + Cheese.TABLE_NAME + " WHERE " + Cheese.COLUMN_ID + " = :id")
     Cursor selectById(long id);
 
+    /**
+     * Select the cheeses after an ID, in the order of their IDs.
+     *
+     * @param afterId The ID to start after.
+     * @param limit   The maximum number of cheeses to return.
+     * @return A {@link Cursor} of the selected cheeses.
+     */
+    @Query("SELECT * FROM " + Cheese.TABLE_NAME + " WHERE " + Cheese.COLUMN_ID + " > :afterId"
+            + " ORDER BY " + Cheese.COLUMN_ID + " LIMIT :limit")
+    Cursor selectAfter(long afterId, int limit);
+
+    /**
+     * Select cheeses with a query built at runtime.
+     *
+     * @param query A query on the Cheese table.
+     * @return A {@link Cursor} of the selected columns and cheeses.
+     */
+    @RawQuery
+    Cursor select(SupportSQLiteQuery query);
+
     /**
      * Delete a cheese by the ID.
      *
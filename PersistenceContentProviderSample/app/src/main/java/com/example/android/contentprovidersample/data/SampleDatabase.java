@@ -20,7 +20,13 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import android.content.Context;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.example.android.contentprovidersample.data.tracing.QueryTracer;
+
+import java.util.concurrent.Callable;
 
 /**
  * The Room database.
@@ -34,23 +40,38 @@ public abstract class SampleDatabase extends RoomDatabase {
     @SuppressWarnings("WeakerAccess")
     public abstract CheeseDao cheese();
 
-    /** The only instance */
-    private static SampleDatabase sInstance;
+    /**
+     * The only instance. Volatile so that, once it is published, {@link #getInstance} returns it
+     * without taking a lock.
+     */
+    private static volatile SampleDatabase sInstance;
+
+    @Nullable
+    private QueryTracer mQueryTracer;
 
     /**
-     * Gets the singleton instance of SampleDatabase.
+     * Gets the singleton instance of SampleDatabase. Only the first call synchronizes; building
+     * the database doesn't open it, so this is cheap enough for the main thread.
      *
      * @param context The context.
      * @return The singleton instance of SampleDatabase.
      */
-    public static synchronized SampleDatabase getInstance(Context context) {
-        if (sInstance == null) {
-            sInstance = Room
-                    .databaseBuilder(context.getApplicationContext(), SampleDatabase.class, "ex")
-                    .build();
-            sInstance.populateInitialData();
+    public static SampleDatabase getInstance(Context context) {
+        SampleDatabase instance = sInstance;
+        if (instance == null) {
+            synchronized (SampleDatabase.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    Builder<SampleDatabase> builder = Room.databaseBuilder(
+                            context.getApplicationContext(), SampleDatabase.class, "ex");
+                    QueryTracer tracer = QueryTracer.installIfDebuggable(context, builder);
+                    instance = builder.build();
+                    instance.mQueryTracer = tracer;
+                    sInstance = instance;
+                }
+            }
         }
-        return sInstance;
+        return instance;
     }
 
     /**
@@ -65,21 +86,37 @@ public abstract class SampleDatabase extends RoomDatabase {
     }
 
     /**
-     * Inserts the dummy data into the database if it is currently empty.
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, {@code null} otherwise.
      */
-    private void populateInitialData() {
-        if (cheese().count() == 0) {
-            runInTransaction(new Runnable() {
-                @Override
-                public void run() {
-                    Cheese cheese = new Cheese();
-                    for (int i = 0; i < Cheese.CHEESES.length; i++) {
-                        cheese.name = Cheese.CHEESES[i];
-                        cheese().insert(cheese);
-                    }
+    @Nullable
+    public QueryTracer getQueryTracer() {
+        return mQueryTracer;
+    }
+
+    /**
+     * Inserts the dummy data into the database if it is currently empty. This opens the database,
+     * so call it on a background thread.
+     *
+     * @return Whether any data was inserted.
+     */
+    @WorkerThread
+    public boolean populateInitialData() {
+        return runInTransaction(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                // Checked inside the transaction so that two callers can't both insert
+                if (cheese().count() != 0) {
+                    return false;
                 }
-            });
-        }
+                Cheese cheese = new Cheese();
+                for (int i = 0; i < Cheese.CHEESES.length; i++) {
+                    cheese.name = Cheese.CHEESES[i];
+                    cheese().insert(cheese);
+                }
+                return true;
+            }
+        });
     }
 
 }
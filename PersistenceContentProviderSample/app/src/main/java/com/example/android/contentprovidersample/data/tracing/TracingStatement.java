@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Generated from tracing/java/TracingStatement.java by update_tracing.sh, do not edit.
+package com.example.android.contentprovidersample.data.tracing;
+
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.IOException;
+
+/** Times every execution of a compiled statement. */
+class TracingStatement implements SupportSQLiteStatement {
+
+    private final SupportSQLiteStatement mDelegate;
+
+    private final TracingDatabase mDatabase;
+
+    private final String mSql;
+
+    TracingStatement(SupportSQLiteStatement delegate, TracingDatabase database, String sql) {
+        mDelegate = delegate;
+        mDatabase = database;
+        mSql = sql;
+    }
+
+    @Override
+    public void execute() {
+        long start = System.nanoTime();
+        mDelegate.execute();
+        mDatabase.onStatement(mSql, null, start, 0);
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+        long start = System.nanoTime();
+        int rows = mDelegate.executeUpdateDelete();
+        mDatabase.onStatement(mSql, null, start, rows);
+        return rows;
+    }
+
+    @Override
+    public long executeInsert() {
+        long start = System.nanoTime();
+        long rowId = mDelegate.executeInsert();
+        mDatabase.onStatement(mSql, null, start, rowId == -1 ? 0 : 1);
+        return rowId;
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+        long start = System.nanoTime();
+        long result = mDelegate.simpleQueryForLong();
+        mDatabase.onStatement(mSql, null, start, 1);
+        return result;
+    }
+
+    @Override
+    public String simpleQueryForString() {
+        long start = System.nanoTime();
+        String result = mDelegate.simpleQueryForString();
+        mDatabase.onStatement(mSql, null, start, 1);
+        return result;
+    }
+
+    @Override
+    public void bindNull(int index) {
+        mDelegate.bindNull(index);
+    }
+
+    @Override
+    public void bindLong(int index, long value) {
+        mDelegate.bindLong(index, value);
+    }
+
+    @Override
+    public void bindDouble(int index, double value) {
+        mDelegate.bindDouble(index, value);
+    }
+
+    @Override
+    public void bindString(int index, String value) {
+        mDelegate.bindString(index, value);
+    }
+
+    @Override
+    public void bindBlob(int index, byte[] value) {
+        mDelegate.bindBlob(index, value);
+    }
+
+    @Override
+    public void clearBindings() {
+        mDelegate.clearBindings();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDelegate.close();
+    }
+}
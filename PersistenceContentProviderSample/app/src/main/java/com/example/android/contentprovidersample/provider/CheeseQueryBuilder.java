@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.contentprovidersample.provider;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQueryBuilder;
+import com.example.android.contentprovidersample.data.Cheese;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the arguments of {@link SampleContentProvider#query}, {@code update} and {@code delete}
+ * into a single SQL statement on the Cheese table, so that only the requested columns and rows
+ * cross the binder, and a change to many rows is one statement rather than one call per row.
+ *
+ * <p>Everything the client passes in is checked before it reaches SQL: columns must be known,
+ * the sort order may only name known columns, and the selection must be a single expression
+ * that can't reach other tables. Values belong in the selection arguments.</p>
+ */
+final class CheeseQueryBuilder {
+
+    /** Columns a client can ask for, and the SQL that produces them. */
+    private static final Map<String, String> PROJECTION_MAP = new HashMap<>();
+
+    static {
+        PROJECTION_MAP.put(Cheese.COLUMN_ID, Cheese.COLUMN_ID);
+        PROJECTION_MAP.put(Cheese.COLUMN_NAME, Cheese.COLUMN_NAME);
+        PROJECTION_MAP.put(BaseColumns._COUNT, "COUNT(*) AS " + BaseColumns._COUNT);
+    }
+
+    /** Columns a client can change with {@link SampleContentProvider#update}. */
+    private static final Set<String> UPDATABLE_COLUMNS =
+            Collections.singleton(Cheese.COLUMN_NAME);
+
+    /**
+     * The conflict algorithms {@link SampleContentProvider#bulkInsert} accepts. Its statements run
+     * in a transaction that it ends itself: {@code ROLLBACK} would end it first, and
+     * {@code FAIL} would throw and roll back the whole batch all the same, like {@code ABORT}.
+     */
+    private static final Set<String> CONFLICT_ALGORITHMS =
+            new HashSet<>(Arrays.asList("ABORT", "IGNORE", "REPLACE"));
+
+    private static final String[] DEFAULT_PROJECTION = {Cheese.COLUMN_ID, Cheese.COLUMN_NAME};
+
+    /** One term of a sort order: a column, an optional collation and an optional direction. */
+    private static final Pattern SORT_TERM = Pattern.compile("\\s*(\\w+)"
+            + "(?:\\s+COLLATE\\s+(BINARY|NOCASE|LOCALIZED|UNICODE))?(?:\\s+(ASC|DESC))?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
+    private CheeseQueryBuilder() {
+    }
+
+    /**
+     * Builds the query.
+     *
+     * @param uri           The URI queried. The {@link SampleContentProvider#QUERY_PARAMETER_LIMIT}
+     *                      and {@link SampleContentProvider#QUERY_PARAMETER_OFFSET} parameters
+     *                      page the result.
+     * @param id            The ID of the only row to return, or {@code -1} for all rows.
+     * @param projection    The columns to return, or {@code null} for all.
+     * @param selection     A filter over the columns, or {@code null}.
+     * @param selectionArgs The values of the {@code ?} placeholders in {@code selection}.
+     * @param sortOrder     A comma separated list of columns to sort by, or {@code null}.
+     * @throws IllegalArgumentException if any argument is invalid.
+     */
+    @NonNull
+    static SupportSQLiteQuery build(@NonNull Uri uri, long id, @Nullable String[] projection,
+            @Nullable String selection, @Nullable String[] selectionArgs,
+            @Nullable String sortOrder) {
+        final SupportSQLiteQueryBuilder builder = SupportSQLiteQueryBuilder
+                .builder(Cheese.TABLE_NAME)
+                .columns(columns(projection));
+        builder.selection(where(id, selection), whereArgs(id, selectionArgs));
+        if (sortOrder != null && !sortOrder.trim().isEmpty()) {
+            builder.orderBy(orderBy(sortOrder));
+        }
+        final String limit = limit(uri);
+        if (limit != null) {
+            builder.limit(limit);
+        }
+        return builder.create();
+    }
+
+    /**
+     * Builds a statement that deletes the cheeses picked by {@code id} and {@code selection}, or
+     * all of them if neither is given.
+     *
+     * @throws IllegalArgumentException if the selection is invalid.
+     */
+    @NonNull
+    static SupportSQLiteQuery delete(long id, @Nullable String selection,
+            @Nullable String[] selectionArgs) {
+        return new SimpleSQLiteQuery("DELETE FROM " + Cheese.TABLE_NAME
+                + whereClause(where(id, selection)), whereArgs(id, selectionArgs));
+    }
+
+    /**
+     * Builds a statement that sets {@code values} on the cheeses picked by {@code id} and
+     * {@code selection}, or on all of them if neither is given.
+     *
+     * @throws IllegalArgumentException if a value is for a column that can't be changed, or the
+     *                                  selection is invalid.
+     */
+    @NonNull
+    static SupportSQLiteQuery update(long id, @Nullable ContentValues values,
+            @Nullable String selection, @Nullable String[] selectionArgs) {
+        if (values == null || values.size() == 0) {
+            throw new IllegalArgumentException("No values to update");
+        }
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(Cheese.TABLE_NAME)
+                .append(" SET ");
+        final Object[] whereArgs = whereArgs(id, selectionArgs);
+        final int whereArgCount = whereArgs == null ? 0 : whereArgs.length;
+        final Object[] args = new Object[values.size() + whereArgCount];
+        int i = 0;
+        for (String column : values.keySet()) {
+            if (!UPDATABLE_COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Invalid column: " + column);
+            }
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(column).append(" = ?");
+            args[i++] = values.get(column);
+        }
+        if (whereArgCount > 0) {
+            System.arraycopy(whereArgs, 0, args, i, whereArgCount);
+        }
+        sql.append(whereClause(where(id, selection)));
+        return new SimpleSQLiteQuery(sql.toString(), args);
+    }
+
+    /**
+     * Returns the statement that {@link SampleContentProvider#bulkInsert} compiles once and runs
+     * for every cheese, binding the ID (or {@code null} for a new one) and the name. The
+     * {@link SampleContentProvider#QUERY_PARAMETER_CONFLICT} parameter of the URI picks what
+     * happens when the ID already exists; the default is to abort, which rolls back the whole
+     * batch.
+     *
+     * @throws IllegalArgumentException if the conflict algorithm is unknown.
+     */
+    @NonNull
+    static String insert(@NonNull Uri uri) {
+        final String conflict =
+                uri.getQueryParameter(SampleContentProvider.QUERY_PARAMETER_CONFLICT);
+        final String algorithm = conflict == null ? "ABORT" : conflict.toUpperCase(Locale.US);
+        if (!CONFLICT_ALGORITHMS.contains(algorithm)) {
+            throw new IllegalArgumentException("Invalid conflict algorithm: " + conflict);
+        }
+        return "INSERT OR " + algorithm + " INTO " + Cheese.TABLE_NAME
+                + " (" + Cheese.COLUMN_ID + ", " + Cheese.COLUMN_NAME + ") VALUES (?, ?)";
+    }
+
+    /** Combines the row ID of an item URI with the selection, or returns {@code null}. */
+    @Nullable
+    private static String where(long id, @Nullable String selection) {
+        String where = null;
+        if (selection != null && !selection.trim().isEmpty()) {
+            checkSelection(selection);
+            where = "(" + selection + ")";
+        }
+        if (id != -1) {
+            where = Cheese.COLUMN_ID + " = ?" + (where == null ? "" : " AND " + where);
+        }
+        return where;
+    }
+
+    @Nullable
+    private static Object[] whereArgs(long id, @Nullable String[] selectionArgs) {
+        return id != -1 ? prepend(id, selectionArgs) : selectionArgs;
+    }
+
+    private static String whereClause(@Nullable String where) {
+        return where == null ? "" : " WHERE " + where;
+    }
+
+    private static String[] columns(@Nullable String[] projection) {
+        if (projection == null || projection.length == 0) {
+            projection = DEFAULT_PROJECTION;
+        }
+        final String[] columns = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = PROJECTION_MAP.get(projection[i]);
+            if (columns[i] == null) {
+                throw new IllegalArgumentException("Invalid column: " + projection[i]);
+            }
+        }
+        return columns;
+    }
+
+    private static String orderBy(String sortOrder) {
+        final StringBuilder orderBy = new StringBuilder();
+        for (String term : sortOrder.split(",")) {
+            final Matcher matcher = SORT_TERM.matcher(term);
+            if (!matcher.matches() || matcher.group(1).equals(BaseColumns._COUNT)
+                    || !PROJECTION_MAP.containsKey(matcher.group(1))) {
+                throw new IllegalArgumentException("Invalid sort order: " + sortOrder);
+            }
+            if (orderBy.length() > 0) {
+                orderBy.append(", ");
+            }
+            orderBy.append(matcher.group(1));
+            if (matcher.group(2) != null) {
+                orderBy.append(" COLLATE ").append(matcher.group(2).toUpperCase(Locale.US));
+            }
+            if (matcher.group(3) != null) {
+                orderBy.append(' ').append(matcher.group(3).toUpperCase(Locale.US));
+            }
+        }
+        return orderBy.toString();
+    }
+
+    /**
+     * Checks that {@code selection} is a single expression: no statement separators, no
+     * comments, balanced parentheses and no subqueries, outside of quoted strings and names.
+     */
+    private static void checkSelection(String selection) {
+        int depth = 0;
+        char quote = 0;
+        int word = -1;
+        for (int i = 0; i <= selection.length(); i++) {
+            final char c = i < selection.length() ? selection.charAt(i) : ' ';
+            if (quote != 0) {
+                if (c == quote) {
+                    // A doubled quote is an escaped one
+                    if (i + 1 < selection.length() && selection.charAt(i + 1) == quote) {
+                        i++;
+                    } else {
+                        quote = 0;
+                    }
+                }
+                continue;
+            }
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                if (word == -1) {
+                    word = i;
+                }
+                continue;
+            }
+            if (word != -1) {
+                if (selection.substring(word, i).equalsIgnoreCase("SELECT")) {
+                    throw new IllegalArgumentException("Invalid selection: " + selection);
+                }
+                word = -1;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ';' || c == '[' || selection.startsWith("--", i)
+                    || selection.startsWith("/*", i)) {
+                throw new IllegalArgumentException("Invalid selection: " + selection);
+            }
+            if (depth < 0) {
+                throw new IllegalArgumentException("Invalid selection: " + selection);
+            }
+        }
+        if (quote != 0 || depth != 0) {
+            throw new IllegalArgumentException("Invalid selection: " + selection);
+        }
+    }
+
+    @Nullable
+    private static String limit(Uri uri) {
+        final String limit = uri.getQueryParameter(SampleContentProvider.QUERY_PARAMETER_LIMIT);
+        final String offset = uri.getQueryParameter(SampleContentProvider.QUERY_PARAMETER_OFFSET);
+        if (limit == null && offset == null) {
+            return null;
+        }
+        // SQLite reads "LIMIT a, b" as an offset of a and a limit of b
+        return parseCount(offset, 0) + "," + parseCount(limit, Long.MAX_VALUE);
+    }
+
+    private static long parseCount(@Nullable String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final long count = Long.parseLong(value);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid limit or offset: " + value);
+    }
+
+    private static Object[] prepend(long id, @Nullable String[] args) {
+        final Object[] result = new Object[args == null ? 1 : args.length + 1];
+        result[0] = id;
+        if (args != null) {
+            System.arraycopy(args, 0, result, 1, args.length);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.contentprovidersample.provider;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The binary format that {@link SampleContentProvider} streams the Cheese table in, for
+ * {@link SampleContentProvider#MIME_TYPE_CHEESE_STREAM}.
+ *
+ * <p>A stream starts with a 4 byte magic number and a 4 byte version. Each cheese follows as a
+ * {@code 1} byte, its 8 byte ID, and its name as a 4 byte length followed by that many bytes of
+ * UTF-8, or a length of {@code -1} for no name. A {@code 0} byte ends the stream, so a truncated
+ * stream can be told apart from a complete one. All numbers are big-endian. Names are at most
+ * 64 KiB long, so that a corrupt length can't make the reader allocate gigabytes.</p>
+ */
+public final class CheeseStream {
+
+    private static final int MAGIC = 0x43485a53; // "CHZS"
+
+    private static final int VERSION = 1;
+
+    private static final int TAG_END = 0;
+
+    private static final int TAG_CHEESE = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_NAME_LENGTH = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CheeseStream() {
+    }
+
+    /** Writes cheeses in the stream format. */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream mOut;
+
+        public Writer(@NonNull OutputStream out) throws IOException {
+            mOut = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+        }
+
+        /**
+         * Writes one cheese. An ID of {@code 0} lets the importing side assign one; any other ID
+         * replaces the cheese with that ID.
+         *
+         * @throws IOException if the name is longer than the format allows.
+         */
+        public void write(long id, @Nullable String name) throws IOException {
+            mOut.writeByte(TAG_CHEESE);
+            mOut.writeLong(id);
+            if (name == null) {
+                mOut.writeInt(-1);
+            } else {
+                final byte[] bytes = name.getBytes(UTF_8);
+                if (bytes.length > MAX_NAME_LENGTH) {
+                    throw new IOException("Cheese name too long: " + bytes.length + " bytes");
+                }
+                mOut.writeInt(bytes.length);
+                mOut.write(bytes);
+            }
+        }
+
+        /** Ends the stream and flushes it. Without this, the reader sees a truncated stream. */
+        public void finish() throws IOException {
+            mOut.writeByte(TAG_END);
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOut.close();
+        }
+    }
+
+    /** Reads cheeses in the stream format, one at a time. */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream mIn;
+
+        private long mId;
+
+        @Nullable
+        private String mName;
+
+        private byte[] mBuffer = new byte[64];
+
+        public Reader(@NonNull InputStream in) throws IOException {
+            mIn = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            final int magic = mIn.readInt();
+            final int version = mIn.readInt();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("Not a cheese stream, or an unsupported version");
+            }
+        }
+
+        /**
+         * Moves to the next cheese.
+         *
+         * @return {@code false} at the end of the stream.
+         * @throws EOFException if the stream ends before its end marker.
+         */
+        public boolean next() throws IOException {
+            final int tag = mIn.read();
+            if (tag == TAG_END) {
+                return false;
+            } else if (tag == -1) {
+                throw new EOFException("Truncated cheese stream");
+            } else if (tag != TAG_CHEESE) {
+                throw new IOException("Corrupt cheese stream");
+            }
+            mId = mIn.readLong();
+            final int length = mIn.readInt();
+            if (length == -1) {
+                mName = null;
+            } else if (length < 0 || length > MAX_NAME_LENGTH) {
+                throw new IOException("Corrupt cheese stream");
+            } else {
+                if (length > mBuffer.length) {
+                    mBuffer = new byte[Math.max(length, mBuffer.length * 2)];
+                }
+                mIn.readFully(mBuffer, 0, length);
+                mName = new String(mBuffer, 0, length, UTF_8);
+            }
+            return true;
+        }
+
+        /** The ID of the current cheese. */
+        public long getId() {
+            return mId;
+        }
+
+        /** The name of the current cheese. */
+        @Nullable
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package com.example.android.contentprovidersample.provider;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
@@ -24,14 +25,29 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteStatement;
 import com.example.android.contentprovidersample.data.Cheese;
 import com.example.android.contentprovidersample.data.CheeseDao;
 import com.example.android.contentprovidersample.data.SampleDatabase;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 
@@ -50,6 +66,39 @@ public class SampleContentProvider extends ContentProvider {
     public static final Uri URI_CHEESE = Uri.parse(
             "content://" + AUTHORITY + "/" + Cheese.TABLE_NAME);
 
+    /**
+     * The URI query parameter that limits how many rows {@link #query} returns, for example
+     * {@code content://.../cheeses?limit=20}.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /** The URI query parameter for the number of rows {@link #query} skips. */
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+    /**
+     * The URI query parameter that picks what {@link #bulkInsert} does with a cheese whose ID
+     * already exists: {@code abort} (the default, which inserts none of them), {@code ignore} or
+     * {@code replace}, as in SQLite's {@code INSERT OR ...}.
+     */
+    public static final String QUERY_PARAMETER_CONFLICT = "conflict";
+
+    /**
+     * The MIME type of the whole Cheese table in the {@link CheeseStream} format. Open the
+     * table URI with {@link android.content.ContentResolver#openTypedAssetFileDescriptor} and
+     * this type, or with {@code openFileDescriptor(uri, "r")}, to export it. Open it with
+     * {@code openFileDescriptor(uri, "w")} and write a stream to import cheeses.
+     */
+    public static final String MIME_TYPE_CHEESE_STREAM =
+            "application/vnd." + AUTHORITY + "." + Cheese.TABLE_NAME + "-stream";
+
+    private static final String TAG = "SampleContentProvider";
+
+    /** How many cheeses are read from the database at a time for an export. */
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
+    /** How many imported cheeses are written per transaction. */
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
     /** The match code for some items in the Cheese table. */
     private static final int CODE_CHEESE_DIR = 1;
 
@@ -64,11 +113,46 @@ public class SampleContentProvider extends ContentProvider {
         MATCHER.addURI(AUTHORITY, Cheese.TABLE_NAME + "/*", CODE_CHEESE_ITEM);
     }
 
+    /**
+     * The URIs changed by the batch running on the current thread, or {@code null} outside of
+     * {@link #applyBatch}. Their observers are notified once the batch commits.
+     */
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<>();
+
+    /**
+     * Fills the database with the initial cheeses in the background, so that starting the process
+     * doesn't wait for the database to be opened and written. Until that commits, queries see an
+     * empty table; observers of {@link #URI_CHEESE} are notified once it has.
+     */
     @Override
     public boolean onCreate() {
+        final Context context = getContext();
+        if (context == null) {
+            return false;
+        }
+        // Only builds the database; it is opened on first use
+        final SampleDatabase database = SampleDatabase.getInstance(context);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (database.populateInitialData()) {
+                    context.getContentResolver().notifyChange(URI_CHEESE, null);
+                }
+            }
+        });
         return true;
     }
 
+    /**
+     * Returns the requested columns of the cheeses that match {@code selection}, in
+     * {@code sortOrder}, limited by the {@link #QUERY_PARAMETER_LIMIT} and
+     * {@link #QUERY_PARAMETER_OFFSET} parameters of the URI. Filtering, sorting and paging all
+     * happen in SQLite, so only those rows and columns are sent to the caller.
+     *
+     * <p>The projection may name {@link Cheese#COLUMN_ID}, {@link Cheese#COLUMN_NAME} and
+     * {@link android.provider.BaseColumns#_COUNT}. The selection is a single expression over
+     * those columns; pass values as {@code selectionArgs}.</p>
+     */
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
@@ -79,13 +163,10 @@ public class SampleContentProvider extends ContentProvider {
             if (context == null) {
                 return null;
             }
-            CheeseDao cheese = SampleDatabase.getInstance(context).cheese();
-            final Cursor cursor;
-            if (code == CODE_CHEESE_DIR) {
-                cursor = cheese.selectAll();
-            } else {
-                cursor = cheese.selectById(ContentUris.parseId(uri));
-            }
+            final long id = code == CODE_CHEESE_DIR ? -1 : ContentUris.parseId(uri);
+            final Cursor cursor = SampleDatabase.getInstance(context).cheese().select(
+                    CheeseQueryBuilder.build(uri, id, projection, selection, selectionArgs,
+                            sortOrder));
             cursor.setNotificationUri(context.getContentResolver(), uri);
             return cursor;
         } else {
@@ -117,7 +198,7 @@ public class SampleContentProvider extends ContentProvider {
                 }
                 final long id = SampleDatabase.getInstance(context).cheese()
                         .insert(Cheese.fromContentValues(values));
-                context.getContentResolver().notifyChange(uri, null);
+                notifyChange(context, uri);
                 return ContentUris.withAppendedId(uri, id);
             case CODE_CHEESE_ITEM:
                 throw new IllegalArgumentException("Invalid URI, cannot insert with ID: " + uri);
@@ -126,48 +207,78 @@ public class SampleContentProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Deletes the cheeses that match {@code selection}, or the one cheese of an item URI, with a
+     * single statement. Deleting from the table URI without a selection deletes every cheese.
+     */
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection,
             @Nullable String[] selectionArgs) {
-        switch (MATCHER.match(uri)) {
-            case CODE_CHEESE_DIR:
-                throw new IllegalArgumentException("Invalid URI, cannot update without ID" + uri);
-            case CODE_CHEESE_ITEM:
-                final Context context = getContext();
-                if (context == null) {
-                    return 0;
-                }
-                final int count = SampleDatabase.getInstance(context).cheese()
-                        .deleteById(ContentUris.parseId(uri));
-                context.getContentResolver().notifyChange(uri, null);
-                return count;
-            default:
-                throw new IllegalArgumentException("Unknown URI: " + uri);
+        final int code = MATCHER.match(uri);
+        if (code == CODE_CHEESE_DIR || code == CODE_CHEESE_ITEM) {
+            final Context context = getContext();
+            if (context == null) {
+                return 0;
+            }
+            final long id = code == CODE_CHEESE_DIR ? -1 : ContentUris.parseId(uri);
+            final int count = executeUpdateDelete(SampleDatabase.getInstance(context),
+                    CheeseQueryBuilder.delete(id, selection, selectionArgs));
+            if (count > 0) {
+                notifyChange(context, uri);
+            }
+            return count;
+        } else {
+            throw new IllegalArgumentException("Unknown URI: " + uri);
         }
     }
 
+    /**
+     * Sets {@code values} on the cheeses that match {@code selection}, or on the one cheese of an
+     * item URI, with a single statement. Only {@link Cheese#COLUMN_NAME} can be changed.
+     */
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
             @Nullable String[] selectionArgs) {
-        switch (MATCHER.match(uri)) {
-            case CODE_CHEESE_DIR:
-                throw new IllegalArgumentException("Invalid URI, cannot update without ID" + uri);
-            case CODE_CHEESE_ITEM:
-                final Context context = getContext();
-                if (context == null) {
-                    return 0;
-                }
-                final Cheese cheese = Cheese.fromContentValues(values);
-                cheese.id = ContentUris.parseId(uri);
-                final int count = SampleDatabase.getInstance(context).cheese()
-                        .update(cheese);
-                context.getContentResolver().notifyChange(uri, null);
-                return count;
-            default:
-                throw new IllegalArgumentException("Unknown URI: " + uri);
+        final int code = MATCHER.match(uri);
+        if (code == CODE_CHEESE_DIR || code == CODE_CHEESE_ITEM) {
+            final Context context = getContext();
+            if (context == null) {
+                return 0;
+            }
+            final long id = code == CODE_CHEESE_DIR ? -1 : ContentUris.parseId(uri);
+            final int count = executeUpdateDelete(SampleDatabase.getInstance(context),
+                    CheeseQueryBuilder.update(id, values, selection, selectionArgs));
+            if (count > 0) {
+                notifyChange(context, uri);
+            }
+            return count;
+        } else {
+            throw new IllegalArgumentException("Unknown URI: " + uri);
         }
     }
 
+    private static int executeUpdateDelete(SampleDatabase database, SupportSQLiteQuery query) {
+        final SupportSQLiteStatement statement = database.compileStatement(query.getSql());
+        try {
+            query.bindTo(statement);
+            return statement.executeUpdateDelete();
+        } finally {
+            closeStatement(statement);
+        }
+    }
+
+    private static void closeStatement(SupportSQLiteStatement statement) {
+        try {
+            statement.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close a statement", e);
+        }
+    }
+
+    /**
+     * Applies the operations in one transaction. Observers are notified once after it commits,
+     * rather than once per operation.
+     */
     @SuppressWarnings("RedundantThrows") /* This gets propagated up from the Callable */
     @NonNull
     @Override
@@ -179,14 +290,50 @@ public class SampleContentProvider extends ContentProvider {
             return new ContentProviderResult[0];
         }
         final SampleDatabase database = SampleDatabase.getInstance(context);
-        return database.runInTransaction(new Callable<ContentProviderResult[]>() {
-            @Override
-            public ContentProviderResult[] call() throws OperationApplicationException {
-                return SampleContentProvider.super.applyBatch(operations);
-            }
-        });
+        final Set<Uri> changes = new LinkedHashSet<>();
+        mBatchChanges.set(changes);
+        final ContentProviderResult[] results;
+        try {
+            results = database.runInTransaction(new Callable<ContentProviderResult[]>() {
+                @Override
+                public ContentProviderResult[] call() throws OperationApplicationException {
+                    return SampleContentProvider.super.applyBatch(operations);
+                }
+            });
+        } finally {
+            mBatchChanges.remove();
+        }
+        // Nothing changed if the batch failed and was rolled back
+        if (changes.size() > 1) {
+            // Observers are also notified of changes below the URI they observe, so one
+            // notification of the table reaches the observers of every changed row
+            context.getContentResolver().notifyChange(URI_CHEESE, null);
+        } else if (changes.size() == 1) {
+            context.getContentResolver().notifyChange(changes.iterator().next(), null);
+        }
+        return results;
+    }
+
+    /**
+     * Notifies the observers of {@code uri}, or defers it to the end of the batch that is running
+     * on this thread.
+     */
+    private void notifyChange(Context context, Uri uri) {
+        final Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+        } else {
+            context.getContentResolver().notifyChange(uri, null);
+        }
     }
 
+    /**
+     * Inserts the cheeses in one transaction, running a single compiled statement for each of
+     * them. The {@link #QUERY_PARAMETER_CONFLICT} parameter of the URI picks what happens to the
+     * cheeses whose IDs already exist.
+     *
+     * @return The number of cheeses inserted, not counting the ones that were ignored.
+     */
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] valuesArray) {
         switch (MATCHER.match(uri)) {
@@ -195,12 +342,32 @@ public class SampleContentProvider extends ContentProvider {
                 if (context == null) {
                     return 0;
                 }
+                final String sql = CheeseQueryBuilder.insert(uri);
                 final SampleDatabase database = SampleDatabase.getInstance(context);
-                final Cheese[] cheeses = new Cheese[valuesArray.length];
-                for (int i = 0; i < valuesArray.length; i++) {
-                    cheeses[i] = Cheese.fromContentValues(valuesArray[i]);
+                int count = 0;
+                database.beginTransaction();
+                try {
+                    final SupportSQLiteStatement statement = database.compileStatement(sql);
+                    try {
+                        for (ContentValues values : valuesArray) {
+                            bindCheese(statement, Cheese.fromContentValues(values),
+                                    values.containsKey(Cheese.COLUMN_ID));
+                            // -1 when the cheese was ignored
+                            if (statement.executeInsert() != -1) {
+                                count++;
+                            }
+                        }
+                    } finally {
+                        closeStatement(statement);
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                if (count > 0) {
+                    notifyChange(context, uri);
                 }
-                return database.cheese().insertAll(cheeses).length;
+                return count;
             case CODE_CHEESE_ITEM:
                 throw new IllegalArgumentException("Invalid URI, cannot insert with ID: " + uri);
             default:
@@ -208,4 +375,201 @@ public class SampleContentProvider extends ContentProvider {
         }
     }
 
+    private static void bindCheese(SupportSQLiteStatement statement, Cheese cheese,
+            boolean hasId) {
+        if (hasId) {
+            statement.bindLong(1, cheese.id);
+        } else {
+            // Lets SQLite pick a new ID
+            statement.bindNull(1);
+        }
+        if (cheese.name != null) {
+            statement.bindString(2, cheese.name);
+        } else {
+            statement.bindNull(2);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String[] getStreamTypes(@NonNull Uri uri, @NonNull String mimeTypeFilter) {
+        if (MATCHER.match(uri) == CODE_CHEESE_DIR
+                && ClipDescription.compareMimeTypes(MIME_TYPE_CHEESE_STREAM, mimeTypeFilter)) {
+            return new String[]{MIME_TYPE_CHEESE_STREAM};
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull Uri uri,
+            @NonNull String mimeTypeFilter, @Nullable Bundle opts)
+            throws FileNotFoundException {
+        if (MATCHER.match(uri) == CODE_CHEESE_DIR
+                && ClipDescription.compareMimeTypes(MIME_TYPE_CHEESE_STREAM, mimeTypeFilter)) {
+            return new AssetFileDescriptor(openExport(uri), 0,
+                    AssetFileDescriptor.UNKNOWN_LENGTH);
+        }
+        return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+    }
+
+    /**
+     * Streams the Cheese table in the {@link CheeseStream} format through a pipe: mode
+     * {@code "r"} exports it, mode {@code "w"} imports the cheeses written to the pipe. Either
+     * side runs on a background thread, so neither is limited by the size of a cursor window.
+     */
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        if (MATCHER.match(uri) != CODE_CHEESE_DIR) {
+            throw new FileNotFoundException("No stream for " + uri);
+        }
+        switch (mode) {
+            case "r":
+                return openExport(uri);
+            case "w":
+            case "wt":
+                return openImport();
+            default:
+                throw new FileNotFoundException("Unsupported mode " + mode + " for " + uri);
+        }
+    }
+
+    private ParcelFileDescriptor openExport(@NonNull Uri uri) throws FileNotFoundException {
+        final Context context = getContext();
+        if (context == null) {
+            throw new FileNotFoundException("Provider is not attached");
+        }
+        final CheeseDao dao = SampleDatabase.getInstance(context).cheese();
+        return openPipeHelper(uri, MIME_TYPE_CHEESE_STREAM, null, dao,
+                new PipeDataWriter<CheeseDao>() {
+                    @Override
+                    public void writeDataToPipe(@NonNull ParcelFileDescriptor output,
+                            @NonNull Uri uri, @NonNull String mimeType, @Nullable Bundle opts,
+                            @Nullable CheeseDao dao) {
+                        try {
+                            exportCheeses(dao,
+                                    new FileOutputStream(output.getFileDescriptor()));
+                        } catch (IOException e) {
+                            // Most likely the reader closed the pipe early
+                            Log.w(TAG, "Export of " + uri + " failed", e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Writes every cheese. The table is read in chunks by ID rather than in one transaction, so
+     * that writers aren't blocked for the whole export; cheeses changed meanwhile may or may not
+     * be included.
+     */
+    private static void exportCheeses(CheeseDao dao, FileOutputStream out) throws IOException {
+        // Not closed: the pipe is closed by openPipeHelper()
+        final CheeseStream.Writer writer = new CheeseStream.Writer(out);
+        long lastId = Long.MIN_VALUE;
+        int count;
+        do {
+            count = 0;
+            final Cursor cursor = dao.selectAfter(lastId, EXPORT_CHUNK_SIZE);
+            try {
+                final int id = cursor.getColumnIndexOrThrow(Cheese.COLUMN_ID);
+                final int name = cursor.getColumnIndexOrThrow(Cheese.COLUMN_NAME);
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(id);
+                    writer.write(lastId, cursor.getString(name));
+                    count++;
+                }
+            } finally {
+                cursor.close();
+            }
+        } while (count == EXPORT_CHUNK_SIZE);
+        writer.finish();
+    }
+
+    private ParcelFileDescriptor openImport() throws FileNotFoundException {
+        final Context context = getContext();
+        if (context == null) {
+            throw new FileNotFoundException("Provider is not attached");
+        }
+        final ParcelFileDescriptor[] pipe;
+        try {
+            // A reliable pipe lets a failed import be reported to the writer when it closes
+            pipe = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                    ? ParcelFileDescriptor.createReliablePipe()
+                    : ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Could not create a pipe: " + e.getMessage());
+        }
+        final ParcelFileDescriptor input = pipe[0];
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                String error = null;
+                int imported = 0;
+                try {
+                    imported = importCheeses(SampleDatabase.getInstance(context),
+                            new FileInputStream(input.getFileDescriptor()));
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Import failed", e);
+                    error = e.toString();
+                } finally {
+                    closeInput(input, error);
+                    // Committed chunks stay even if a later one failed
+                    if (imported > 0 || error != null) {
+                        context.getContentResolver().notifyChange(URI_CHEESE, null);
+                    }
+                }
+            }
+        });
+        return pipe[1];
+    }
+
+    /**
+     * Reads cheeses and writes them in chunks of {@link #IMPORT_CHUNK_SIZE}, one transaction
+     * each, so that the import never holds more than a chunk in memory or the write lock for
+     * long.
+     *
+     * @return The number of cheeses written.
+     */
+    private static int importCheeses(SampleDatabase database, FileInputStream in)
+            throws IOException {
+        final CheeseDao dao = database.cheese();
+        final Cheese[] chunk = new Cheese[IMPORT_CHUNK_SIZE];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = new Cheese();
+        }
+        // Not closed: the pipe is closed by the caller, which may report an error through it
+        final CheeseStream.Reader reader = new CheeseStream.Reader(in);
+        int imported = 0;
+        int size = 0;
+        while (reader.next()) {
+            // Room binds the cheeses right away, so they can be reused for the next chunk
+            chunk[size].id = reader.getId();
+            chunk[size].name = reader.getName();
+            if (++size == chunk.length) {
+                dao.upsertAll(chunk);
+                imported += size;
+                size = 0;
+            }
+        }
+        if (size > 0) {
+            dao.upsertAll(Arrays.copyOf(chunk, size));
+            imported += size;
+        }
+        return imported;
+    }
+
+    private static void closeInput(ParcelFileDescriptor input, @Nullable String error) {
+        try {
+            if (error != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                input.closeWithError(error);
+            } else {
+                input.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close the import pipe", e);
+        }
+    }
+
 }
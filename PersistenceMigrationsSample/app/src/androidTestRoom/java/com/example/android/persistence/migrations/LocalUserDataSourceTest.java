@@ -25,6 +25,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Integration tests for the {@link LocalUserDataSource} implementation with Room.
  */
@@ -41,7 +45,7 @@ public class LocalUserDataSourceTest {
         // process is killed
         mDatabase = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(),
                 UsersDatabase.class).build();
-        mDataSource = new LocalUserDataSource(mDatabase.userDao());
+        mDataSource = new LocalUserDataSource(mDatabase);
     }
 
     @After
@@ -87,4 +91,26 @@ public class LocalUserDataSourceTest {
         User dbUser = mDataSource.getUser();
         assertNull(dbUser);
     }
+
+    @Test
+    public void insertAndGetUsers() {
+        // When inserting several users at once
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            users.add(new User(i, "user " + i));
+        }
+        mDataSource.insertOrUpdateUsers(users);
+
+        // The ones that exist can be retrieved by ID
+        List<User> dbUsers = mDataSource.getUsers(Arrays.asList(2, 4, 6));
+        assertEquals(2, dbUsers.size());
+
+        // And all of them page by page
+        List<User> firstPage = mDataSource.getUsersAfter(null, 3);
+        assertEquals(3, firstPage.size());
+        assertEquals(1, firstPage.get(0).getId());
+        List<User> secondPage = mDataSource.getUsersAfter(firstPage.get(2).getId(), 3);
+        assertEquals(2, secondPage.size());
+        assertEquals(4, secondPage.get(0).getId());
+    }
 }
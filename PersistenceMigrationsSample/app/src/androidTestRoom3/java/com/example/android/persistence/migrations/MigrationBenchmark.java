@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.migrations;
+
+import static com.example.android.persistence.migrations.UsersDatabase.MIGRATION_1_2;
+import static com.example.android.persistence.migrations.UsersDatabase.MIGRATION_1_4;
+import static com.example.android.persistence.migrations.UsersDatabase.MIGRATION_2_3;
+import static com.example.android.persistence.migrations.UsersDatabase.MIGRATION_3_4;
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+/**
+ * Times the migration of a large users table from every old version to version 4, once copying
+ * the users in the migration's single transaction and once with {@link UsersDatabase#MIGRATION_3_4}
+ * and {@link UsersDatabase#MIGRATION_1_4}, which leave them to {@link UsersBackfill}. For the
+ * latter both the first open and the backfill are timed. The timings are logged under
+ * {@value #TAG}.
+ * <p>
+ * The table has a million users by default; pass {@code -e migrationRows <count>} to the
+ * instrumentation to change that.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class MigrationBenchmark {
+
+    private static final String TAG = "MigrationBenchmark";
+
+    private static final String DB_NAME = "migration-benchmark-db";
+
+    private static final String ARG_ROWS = "migrationRows";
+
+    private static final int DEFAULT_ROWS = 1_000_000;
+
+    // What the migrations to version 4 did before UsersBackfill: copy every user while the
+    // database opens
+    private static final Migration COPY_MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            copyUsers(database, "last_update");
+        }
+    };
+
+    private static final Migration COPY_MIGRATION_1_4 = new Migration(1, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            copyUsers(database, "0");
+        }
+    };
+
+    // Helper for creating Room databases at old versions
+    @Rule
+    public MigrationTestHelper mMigrationTestHelper =
+            new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+                    UsersDatabase.class.getCanonicalName(),
+                    new FrameworkSQLiteOpenHelperFactory());
+
+    private Context mContext;
+
+    private int mRows;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mRows = Integer.parseInt(InstrumentationRegistry.getArguments()
+                .getString(ARG_ROWS, String.valueOf(DEFAULT_ROWS)));
+        mContext.deleteDatabase(DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void migrateFrom1() throws IOException {
+        benchmark(1);
+    }
+
+    @Test
+    public void migrateFrom2() throws IOException {
+        benchmark(2);
+    }
+
+    @Test
+    public void migrateFrom3() throws IOException {
+        benchmark(3);
+    }
+
+    private void benchmark(int version) throws IOException {
+        createDatabase(version);
+        UsersDatabase database = open(COPY_MIGRATION_3_4, COPY_MIGRATION_1_4);
+        long copyNanos = timeOpen(database);
+        assertEquals(mRows, countUsers(database));
+        database.close();
+        mContext.deleteDatabase(DB_NAME);
+
+        createDatabase(version);
+        database = open(MIGRATION_3_4, MIGRATION_1_4);
+        long openNanos = timeOpen(database);
+        // Without the pauses the background thread takes between batches
+        long start = System.nanoTime();
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        while (UsersBackfill.moveBatch(db, UsersBackfill.DEFAULT_BATCH_SIZE) > 0) {
+            // Until the old table has been dropped
+        }
+        long backfillNanos = System.nanoTime() - start;
+        assertEquals(mRows, countUsers(database));
+        database.close();
+
+        Log.i(TAG, String.format("%d users, version %d to 4: copy in the migration %d ms,"
+                        + " online migration %d ms to open and %d ms to backfill", mRows,
+                version, copyNanos / 1_000_000, openNanos / 1_000_000,
+                backfillNanos / 1_000_000));
+    }
+
+    /** Creates the database at {@code version} and fills it with users. */
+    private void createDatabase(int version) throws IOException {
+        if (version == 1) {
+            // Version 1 isn't a Room database
+            SqliteTestDbOpenHelper helper = new SqliteTestDbOpenHelper(mContext, DB_NAME);
+            helper.getWritableDatabase();
+            helper.close();
+        } else {
+            mMigrationTestHelper.createDatabase(DB_NAME, version).close();
+        }
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(mContext.getDatabasePath(DB_NAME).getPath(),
+                null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            SQLiteStatement insert = db.compileStatement(version >= 3
+                    ? "INSERT INTO users (userid, username, last_update) VALUES (?, ?, ?)"
+                    : "INSERT INTO users (userid, username) VALUES (?, ?)");
+            db.beginTransaction();
+            try {
+                for (int i = 1; i <= mRows; i++) {
+                    insert.bindLong(1, i);
+                    insert.bindString(2, "user " + i);
+                    if (version >= 3) {
+                        insert.bindLong(3, i);
+                    }
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            insert.close();
+        } finally {
+            db.close();
+        }
+    }
+
+    /** Builds the database at version 4 with these migrations to it, without opening it. */
+    private UsersDatabase open(Migration migration3To4, Migration migration1To4) {
+        return Room.databaseBuilder(mContext, UsersDatabase.class, DB_NAME)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, migration3To4, migration1To4)
+                .build();
+    }
+
+    /**
+     * Opens {@code database}, which migrates it.
+     *
+     * @return how long opening took, in nanoseconds.
+     */
+    private static long timeOpen(UsersDatabase database) {
+        long start = System.nanoTime();
+        database.getOpenHelper().getWritableDatabase();
+        return System.nanoTime() - start;
+    }
+
+    private static int countUsers(UsersDatabase database) {
+        Cursor count = database.query("SELECT COUNT(*) FROM users", null);
+        try {
+            count.moveToFirst();
+            return count.getInt(0);
+        } finally {
+            count.close();
+        }
+    }
+
+    private static void copyUsers(SupportSQLiteDatabase database, String lastUpdate) {
+        database.execSQL("CREATE TABLE users_new (userid TEXT NOT NULL, username TEXT,"
+                + " last_update INTEGER, PRIMARY KEY(userid))");
+        database.execSQL("INSERT INTO users_new (userid, username, last_update) "
+                + "SELECT userid, username, " + lastUpdate + " FROM users");
+        database.execSQL("DROP TABLE users");
+        database.execSQL("ALTER TABLE users_new RENAME TO users");
+    }
+}
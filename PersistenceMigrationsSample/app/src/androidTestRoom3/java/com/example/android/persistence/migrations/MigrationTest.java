@@ -17,6 +17,7 @@
 package com.example.android.persistence.migrations;
 
 import android.content.ContentValues;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import androidx.room.Room;
@@ -34,7 +35,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import static com.example.android.persistence.migrations.UsersDatabase.MIGRATION_1_2;
 import static com.example.android.persistence.migrations.UsersDatabase.MIGRATION_1_4;
@@ -86,13 +89,18 @@ public class MigrationTest {
 
         // Re-open the database with version 4 and provide
         // MIGRATION_2_3 and MIGRATION_3_4 as the migration process.
-        mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, true,
-                MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        // The old table is kept until its users have been moved, so dropped tables are only
+        // checked once they have been.
+        SupportSQLiteDatabase migrated = mMigrationTestHelper.runMigrationsAndValidate(
+                TEST_DB_NAME, 4, false, MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        backfill(migrated);
         // MigrationTestHelper automatically verifies the schema changes, but not the data validity
         // Validate that the data was migrated properly.
         User dbUser = getMigratedRoomDatabase().userDao().getUser();
         assertEquals(dbUser.getId(), "1");
         assertEquals(dbUser.getUserName(), USER.getUserName());
+        // Version 1 users are moved with a last_update of 0
+        assertEquals(dbUser.getDate(), new Date(0));
     }
 
     @Test
@@ -106,8 +114,11 @@ public class MigrationTest {
 
         // Re-open the database with version 4 and provide
         // MIGRATION_2_3 and MIGRATION_3_4 as the migration process.
-        mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, true,
-                MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        // The old table is kept until its users have been moved, so dropped tables are only
+        // checked once they have been.
+        SupportSQLiteDatabase migrated = mMigrationTestHelper.runMigrationsAndValidate(
+                TEST_DB_NAME, 4, false, MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        backfill(migrated);
 
         // MigrationTestHelper automatically verifies the schema changes, but not the data validity
         // Validate that the data was migrated properly.
@@ -130,8 +141,11 @@ public class MigrationTest {
 
         // Re-open the database with version 4 and provide
         // MIGRATION_2_3 and MIGRATION_3_4 as the migration process.
-        mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, true,
-                MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        // The old table is kept until its users have been moved, so dropped tables are only
+        // checked once they have been.
+        SupportSQLiteDatabase migrated = mMigrationTestHelper.runMigrationsAndValidate(
+                TEST_DB_NAME, 4, false, MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        backfill(migrated);
 
         // MigrationTestHelper automatically verifies the schema changes, but not the data validity
         // Validate that the data was migrated properly.
@@ -159,6 +173,132 @@ public class MigrationTest {
         assertEquals(dbUser.getDate(), USER.getDate());
     }
 
+    @Test
+    public void migrationFrom3To4_movesUsersInBatches() throws IOException {
+        // Create the database with version 3
+        SupportSQLiteDatabase db = mMigrationTestHelper.createDatabase(TEST_DB_NAME, 3);
+        for (int i = 1; i <= 25; i++) {
+            insertUser(i, "user " + i, i, db);
+        }
+        db.close();
+
+        // The migration only swaps the tables, so the schema is right before any user is moved.
+        // The old table is still there, so dropped tables aren't validated.
+        db = mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, false,
+                MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        assertEquals(0, count(db, "users"));
+
+        // A user that's needed is moved right away
+        assertEquals(1, UsersBackfill.moveUsers(db, Collections.singletonList("7")));
+        // and a user changed before it was moved keeps the change
+        insertUser("3", "changed", 100, db);
+
+        // The rest are moved in batches, after which the old table is dropped
+        assertEquals(10, UsersBackfill.moveBatch(db, 10));
+        assertEquals(10, UsersBackfill.moveBatch(db, 10));
+        assertEquals(4, UsersBackfill.moveBatch(db, 10));
+        assertEquals(0, UsersBackfill.moveBatch(db, 10));
+        assertEquals(25, count(db, "users"));
+        Cursor user = db.query("SELECT username, last_update FROM users WHERE userid = ?",
+                new Object[]{"3"});
+        user.moveToFirst();
+        assertEquals("changed", user.getString(0));
+        assertEquals(100, user.getLong(1));
+        user.close();
+        assertBackfillFinished(db);
+    }
+
+    @Test
+    public void deleteAllUsersDuringBackfill_staysEmpty() throws IOException {
+        // Create the database with version 3
+        SupportSQLiteDatabase db = mMigrationTestHelper.createDatabase(TEST_DB_NAME, 3);
+        for (int i = 1; i <= 25; i++) {
+            insertUser(i, "user " + i, i, db);
+        }
+        db.close();
+
+        // Migrate it and move some of the users
+        db = mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, false,
+                MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        assertEquals(10, UsersBackfill.moveBatch(db, 10));
+        db.close();
+
+        // When all users are deleted before the backfill is done
+        UsersDatabase database = getMigratedRoomDatabase();
+        new LocalUserDataSource(database).deleteAllUsers();
+
+        // The users that weren't moved yet don't come back once it carries on
+        db = database.getOpenHelper().getWritableDatabase();
+        assertEquals(0, UsersBackfill.moveBatch(db, 10));
+        assertEquals(0, count(db, "users"));
+        assertBackfillFinished(db);
+    }
+
+    @Test
+    public void getUsersAfterDuringBackfill_readsAllUsers() throws IOException {
+        // Create the database with version 3
+        SupportSQLiteDatabase db = mMigrationTestHelper.createDatabase(TEST_DB_NAME, 3);
+        for (int i = 1; i <= 25; i++) {
+            insertUser(i, "user " + i, i, db);
+        }
+        db.close();
+
+        // Migrate it and move some of the users
+        db = mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, false,
+                MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        assertEquals(10, UsersBackfill.moveBatch(db, 10));
+        db.close();
+
+        // When paging through the users before the backfill is done
+        LocalUserDataSource dataSource = new LocalUserDataSource(getMigratedRoomDatabase());
+        List<User> firstPage = dataSource.getUsersAfter(null, 20);
+        List<User> secondPage =
+                dataSource.getUsersAfter(firstPage.get(firstPage.size() - 1).getId(), 20);
+
+        // None of them are skipped
+        assertEquals(20, firstPage.size());
+        assertEquals(5, secondPage.size());
+    }
+
+    @Test
+    public void migrationFrom3To4_resumesAfterTheProcessIsKilled() throws IOException {
+        // Create the database with version 3
+        SupportSQLiteDatabase db = mMigrationTestHelper.createDatabase(TEST_DB_NAME, 3);
+        for (int i = 1; i <= 25; i++) {
+            insertUser(i, "user " + i, i, db);
+        }
+        db.close();
+
+        // Migrate and move one batch, as if the process was killed right after it
+        db = mMigrationTestHelper.runMigrationsAndValidate(TEST_DB_NAME, 4, false,
+                MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4);
+        assertEquals(10, UsersBackfill.moveBatch(db, 10));
+        assertEquals(10, count(db, "users"));
+        assertEquals(10, moved(db));
+        db.close();
+
+        // The next open moves the users that are left
+        UsersBackfill backfill = new UsersBackfill(10);
+        UsersDatabase database = Room.databaseBuilder(ApplicationProvider.getApplicationContext(),
+                UsersDatabase.class, TEST_DB_NAME)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_1_4)
+                .addCallback(backfill)
+                .build();
+        mMigrationTestHelper.closeWhenFinished(database);
+        db = database.getOpenHelper().getWritableDatabase();
+        // Wait for the background thread, helping it along
+        while (backfill.moveNextBatch()) {
+            // Until the old table has been dropped
+        }
+        Cursor users = db.query("SELECT COUNT(*), MIN(last_update), MAX(last_update) FROM users");
+        users.moveToFirst();
+        assertEquals(25, users.getInt(0));
+        assertEquals(1, users.getLong(1));
+        assertEquals(25, users.getLong(2));
+        users.close();
+        assertBackfillFinished(db);
+    }
+
     private UsersDatabase getMigratedRoomDatabase() {
         UsersDatabase database = Room.databaseBuilder(ApplicationProvider.getApplicationContext(),
                 UsersDatabase.class, TEST_DB_NAME)
@@ -169,6 +309,41 @@ public class MigrationTest {
         return database;
     }
 
+    /** Moves all the users the migration left in the old table, as UsersBackfill does. */
+    private static void backfill(SupportSQLiteDatabase db) {
+        while (UsersBackfill.moveBatch(db, 10) > 0) {
+            // Until the old table has been dropped
+        }
+        assertBackfillFinished(db);
+    }
+
+    private static void assertBackfillFinished(SupportSQLiteDatabase db) {
+        Cursor tables = db.query("SELECT name FROM sqlite_master WHERE name IN (?, ?)",
+                new Object[]{UsersBackfill.LEGACY_TABLE, UsersBackfill.BACKFILL_TABLE});
+        assertEquals(0, tables.getCount());
+        tables.close();
+    }
+
+    private static int count(SupportSQLiteDatabase db, String table) {
+        Cursor cursor = db.query("SELECT COUNT(*) FROM " + table);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int moved(SupportSQLiteDatabase db) {
+        Cursor cursor = db.query("SELECT moved FROM " + UsersBackfill.BACKFILL_TABLE);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
     private void insertUser(int id, String userName, SupportSQLiteDatabase db) {
         ContentValues values = new ContentValues();
         values.put("userid", id);
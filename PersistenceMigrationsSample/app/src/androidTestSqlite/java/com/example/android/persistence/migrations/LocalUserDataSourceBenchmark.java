@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.migrations;
+
+import static com.example.android.persistence.migrations.UserPersistenceContract.UserEntry.COLUMN_NAME_ENTRY_ID;
+import static com.example.android.persistence.migrations.UserPersistenceContract.UserEntry.COLUMN_NAME_USERNAME;
+import static com.example.android.persistence.migrations.UserPersistenceContract.UserEntry.TABLE_NAME;
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares {@link LocalUserDataSource}, which keeps the database and its statements open, with
+ * opening and closing the database around every call. The timings are logged under
+ * {@value #TAG}; the test only fails if either way stores the wrong user.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class LocalUserDataSourceBenchmark {
+
+    private static final String TAG = "UserDataSourceBenchmark";
+
+    private static final int WARM_UP = 50;
+
+    private static final int ITERATIONS = 500;
+
+    private LocalUserDataSource mDataSource;
+
+    private UsersDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mDataSource = LocalUserDataSource.getInstance(ApplicationProvider.getApplicationContext());
+        mDbHelper = new UsersDbHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void cleanUp() {
+        mDataSource.deleteAllUsers();
+        mDbHelper.close();
+    }
+
+    @Test
+    public void updateAndGetUser() {
+        runReopening(WARM_UP);
+        final long reopenNanos = runReopening(ITERATIONS);
+        runPersistent(WARM_UP);
+        final long persistentNanos = runPersistent(ITERATIONS);
+
+        Log.i(TAG, String.format("update + get, %d iterations: reopening %.1f us/op,"
+                        + " persistent %.1f us/op, %.1fx faster", ITERATIONS,
+                reopenNanos / 1e3 / ITERATIONS, persistentNanos / 1e3 / ITERATIONS,
+                (double) reopenNanos / persistentNanos));
+    }
+
+    /** Updates and reads the user the way the data source used to: reopening the database. */
+    private long runReopening(int iterations) {
+        final long start = System.nanoTime();
+        User user = null;
+        for (int i = 0; i < iterations; i++) {
+            SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_NAME_ENTRY_ID, 1);
+            values.put(COLUMN_NAME_USERNAME, "user " + i);
+            db.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.close();
+
+            db = mDbHelper.getReadableDatabase();
+            Cursor c = db.query(TABLE_NAME,
+                    new String[]{COLUMN_NAME_ENTRY_ID, COLUMN_NAME_USERNAME},
+                    null, null, null, null, null, "1");
+            if (c.moveToNext()) {
+                user = new User(c.getInt(c.getColumnIndexOrThrow(COLUMN_NAME_ENTRY_ID)),
+                        c.getString(c.getColumnIndexOrThrow(COLUMN_NAME_USERNAME)));
+            }
+            c.close();
+            db.close();
+        }
+        final long elapsed = System.nanoTime() - start;
+        assertEquals("user " + (iterations - 1), user.getUserName());
+        return elapsed;
+    }
+
+    private long runPersistent(int iterations) {
+        final long start = System.nanoTime();
+        User user = null;
+        for (int i = 0; i < iterations; i++) {
+            mDataSource.insertOrUpdateUser(new User(1, "user " + i));
+            user = mDataSource.getUser();
+        }
+        final long elapsed = System.nanoTime() - start;
+        assertEquals("user " + (iterations - 1), user.getUserName());
+        return elapsed;
+    }
+}
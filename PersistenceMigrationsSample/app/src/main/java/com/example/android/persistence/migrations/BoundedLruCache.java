@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.migrations;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe cache that holds at most {@code maxSize} values and evicts the least recently
+ * used one to make room, counting its hits, misses and evictions.
+ * <p>
+ * Unlike {@code android.util.LruCache}, it runs in local unit tests.
+ */
+public class BoundedLruCache<K, V> {
+
+    private final int mMaxSize;
+
+    private final LinkedHashMap<K, V> mMap;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public BoundedLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        mMaxSize = maxSize;
+        // Access order keeps the least recently used entry first
+        mMap = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > mMaxSize) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Returns the value for {@code key}, or {@code null}, and marks it recently used. */
+    @Nullable
+    public synchronized V get(@NonNull K key) {
+        V value = mMap.get(key);
+        if (value == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return value;
+    }
+
+    public synchronized void put(@NonNull K key, @NonNull V value) {
+        mMap.put(key, value);
+    }
+
+    public synchronized void remove(@NonNull K key) {
+        mMap.remove(key);
+    }
+
+    public synchronized void clear() {
+        mMap.clear();
+    }
+
+    public synchronized int size() {
+        return mMap.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /** The share of lookups that found a value, between 0 and 1. */
+    public synchronized double getHitRate() {
+        long lookups = mHitCount + mMissCount;
+        return lookups == 0 ? 0 : (double) mHitCount / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BoundedLruCache[size=" + mMap.size() + ",maxSize=" + mMaxSize
+                + ",hits=" + mHitCount + ",misses=" + mMissCount
+                + ",evictions=" + mEvictionCount + "]";
+    }
+}
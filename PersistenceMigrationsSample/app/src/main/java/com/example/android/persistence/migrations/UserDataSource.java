@@ -16,6 +16,10 @@
 
 package com.example.android.persistence.migrations;
 
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
 /**
  * Access point for accessing user data.
  */
@@ -28,6 +32,24 @@ public interface UserDataSource {
      */
     User getUser();
 
+    /**
+     * Gets the users with the given IDs in as few queries as possible.
+     *
+     * @param ids the IDs of the users, of the type {@link User#getId()} returns.
+     * @return the users that were found, in no particular order.
+     */
+    List<User> getUsers(List<?> ids);
+
+    /**
+     * Gets a page of users ordered by ID. Pass the ID of the last user of a page to get the next
+     * one.
+     *
+     * @param afterId  the ID the page starts after, or {@code null} for the first page.
+     * @param pageSize the largest number of users to return.
+     * @return the users, fewer than {@code pageSize} only on the last page.
+     */
+    List<User> getUsersAfter(@Nullable Object afterId, int pageSize);
+
     /**
      * Inserts the user in the data source, or, if this is an existing user, it updates it.
      *
@@ -35,6 +57,13 @@ public interface UserDataSource {
      */
     void insertOrUpdateUser(User user);
 
+    /**
+     * Inserts or updates the users, all in one transaction.
+     *
+     * @param users the users to be inserted or updated.
+     */
+    void insertOrUpdateUsers(List<User> users);
+
     /**
      * Deletes all users from the data source.
      */
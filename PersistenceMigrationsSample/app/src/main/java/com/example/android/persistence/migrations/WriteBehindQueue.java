@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.migrations;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back writes for a short window and writes them together, keeping only the latest value
+ * per key.
+ * <p>
+ * A burst of writes to the same key, like a user name saved as it is typed, turns into a single
+ * write of the last value. Writes are flushed on the disk executor once the window after the
+ * first pending write has passed, or right away once {@code maxPending} keys are pending. Every
+ * callback is still called, on the main thread, with the value that was written for its key.
+ * <p>
+ * If the writer throws, the batch is put back in front of the writes queued since, for the next
+ * flush to retry, and the exception is passed on. No callback of the batch is called until it
+ * has been written.
+ *
+ * @param <K> the type of the keys, which must implement {@code equals} and {@code hashCode}.
+ * @param <V> the type of the values.
+ */
+public class WriteBehindQueue<K, V> {
+
+    /** Writes values, all in one transaction. */
+    public interface Writer<V> {
+        @WorkerThread
+        void write(@NonNull List<V> values);
+    }
+
+    /** Called once the value for a key has been written. */
+    public interface Callback<V> {
+        void onWritten(V value);
+    }
+
+    // Only delays flushes: the writes themselves run on the disk executor
+    private static final ScheduledExecutorService sScheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "WriteBehindQueue");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Executor mDiskIO;
+
+    private final Executor mMainThread;
+
+    private final Writer<V> mWriter;
+
+    private final long mWindowMillis;
+
+    private final int mMaxPending;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushNow();
+        }
+    };
+
+    private final Runnable mScheduleFlush = new Runnable() {
+        @Override
+        public void run() {
+            mDiskIO.execute(mFlush);
+        }
+    };
+
+    // Guarded by this
+    private Map<K, Pending<V>> mPending = new LinkedHashMap<>();
+    private boolean mFlushScheduled;
+    private long mEnqueuedCount;
+    private long mCoalescedCount;
+    private long mWrittenCount;
+    private long mFlushCount;
+    private long mFailedFlushCount;
+    private long mTotalFlushLatencyNanos;
+    private long mMaxFlushLatencyNanos;
+
+    /**
+     * @param windowMillis how long a write may wait for more writes before it is flushed. With
+     *                     0, writes are flushed as soon as the disk executor gets to them, which
+     *                     still coalesces the writes made while it is busy.
+     * @param maxPending   how many keys may be pending before they are flushed without waiting
+     *                     for the window to pass.
+     */
+    public WriteBehindQueue(@NonNull Executor diskIO, @NonNull Executor mainThread,
+            @NonNull Writer<V> writer, long windowMillis, int maxPending) {
+        if (windowMillis < 0 || maxPending <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid window " + windowMillis + " or max pending " + maxPending);
+        }
+        mDiskIO = diskIO;
+        mMainThread = mainThread;
+        mWriter = writer;
+        mWindowMillis = windowMillis;
+        mMaxPending = maxPending;
+    }
+
+    /**
+     * Queues {@code value} to be written, replacing any value still pending for {@code key}.
+     *
+     * @param callback called on the main thread once the value for {@code key} has been written.
+     */
+    public void enqueue(@NonNull K key, @NonNull V value, @Nullable Callback<V> callback) {
+        boolean flushNow;
+        boolean scheduleFlush;
+        synchronized (this) {
+            mEnqueuedCount++;
+            Pending<V> pending = mPending.get(key);
+            if (pending == null) {
+                pending = new Pending<>(System.nanoTime());
+                mPending.put(key, pending);
+            } else {
+                mCoalescedCount++;
+            }
+            pending.mValue = value;
+            if (callback != null) {
+                pending.mCallbacks.add(callback);
+            }
+            flushNow = mPending.size() >= mMaxPending || mWindowMillis == 0;
+            scheduleFlush = !mFlushScheduled;
+            mFlushScheduled = true;
+        }
+        if (flushNow) {
+            // Even if a delayed flush is scheduled; it will find nothing left to write
+            mDiskIO.execute(mFlush);
+        } else if (scheduleFlush) {
+            sScheduler.schedule(mScheduleFlush, mWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Writes everything that is pending on the disk executor without waiting for the window. */
+    public void flush() {
+        mDiskIO.execute(mFlush);
+    }
+
+    /** How many times {@link #enqueue} has been called. */
+    public synchronized long getEnqueuedCount() {
+        return mEnqueuedCount;
+    }
+
+    /** How many values were replaced by a later one for the same key before being written. */
+    public synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /** How many values have been written. */
+    public synchronized long getWrittenCount() {
+        return mWrittenCount;
+    }
+
+    /** How many batches of values have been written. */
+    public synchronized long getFlushCount() {
+        return mFlushCount;
+    }
+
+    /** How many batches could not be written, and were put back to be retried. */
+    public synchronized long getFailedFlushCount() {
+        return mFailedFlushCount;
+    }
+
+    /**
+     * The average time from the first write of a batch being queued to the batch being written,
+     * in milliseconds.
+     */
+    public synchronized double getMeanFlushLatencyMillis() {
+        return mFlushCount == 0 ? 0 : mTotalFlushLatencyNanos / 1e6 / mFlushCount;
+    }
+
+    /** The longest time a write has waited to be written, in milliseconds. */
+    public synchronized double getMaxFlushLatencyMillis() {
+        return mMaxFlushLatencyNanos / 1e6;
+    }
+
+    @WorkerThread
+    private void flushNow() {
+        final Map<K, Pending<V>> batch;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = mPending;
+            mPending = new LinkedHashMap<>();
+        }
+
+        List<V> values = new ArrayList<>(batch.size());
+        long oldest = Long.MAX_VALUE;
+        for (Pending<V> pending : batch.values()) {
+            values.add(pending.mValue);
+            oldest = Math.min(oldest, pending.mEnqueuedNanos);
+        }
+        boolean written = false;
+        try {
+            mWriter.write(values);
+            written = true;
+        } finally {
+            if (!written) {
+                restore(batch);
+            }
+        }
+        long latency = System.nanoTime() - oldest;
+
+        synchronized (this) {
+            mWrittenCount += values.size();
+            mFlushCount++;
+            mTotalFlushLatencyNanos += latency;
+            mMaxFlushLatencyNanos = Math.max(mMaxFlushLatencyNanos, latency);
+        }
+
+        // notify on the main thread
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Pending<V> pending : batch.values()) {
+                    for (Callback<V> callback : pending.mCallbacks) {
+                        callback.onWritten(pending.mValue);
+                    }
+                }
+            }
+        });
+    }
+
+    /** Puts a batch that couldn't be written back in front of the values queued since. */
+    private synchronized void restore(Map<K, Pending<V>> batch) {
+        mFailedFlushCount++;
+        Map<K, Pending<V>> pending = new LinkedHashMap<>(batch);
+        for (Map.Entry<K, Pending<V>> entry : mPending.entrySet()) {
+            Pending<V> older = pending.get(entry.getKey());
+            if (older == null) {
+                pending.put(entry.getKey(), entry.getValue());
+            } else {
+                // The newer value replaces the one that wasn't written, and gets its callbacks
+                older.mValue = entry.getValue().mValue;
+                older.mCallbacks.addAll(entry.getValue().mCallbacks);
+                mCoalescedCount++;
+            }
+        }
+        mPending = pending;
+    }
+
+    private static class Pending<V> {
+
+        final long mEnqueuedNanos;
+
+        final List<Callback<V>> mCallbacks = new ArrayList<>(1);
+
+        V mValue;
+
+        Pending(long enqueuedNanos) {
+            mEnqueuedNanos = enqueuedNanos;
+        }
+    }
+}
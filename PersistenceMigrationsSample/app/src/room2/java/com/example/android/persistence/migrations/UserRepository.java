@@ -16,23 +16,54 @@
 
 package com.example.android.persistence.migrations;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The repository is responsible of handling user data operations.
  */
 public class UserRepository {
 
+    // How long a change of the user waits for more changes before it is written
+    private static final long WRITE_WINDOW_MILLIS = 300;
+
+    // How many users may have changes waiting before they are written without waiting
+    private static final int MAX_PENDING_WRITES = 32;
+
     private AppExecutors mAppExecutors;
 
     private UserDataSource mUserDataSource;
 
-    private User mCachedUser;
+    private final WriteBehindQueue<Integer, User> mWrites;
+
+    // How many users are kept in memory
+    private static final int USER_CACHE_SIZE = 500;
+
+    private final BoundedLruCache<Integer, User> mUserCache =
+            new BoundedLruCache<>(USER_CACHE_SIZE);
+
+    // The user that getUser() loaded or updateUserName() last changed. Volatile, and the cache
+    // thread-safe, so that the repository can be called from any thread.
+    private volatile User mCachedUser;
 
     public UserRepository(AppExecutors appExecutors, UserDataSource userDataSource) {
+        this(appExecutors, userDataSource, WRITE_WINDOW_MILLIS);
+    }
+
+    @VisibleForTesting
+    UserRepository(AppExecutors appExecutors, UserDataSource userDataSource,
+            long writeWindowMillis) {
         mAppExecutors = appExecutors;
         mUserDataSource = userDataSource;
+        mWrites = new WriteBehindQueue<>(appExecutors.diskIO(), appExecutors.mainThread(),
+                users -> mUserDataSource.insertOrUpdateUsers(users),
+                writeWindowMillis, MAX_PENDING_WRITES);
     }
 
     /**
@@ -44,6 +75,9 @@ public class UserRepository {
     void getUser(final LoadUserCallback callback) {
         final WeakReference<LoadUserCallback> loadUserCallback = new WeakReference<>(callback);
 
+        // Write the pending changes first, so that the user read includes them. The disk
+        // executor runs tasks in order.
+        mWrites.flush();
         // request the user on the I/O thread
         mAppExecutors.diskIO().execute(() -> {
             final User user = mUserDataSource.getUser();
@@ -57,12 +91,80 @@ public class UserRepository {
                     userCallback.onDataNotAvailable();
                 } else {
                     mCachedUser = user;
+                    mUserCache.put(user.getId(), user);
                     userCallback.onUserLoaded(mCachedUser);
                 }
             });
         });
     }
 
+    /**
+     * Get users by ID, from the cache when possible and otherwise with one query for all the
+     * others, and notify via the callback once they have been retrieved.
+     *
+     * @param ids      the IDs of the users.
+     * @param callback callback that gets called with the users that were found.
+     */
+    void getUsers(final List<Integer> ids, LoadUsersCallback callback) {
+        final WeakReference<LoadUsersCallback> loadUsersCallback = new WeakReference<>(callback);
+
+        final Map<Integer, User> found = new HashMap<>();
+        final List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            User user = mUserCache.get(id);
+            if (user != null) {
+                found.put(id, user);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            deliverUsers(ids, found, loadUsersCallback);
+            return;
+        }
+
+        // request the missing users on the I/O thread, after the pending changes are written
+        mWrites.flush();
+        mAppExecutors.diskIO().execute(() -> {
+            for (User user : mUserDataSource.getUsers(missing)) {
+                mUserCache.put(user.getId(), user);
+                found.put(user.getId(), user);
+            }
+            deliverUsers(ids, found, loadUsersCallback);
+        });
+    }
+
+    /**
+     * Insert or update several users. The cache is updated right away; the users are written
+     * together with the other pending changes.
+     *
+     * @param users the users to be inserted or updated.
+     */
+    void updateUsers(List<User> users) {
+        for (User user : users) {
+            mUserCache.put(user.getId(), user);
+            mWrites.enqueue(user.getId(), user, null);
+        }
+    }
+
+    private void deliverUsers(List<Integer> ids, Map<Integer, User> found,
+            final WeakReference<LoadUsersCallback> loadUsersCallback) {
+        final List<User> users = new ArrayList<>(found.size());
+        for (Integer id : ids) {
+            User user = found.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        // notify on the main thread
+        mAppExecutors.mainThread().execute(() -> {
+            LoadUsersCallback usersCallback = loadUsersCallback.get();
+            if (usersCallback != null) {
+                usersCallback.onUsersLoaded(users);
+            }
+        });
+    }
+
     /**
      * Insert an new user or update the name of the user.
      *
@@ -77,17 +179,30 @@ public class UserRepository {
                 ? new User(userName)
                 : new User(mCachedUser.getId(), userName, date);
 
-        // update the user on the I/O thread
-        mAppExecutors.diskIO().execute(() -> {
-            mUserDataSource.insertOrUpdateUser(user);
-            mCachedUser = user;
-            // notify on the main thread
-            mAppExecutors.mainThread().execute(() -> {
-                UpdateUserCallback userCallback = updateUserCallback.get();
-                if (userCallback != null) {
-                    userCallback.onUserUpdated(user);
-                }
-            });
+        // Changes made before this one is written keep its ID, so they replace it
+        mCachedUser = user;
+        mUserCache.put(user.getId(), user);
+
+        // update the user on the I/O thread, together with the changes that follow shortly.
+        // The callback gets the user that was written, which may be a later change.
+        mWrites.enqueue(user.getId(), user, written -> {
+            UpdateUserCallback userCallback = updateUserCallback.get();
+            if (userCallback != null) {
+                userCallback.onUserUpdated(written);
+            }
         });
     }
+
+    /**
+     * Holds back changes of the user to write them together. Its counts show how many changes
+     * were replaced before being written, and how long they waited.
+     */
+    WriteBehindQueue<?, User> getWriteQueue() {
+        return mWrites;
+    }
+
+    /** The users kept in memory, and how often they were found there. */
+    BoundedLruCache<?, User> getUserCache() {
+        return mUserCache;
+    }
 }
@@ -23,7 +23,11 @@ import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
 import androidx.room.migration.Migration;
 import android.content.Context;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.example.android.persistence.migrations.tracing.QueryTracer;
 
 /**
  * The Room database that contains the Users table
@@ -34,6 +38,9 @@ public abstract class UsersDatabase extends RoomDatabase {
 
     private static UsersDatabase INSTANCE;
 
+    @Nullable
+    private QueryTracer mQueryTracer;
+
     public abstract UserDao userDao();
 
     private static final Object sLock = new Object();
@@ -75,13 +82,40 @@ public abstract class UsersDatabase extends RoomDatabase {
     public static UsersDatabase getInstance(Context context) {
         synchronized (sLock) {
             if (INSTANCE == null) {
-                INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
-                        UsersDatabase.class, "Sample.db")
-                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
-                        .build();
+                Builder<UsersDatabase> builder = Room.databaseBuilder(
+                        context.getApplicationContext(), UsersDatabase.class, "Sample.db")
+                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3);
+                QueryTracer tracer = QueryTracer.installIfDebuggable(context, builder);
+                INSTANCE = builder.build();
+                INSTANCE.mQueryTracer = tracer;
             }
             return INSTANCE;
         }
     }
 
+    /**
+     * Deletes all users.
+     */
+    @WorkerThread
+    void deleteAllUsers() {
+        userDao().deleteAllUsers();
+    }
+
+    /**
+     * Every migration to this version is done by the time the database opens, so there is
+     * nothing left to do.
+     */
+    @WorkerThread
+    void finishMigration() {
+    }
+
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, {@code null} otherwise.
+     */
+    @Nullable
+    public QueryTracer getQueryTracer() {
+        return mQueryTracer;
+    }
+
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.migrations;
+
+import android.database.Cursor;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.List;
+
+/**
+ * Moves the users into the rebuilt users table in the background after the database has
+ * opened, so that upgrading a large database doesn't hold up its first open.
+ * <p>
+ * The migrations to version 4 only swap tables, which is as quick for a million users as for one:
+ * the old table is renamed to {@code users_legacy} and an empty {@code users} table with the
+ * version 4 schema takes its place. Once Room has opened the database, a background thread moves
+ * the users over in batches of the smallest remaining row IDs, filling in {@code last_update} as
+ * it goes. Each batch is one short transaction, and the thread rests for several times as long
+ * as the batch took before the next one, so foreground queries rarely wait for it. When
+ * {@code users_legacy} is empty it is dropped, together with the bookkeeping in
+ * {@code users_backfill}. If the process is killed, the next open carries on.
+ * <p>
+ * Until then a user may still be in {@code users_legacy}, so readers that don't find a user call
+ * {@link #moveUsers(List)} or {@link #moveNextBatch()} to move it right away and read again.
+ * Readers that page through all the users {@link #finish finish} moving them first.
+ * Users written since the migration are newer than their old rows, which never replace them.
+ * Deleting all users {@link #discard discards} the ones not moved yet in the same transaction, so
+ * that they don't come back.
+ */
+final class UsersBackfill extends RoomDatabase.Callback {
+
+    private static final String TAG = "UsersBackfill";
+
+    /** How many users are moved per transaction. */
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    // After each batch the thread waits this many times as long as the batch took, so that it
+    // holds the database for at most a fifth of the time, and never less than MIN_PAUSE_MILLIS
+    private static final int PAUSE_FACTOR = 4;
+
+    private static final long MIN_PAUSE_MILLIS = 10;
+
+    // Room allows 999 bound arguments per statement
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    @VisibleForTesting
+    static final String LEGACY_TABLE = "users_legacy";
+
+    @VisibleForTesting
+    static final String BACKFILL_TABLE = "users_backfill";
+
+    private static final String CREATE_USERS_TABLE = "CREATE TABLE users ("
+            + "userid TEXT NOT NULL, username TEXT, last_update INTEGER, PRIMARY KEY(userid))";
+
+    // A single row: the version the migration started from and how many users have been moved
+    private static final String CREATE_BACKFILL_TABLE = "CREATE TABLE IF NOT EXISTS "
+            + BACKFILL_TABLE + " (id INTEGER PRIMARY KEY CHECK (id = 0),"
+            + " from_version INTEGER NOT NULL, moved INTEGER NOT NULL)";
+
+    private final int mBatchSize;
+
+    private volatile SupportSQLiteDatabase mDatabase;
+
+    private volatile boolean mPending;
+
+    UsersBackfill(int batchSize) {
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Starts the migration inside a Room migration: replaces {@code users} with an empty table
+     * with the version 4 schema, and keeps the old one as {@code users_legacy} for the backfill.
+     *
+     * @param fromVersion the version the migration starts from, which decides what
+     *                    {@code last_update} is set to.
+     */
+    static void start(SupportSQLiteDatabase database, int fromVersion) {
+        database.execSQL("ALTER TABLE users RENAME TO " + LEGACY_TABLE);
+        database.execSQL(CREATE_USERS_TABLE);
+        database.execSQL(CREATE_BACKFILL_TABLE);
+        database.execSQL("INSERT INTO " + BACKFILL_TABLE + " (id, from_version, moved) "
+                + "VALUES (0, ?, 0)", new Object[]{fromVersion});
+    }
+
+    @Override
+    public void onOpen(@NonNull SupportSQLiteDatabase db) {
+        if (mPending || !tableExists(db, LEGACY_TABLE)) {
+            return;
+        }
+        mDatabase = db;
+        mPending = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                moveAll();
+            }
+        }, "UsersBackfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Whether some users may not have been moved into the users table yet. */
+    boolean isPending() {
+        return mPending;
+    }
+
+    /**
+     * Moves the next batch of users right away.
+     *
+     * @return whether there were any users left to move.
+     */
+    @WorkerThread
+    synchronized boolean moveNextBatch() {
+        if (!mPending) {
+            return false;
+        }
+        if (moveBatch(mDatabase, mBatchSize) == 0) {
+            mPending = false;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the users with these IDs right away, if they haven't been moved yet.
+     *
+     * @return the number of users moved.
+     */
+    @WorkerThread
+    synchronized int moveUsers(List<String> ids) {
+        return mPending ? moveUsers(mDatabase, ids) : 0;
+    }
+
+    @WorkerThread
+    private void moveAll() {
+        long start = System.nanoTime();
+        int batches = 0;
+        try {
+            while (true) {
+                long batchStart = System.nanoTime();
+                if (!moveNextBatch()) {
+                    break;
+                }
+                batches++;
+                long busyMillis = (System.nanoTime() - batchStart) / 1_000_000;
+                SystemClock.sleep(Math.max(MIN_PAUSE_MILLIS, busyMillis * PAUSE_FACTOR));
+            }
+            Log.i(TAG, "Moved the users in " + batches + " batches in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IllegalStateException e) {
+            // The database was closed; the next open carries on
+            Log.w(TAG, "Stopped after " + batches + " batches", e);
+        }
+    }
+
+    /**
+     * Moves the users with the {@code batchSize} smallest row IDs left in {@code users_legacy}
+     * in one transaction, or drops it once it is empty.
+     *
+     * @return the number of users moved, 0 once all of them have been.
+     */
+    @VisibleForTesting
+    static int moveBatch(SupportSQLiteDatabase db, int batchSize) {
+        db.beginTransactionNonExclusive();
+        try {
+            if (!tableExists(db, LEGACY_TABLE)) {
+                db.setTransactionSuccessful();
+                return 0;
+            }
+            // Moved users are deleted, so the batch always starts at the smallest row ID left
+            Cursor bound = db.query("SELECT MAX(rowid) FROM "
+                    + "(SELECT rowid FROM " + LEGACY_TABLE + " ORDER BY rowid LIMIT "
+                    + batchSize + ")");
+            int count;
+            try {
+                if (!bound.moveToFirst() || bound.isNull(0)) {
+                    db.execSQL("DROP TABLE " + LEGACY_TABLE);
+                    db.execSQL("DROP TABLE IF EXISTS " + BACKFILL_TABLE);
+                    count = 0;
+                } else {
+                    count = move(db, "rowid <= ?", new Object[]{bound.getLong(0)});
+                }
+            } finally {
+                bound.close();
+            }
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Moves the users with these IDs that are still in {@code users_legacy} in one transaction.
+     *
+     * @return the number of users moved.
+     */
+    @VisibleForTesting
+    static int moveUsers(SupportSQLiteDatabase db, List<String> ids) {
+        int count = 0;
+        db.beginTransactionNonExclusive();
+        try {
+            if (tableExists(db, LEGACY_TABLE)) {
+                for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+                    List<String> chunk =
+                            ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY));
+                    StringBuilder where = new StringBuilder("userid IN (");
+                    for (int i = 0; i < chunk.size(); i++) {
+                        where.append(i == 0 ? "?" : ",?");
+                    }
+                    where.append(')');
+                    // The old IDs are ints; comparing them converts the Strings
+                    count += move(db, where.toString(), chunk.toArray());
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return count;
+    }
+
+    /**
+     * Moves all the users that are left right away, in batches. Returns at once when there are
+     * none, without starting a transaction.
+     */
+    @WorkerThread
+    static void finish(SupportSQLiteDatabase db) {
+        if (!tableExists(db, LEGACY_TABLE)) {
+            return;
+        }
+        while (moveBatch(db, DEFAULT_BATCH_SIZE) > 0) {
+            // Until the old table has been dropped
+        }
+    }
+
+    /**
+     * Drops the users that haven't been moved yet, and with them the bookkeeping. Must run in the
+     * transaction that deletes all users from {@code users}.
+     */
+    static void discard(SupportSQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + LEGACY_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + BACKFILL_TABLE);
+    }
+
+    private static int move(SupportSQLiteDatabase db, String where, Object[] args) {
+        int fromVersion;
+        Cursor backfill = db.query("SELECT from_version FROM " + BACKFILL_TABLE);
+        try {
+            backfill.moveToFirst();
+            fromVersion = backfill.getInt(0);
+        } finally {
+            backfill.close();
+        }
+
+        // Users written since the migration are kept, rather than replaced by their old rows
+        db.execSQL("INSERT OR IGNORE INTO users (userid, username, last_update) "
+                + "SELECT userid, username, " + lastUpdate(fromVersion) + " "
+                + "FROM " + LEGACY_TABLE + " WHERE " + where, args);
+        int count = db.delete(LEGACY_TABLE, where, args);
+        db.execSQL("UPDATE " + BACKFILL_TABLE + " SET moved = moved + ?", new Object[]{count});
+        return count;
+    }
+
+    /** What {@code last_update} is set to for users coming from {@code fromVersion}. */
+    private static String lastUpdate(int fromVersion) {
+        // Version 1 users have always been migrated with 0. Version 2 users had the column added
+        // empty by MIGRATION_2_3 on their way to version 3.
+        return fromVersion == 1 ? "0" : "last_update";
+    }
+
+    private static boolean tableExists(SupportSQLiteDatabase db, String table) {
+        Cursor cursor = db.query("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new Object[]{table});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -23,7 +23,11 @@ import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
 import androidx.room.migration.Migration;
 import android.content.Context;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.example.android.persistence.migrations.tracing.QueryTracer;
 
 /**
  * The Room database that contains the Users table
@@ -34,10 +38,16 @@ public abstract class UsersDatabase extends RoomDatabase {
 
     private static UsersDatabase INSTANCE;
 
+    @Nullable
+    private QueryTracer mQueryTracer;
+
     public abstract UserDao userDao();
 
     private static final Object sLock = new Object();
 
+    @Nullable
+    private UsersBackfill mBackfill;
+
     /**
      * Migrate from:
      * version 1 - using the SQLiteDatabase API
@@ -83,22 +93,11 @@ public abstract class UsersDatabase extends RoomDatabase {
         @Override
         public void migrate(SupportSQLiteDatabase database) {
             // SQLite supports a limited operations for ALTER.
-            // Changing the type of a column is not directly supported, so this is what we need
-            // to do:
-            // Create the new table
-            database.execSQL(
-                    "CREATE TABLE users_new (userid TEXT NOT NULL,"
-                            + "username TEXT,"
-                            + "last_update INTEGER,"
-                            + "PRIMARY KEY(userid))");
-            // Copy the data
-            database.execSQL("INSERT INTO users_new (userid, username, last_update) "
-                    + "SELECT userid, username, last_update "
-                    + "FROM users");
-            // Remove the old table
-            database.execSQL("DROP TABLE users");
-            // Change the table name to the correct one
-            database.execSQL("ALTER TABLE users_new RENAME TO users");
+            // Changing the type of a column is not directly supported, so the table is rebuilt.
+            // Copying every user here would hold up the first open of a large database, so the
+            // migration only swaps in an empty table and the users are moved to it after the
+            // database has opened, see UsersBackfill.
+            UsersBackfill.start(database, 3);
         }
     };
 
@@ -113,31 +112,71 @@ public abstract class UsersDatabase extends RoomDatabase {
     static final Migration MIGRATION_1_4 = new Migration(1, 4) {
         @Override
         public void migrate(SupportSQLiteDatabase database) {
-            // Create the new table
-            database.execSQL(
-                    "CREATE TABLE users_new (userid TEXT, username TEXT, last_update INTEGER,"
-                            + " PRIMARY KEY(userid))");
-            // Copy the data
-            database.execSQL("INSERT INTO users_new (userid, username, last_update) "
-                    + "SELECT userid, username, 0 "
-                    + "FROM users");
-            // Remove the old table
-            database.execSQL("DROP TABLE users");
-            // Change the table name to the correct one
-            database.execSQL("ALTER TABLE users_new RENAME TO users");
+            // As MIGRATION_3_4; every last_update is set to 0 as the users are moved
+            UsersBackfill.start(database, 1);
         }
     };
 
     public static UsersDatabase getInstance(Context context) {
         synchronized (sLock) {
             if (INSTANCE == null) {
-                INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
-                        UsersDatabase.class, "Sample.db")
+                // Moves the users of an old database in the background once it has opened
+                UsersBackfill backfill = new UsersBackfill(UsersBackfill.DEFAULT_BATCH_SIZE);
+                Builder<UsersDatabase> builder = Room.databaseBuilder(
+                        context.getApplicationContext(), UsersDatabase.class, "Sample.db")
                         .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_1_4)
-                        .build();
+                        .addCallback(backfill);
+                QueryTracer tracer = QueryTracer.installIfDebuggable(context, builder);
+                INSTANCE = builder.build();
+                INSTANCE.mBackfill = backfill;
+                INSTANCE.mQueryTracer = tracer;
             }
             return INSTANCE;
         }
     }
 
+    /**
+     * Moves the users that the migration to version 4 left in the old table, {@code null} if the
+     * database hasn't been created yet.
+     */
+    @Nullable
+    static UsersBackfill getBackfill() {
+        synchronized (sLock) {
+            return INSTANCE == null ? null : INSTANCE.mBackfill;
+        }
+    }
+
+    /**
+     * Deletes all users in one transaction, including those the migration to version 4 hasn't
+     * moved to the users table yet.
+     */
+    @WorkerThread
+    void deleteAllUsers() {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                userDao().deleteAllUsers();
+                UsersBackfill.discard(getOpenHelper().getWritableDatabase());
+            }
+        });
+    }
+
+    /**
+     * Moves the users that the migration to version 4 hasn't moved to the users table yet, so
+     * that all of them can be read.
+     */
+    @WorkerThread
+    void finishMigration() {
+        UsersBackfill.finish(getOpenHelper().getWritableDatabase());
+    }
+
+    /**
+     * Latency of every statement run against the database, and the plans of the slow ones. Only
+     * recorded in debuggable builds, {@code null} otherwise.
+     */
+    @Nullable
+    public QueryTracer getQueryTracer() {
+        return mQueryTracer;
+    }
+
 }
@@ -18,20 +18,31 @@ package com.example.android.persistence.migrations;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Concrete implementation of the {@link LocalUserDataSource} that works with Room.
  */
 public class LocalUserDataSource implements UserDataSource {
 
+    // Room allows 999 bound arguments per statement
+    private static final int MAX_IDS_PER_QUERY = 500;
+
     private static volatile LocalUserDataSource INSTANCE;
 
+    private final UsersDatabase mDatabase;
+
     private final UserDao mUserDao;
 
     @VisibleForTesting
-    LocalUserDataSource(UserDao userDao) {
-        mUserDao = userDao;
+    LocalUserDataSource(UsersDatabase database) {
+        mDatabase = database;
+        mUserDao = database.userDao();
     }
 
     public static LocalUserDataSource getInstance(@NonNull Context context) {
@@ -39,7 +50,7 @@ public class LocalUserDataSource implements UserDataSource {
             synchronized (LocalUserDataSource.class) {
                 if (INSTANCE == null) {
                     UsersDatabase database = UsersDatabase.getInstance(context);
-                    INSTANCE = new LocalUserDataSource(database.userDao());
+                    INSTANCE = new LocalUserDataSource(database);
                 }
             }
         }
@@ -51,13 +62,49 @@ public class LocalUserDataSource implements UserDataSource {
         return mUserDao.getUser();
     }
 
+    @Override
+    public List<User> getUsers(List<?> ids) {
+        List<User> users = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+            List<?> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY));
+            StringBuilder sql = new StringBuilder("SELECT * FROM users WHERE userid IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            sql.append(')');
+            // The IDs are bound as they are, ints or Strings depending on the schema
+            users.addAll(mUserDao.getUsers(new SimpleSQLiteQuery(sql.toString(),
+                    chunk.toArray())));
+        }
+        return users;
+    }
+
+    @Override
+    public List<User> getUsersAfter(@Nullable Object afterId, int pageSize) {
+        // Users that are still being migrated would be skipped
+        mDatabase.finishMigration();
+        // userid is the primary key, so each page is a range scan of its index
+        if (afterId == null) {
+            return mUserDao.getUsers(new SimpleSQLiteQuery(
+                    "SELECT * FROM users ORDER BY userid LIMIT ?", new Object[]{pageSize}));
+        }
+        return mUserDao.getUsers(new SimpleSQLiteQuery(
+                "SELECT * FROM users WHERE userid > ? ORDER BY userid LIMIT ?",
+                new Object[]{afterId, pageSize}));
+    }
+
     @Override
     public void insertOrUpdateUser(User user) {
         mUserDao.insertUser(user);
     }
 
+    @Override
+    public void insertOrUpdateUsers(List<User> users) {
+        mUserDao.insertUsers(users);
+    }
+
     @Override
     public void deleteAllUsers() {
-        mUserDao.deleteAllUsers();
+        mDatabase.deleteAllUsers();
     }
 }
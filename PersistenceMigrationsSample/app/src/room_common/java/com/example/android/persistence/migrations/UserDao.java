@@ -20,6 +20,10 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.List;
 
 /**
  * Data Access Object for the users table.
@@ -36,6 +40,17 @@ public interface UserDao {
     @Query("SELECT * FROM Users LIMIT 1")
     User getUser();
 
+    /**
+     * Get the users a query selects from the table, such as those with some IDs or a page of
+     * them. Built by {@link LocalUserDataSource}, since the type of the IDs depends on the
+     * version of the schema.
+     *
+     * @param query a query of whole rows of the users table.
+     * @return the users.
+     */
+    @RawQuery
+    List<User> getUsers(SupportSQLiteQuery query);
+
     /**
      * Insert a user in the database. If the user already exists, replace it.
      *
@@ -44,6 +59,14 @@ public interface UserDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertUser(User user);
 
+    /**
+     * Insert users in the database in one transaction, replacing the ones that already exist.
+     *
+     * @param users the users to be inserted.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertUsers(List<User> users);
+
     /**
      * Delete all users.
      */
@@ -19,27 +19,61 @@ package com.example.android.persistence.migrations;
 import static com.example.android.persistence.migrations.UserPersistenceContract.UserEntry.COLUMN_NAME_ENTRY_ID;
 import static com.example.android.persistence.migrations.UserPersistenceContract.UserEntry.COLUMN_NAME_USERNAME;
 import static com.example.android.persistence.migrations.UserPersistenceContract.UserEntry.TABLE_NAME;
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Concrete implementation of the UserDataSource, working directly with SQLite APIs.
+ * <p>
+ * The database is opened on first use and kept open for the lifetime of the process, together
+ * with the statements that write to it, so each call only binds and runs an already compiled
+ * statement. SQLite closes the connection when the process dies.
  */
 public class LocalUserDataSource implements UserDataSource {
 
+    private static final String[] PROJECTION = {
+            COLUMN_NAME_ENTRY_ID,
+            COLUMN_NAME_USERNAME
+    };
+
+    // Indices of the columns in PROJECTION and SQL_SELECT
+    private static final int INDEX_ENTRY_ID = 0;
+    private static final int INDEX_USERNAME = 1;
+
+    private static final String SQL_UPSERT = "INSERT OR REPLACE INTO " + TABLE_NAME + " ("
+            + COLUMN_NAME_ENTRY_ID + ", " + COLUMN_NAME_USERNAME + ") VALUES (?, ?)";
+
+    private static final String SQL_SELECT = "SELECT " + COLUMN_NAME_ENTRY_ID + ", "
+            + COLUMN_NAME_USERNAME + " FROM " + TABLE_NAME;
+
+    // SQLite allows 999 bound arguments per statement
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static final String SQL_DELETE_ALL = "DELETE FROM " + TABLE_NAME;
+
     private static LocalUserDataSource INSTANCE;
 
     private UsersDbHelper mDbHelper;
 
+    // Opened lazily, off the main thread. Only touched while holding the lock, since a compiled
+    // statement keeps its bindings between calls.
+    private SQLiteDatabase mDatabase;
+    private SQLiteStatement mUpsertStatement;
+    private SQLiteStatement mDeleteAllStatement;
+
     // Prevent direct instantiation.
     private LocalUserDataSource(@NonNull Context context) {
         mDbHelper = new UsersDbHelper(context);
     }
 
-    public static LocalUserDataSource getInstance(@NonNull Context context) {
+    public static synchronized LocalUserDataSource getInstance(@NonNull Context context) {
         if (INSTANCE == null) {
             INSTANCE = new LocalUserDataSource(context);
         }
@@ -47,56 +81,120 @@ public class LocalUserDataSource implements UserDataSource {
     }
 
     @Override
-    public User getUser() {
+    public synchronized User getUser() {
         User user = null;
 
-        SQLiteDatabase db = mDbHelper.getReadableDatabase();
-
-        String[] projection = {
-                COLUMN_NAME_ENTRY_ID,
-                COLUMN_NAME_USERNAME
-        };
-
         // Get the user from the table. Since, for simplicity we only have one user in the database,
         // this query gets all users from the table, but limits the result to just the 1st user
-        Cursor c = db.query(TABLE_NAME, projection, null, null,
+        Cursor c = getDatabase().query(TABLE_NAME, PROJECTION, null, null,
                 null, null, null, "1");
 
-        if (c != null && c.getCount() > 0) {
-            if (c.moveToNext()) {
-                int itemId = c.getInt(c.getColumnIndexOrThrow(COLUMN_NAME_ENTRY_ID));
-                String title = c.getString(c.getColumnIndexOrThrow(COLUMN_NAME_USERNAME));
-                user = new User(itemId, title);
-            }
-        }
         if (c != null) {
-            c.close();
+            try {
+                if (c.moveToFirst()) {
+                    user = new User(c.getInt(INDEX_ENTRY_ID), c.getString(INDEX_USERNAME));
+                }
+            } finally {
+                c.close();
+            }
         }
-        db.close();
 
         return user;
     }
 
     @Override
-    public void insertOrUpdateUser(User user) {
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+    public synchronized List<User> getUsers(List<?> ids) {
+        SQLiteDatabase db = getDatabase();
+        List<User> users = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+            List<?> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY));
+            String[] args = new String[chunk.size()];
+            StringBuilder sql = new StringBuilder(SQL_SELECT)
+                    .append(" WHERE ").append(COLUMN_NAME_ENTRY_ID).append(" IN (");
+            for (int i = 0; i < args.length; i++) {
+                sql.append(i == 0 ? "?" : ",?");
+                args[i] = String.valueOf(chunk.get(i));
+            }
+            sql.append(')');
+            readUsers(db.rawQuery(sql.toString(), args), users);
+        }
+        return users;
+    }
 
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_NAME_ENTRY_ID, user.getId());
-        values.put(COLUMN_NAME_USERNAME, user.getUserName());
+    @Override
+    public synchronized List<User> getUsersAfter(@Nullable Object afterId, int pageSize) {
+        SQLiteDatabase db = getDatabase();
+        List<User> users = new ArrayList<>(pageSize);
+        // The ID is the rowid, so each page is a range scan of the table
+        if (afterId == null) {
+            readUsers(db.rawQuery(SQL_SELECT + " ORDER BY " + COLUMN_NAME_ENTRY_ID
+                    + " LIMIT " + pageSize, null), users);
+        } else {
+            readUsers(db.rawQuery(SQL_SELECT + " WHERE " + COLUMN_NAME_ENTRY_ID + " > ?"
+                            + " ORDER BY " + COLUMN_NAME_ENTRY_ID + " LIMIT " + pageSize,
+                    new String[]{String.valueOf(afterId)}), users);
+        }
+        return users;
+    }
 
-        db.insertWithOnConflict(TABLE_NAME, null, values,
-                SQLiteDatabase.CONFLICT_REPLACE);
+    @Override
+    public synchronized void insertOrUpdateUser(User user) {
+        getDatabase();
 
-        db.close();
+        upsert(user);
+        // Don't keep the name alive until the next call
+        mUpsertStatement.clearBindings();
     }
 
     @Override
-    public void deleteAllUsers() {
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+    public synchronized void insertOrUpdateUsers(List<User> users) {
+        SQLiteDatabase db = getDatabase();
+
+        db.beginTransaction();
+        try {
+            for (User user : users) {
+                upsert(user);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mUpsertStatement.clearBindings();
+        }
+    }
+
+    @Override
+    public synchronized void deleteAllUsers() {
+        getDatabase();
+
+        mDeleteAllStatement.executeUpdateDelete();
+    }
 
-        db.delete(TABLE_NAME, null, null);
+    private static void readUsers(Cursor c, List<User> users) {
+        try {
+            while (c.moveToNext()) {
+                users.add(new User(c.getInt(INDEX_ENTRY_ID), c.getString(INDEX_USERNAME)));
+            }
+        } finally {
+            c.close();
+        }
+    }
 
-        db.close();
+    private void upsert(User user) {
+        mUpsertStatement.bindLong(1, user.getId());
+        if (user.getUserName() != null) {
+            mUpsertStatement.bindString(2, user.getUserName());
+        } else {
+            mUpsertStatement.bindNull(2);
+        }
+        mUpsertStatement.executeInsert();
+    }
+
+    private SQLiteDatabase getDatabase() {
+        if (mDatabase == null) {
+            mDatabase = mDbHelper.getWritableDatabase();
+            mUpsertStatement = mDatabase.compileStatement(SQL_UPSERT);
+            mDeleteAllStatement = mDatabase.compileStatement(SQL_DELETE_ALL);
+        }
+        return mDatabase;
     }
 }
@@ -17,7 +17,10 @@
 package com.example.android.persistence.migrations;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.anyList;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -28,6 +31,11 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
  * Unit tests for the UserRepository.
  */
@@ -41,13 +49,14 @@ public class UserRepositoryTest {
     private static final User USER = new User("username");
 
     @Captor
-    private ArgumentCaptor<User> mUserArgumentCaptor;
+    private ArgumentCaptor<List<User>> mUsersArgumentCaptor;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        mUserRepository = new UserRepository(new SingleExecutors(), mUserDataSource);
+        // Without a window, changes are written as soon as the disk executor gets to them
+        mUserRepository = new UserRepository(new SingleExecutors(), mUserDataSource, 0);
     }
 
     @Test
@@ -91,11 +100,73 @@ public class UserRepositoryTest {
         mUserRepository.updateUserName("name", callback);
 
         // The user with the correct user name was saved
-        verify(mUserDataSource).insertOrUpdateUser(mUserArgumentCaptor.capture());
-        User user = mUserArgumentCaptor.getValue();
+        verify(mUserDataSource).insertOrUpdateUsers(mUsersArgumentCaptor.capture());
+        User user = mUsersArgumentCaptor.getValue().get(0);
         assertEquals("name", user.getUserName());
         // The callback is triggered
         verify(callback).onUserUpdated(user);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void updateUserNameBurstIsCoalesced() {
+        // Given a disk executor that is busy until its tasks are run
+        List<Runnable> diskTasks = new ArrayList<>();
+        Executor instant = Runnable::run;
+        mUserRepository = new UserRepository(new AppExecutors(diskTasks::add, instant, instant),
+                mUserDataSource, 0);
+        UpdateUserCallback callback = mock(UpdateUserCallback.class);
+
+        // When the username is updated several times before anything is written
+        mUserRepository.updateUserName("a", callback);
+        mUserRepository.updateUserName("ab", callback);
+        mUserRepository.updateUserName("abc", callback);
+        for (Runnable task : new ArrayList<>(diskTasks)) {
+            task.run();
+        }
+
+        // Only the last username is saved, once
+        verify(mUserDataSource, times(1)).insertOrUpdateUsers(mUsersArgumentCaptor.capture());
+        List<User> users = mUsersArgumentCaptor.getValue();
+        assertEquals(1, users.size());
+        assertEquals("abc", users.get(0).getUserName());
+        // and every update is still confirmed, with the saved user
+        verify(callback, times(3)).onUserUpdated(users.get(0));
+        WriteBehindQueue<?, User> writes = mUserRepository.getWriteQueue();
+        assertEquals(3, writes.getEnqueuedCount());
+        assertEquals(2, writes.getCoalescedCount());
+        assertEquals(1, writes.getFlushCount());
+    }
+
+    @Test
+    public void getUsersLoadsMissingUsersOnce() {
+        // Given a user in the data source
+        when(mUserDataSource.getUsers(anyList())).thenReturn(Collections.singletonList(USER));
+        LoadUsersCallback callback = mock(LoadUsersCallback.class);
+
+        // When requesting it twice
+        mUserRepository.getUsers(Collections.singletonList(USER.getId()), callback);
+        mUserRepository.getUsers(Collections.singletonList(USER.getId()), callback);
+
+        // It's only read from the data source the first time
+        verify(mUserDataSource, times(1)).getUsers(anyList());
+        verify(callback, times(2)).onUsersLoaded(Collections.singletonList(USER));
+        assertEquals(1, mUserRepository.getUserCache().getHitCount());
+        assertEquals(0.5, mUserRepository.getUserCache().getHitRate(), 0);
+    }
+
+    @Test
+    public void getUsersAfterUpdateIsServedFromCache() {
+        // Given a user that was just updated
+        List<User> users = Collections.singletonList(USER);
+        mUserRepository.updateUsers(users);
+        LoadUsersCallback callback = mock(LoadUsersCallback.class);
+
+        // When requesting it
+        mUserRepository.getUsers(Collections.singletonList(USER.getId()), callback);
+
+        // It comes from the cache, not the data source
+        verify(mUserDataSource, never()).getUsers(anyList());
+        verify(callback).onUsersLoaded(users);
+    }
+
+}
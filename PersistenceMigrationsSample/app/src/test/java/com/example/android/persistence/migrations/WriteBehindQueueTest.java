@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.persistence.migrations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unit tests for the WriteBehindQueue.
+ */
+public class WriteBehindQueueTest {
+
+    private static final Executor INSTANT = Runnable::run;
+
+    @Test
+    public void failedWriteIsRetriedByTheNextFlush() {
+        // Given a writer that fails the first time
+        AtomicBoolean failing = new AtomicBoolean(true);
+        List<List<String>> written = new ArrayList<>();
+        WriteBehindQueue<Integer, String> queue = new WriteBehindQueue<>(INSTANT, INSTANT,
+                values -> {
+                    if (failing.get()) {
+                        throw new IllegalStateException("disk full");
+                    }
+                    written.add(new ArrayList<>(values));
+                }, 0, 32);
+        List<String> notified = new ArrayList<>();
+
+        // When a value can't be written
+        try {
+            queue.enqueue(1, "a", notified::add);
+            fail("The write should have failed");
+        } catch (IllegalStateException expected) {
+            // The writer's exception is passed on
+        }
+
+        // It isn't reported as written
+        assertTrue(notified.isEmpty());
+        assertEquals(1, queue.getFailedFlushCount());
+        assertEquals(0, queue.getWrittenCount());
+        assertEquals(0, queue.getFlushCount());
+
+        // and the next flush writes it, with the value queued for another key since
+        failing.set(false);
+        queue.enqueue(2, "b", notified::add);
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b")), written);
+        assertEquals(Arrays.asList("a", "b"), notified);
+        assertEquals(2, queue.getWrittenCount());
+        assertEquals(1, queue.getFlushCount());
+    }
+}
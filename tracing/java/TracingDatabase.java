@@ -0,0 +1,430 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.tracing;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.util.Pair;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reports every statement run against a database to a {@link QueryTracer}, and explains the slow
+ * ones.
+ */
+class TracingDatabase implements SupportSQLiteDatabase {
+
+    private final SupportSQLiteDatabase mDelegate;
+
+    private final QueryTracer mTracer;
+
+    // Nesting depth and start time of the current thread's transaction
+    private final ThreadLocal<long[]> mTransaction = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    TracingDatabase(SupportSQLiteDatabase delegate, QueryTracer tracer) {
+        mDelegate = delegate;
+        mTracer = tracer;
+    }
+
+    boolean wraps(SupportSQLiteDatabase database) {
+        return mDelegate == database;
+    }
+
+    /**
+     * Records a statement that started at {@code start}, and explains it if it was slow.
+     * {@code bindings} are used for the plan when they are still available.
+     */
+    void onStatement(String sql, @Nullable SupportSQLiteQuery bindings, long start, long rows) {
+        long nanos = System.nanoTime() - start;
+        mTracer.onStatement(sql, nanos, rows);
+        if (mTracer.isSlow(nanos)) {
+            mTracer.onSlowStatement(sql, nanos, explain(sql, bindings));
+        }
+    }
+
+    private List<String> explain(String sql, @Nullable SupportSQLiteQuery bindings) {
+        List<String> plan = new ArrayList<>();
+        if (!hasQueryPlan(sql)) {
+            return plan;
+        }
+        try {
+            // Not traced itself
+            Cursor cursor = mDelegate.query(new ExplainQuery(sql, bindings));
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) {
+                    plan.add(cursor.getString(detail));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            plan.add("EXPLAIN QUERY PLAN failed: " + e.getMessage());
+        }
+        return plan;
+    }
+
+    private static boolean hasQueryPlan(String sql) {
+        String verb = sql.trim();
+        int end = 0;
+        while (end < verb.length() && Character.isLetter(verb.charAt(end))) {
+            end++;
+        }
+        switch (verb.substring(0, end).toUpperCase(Locale.US)) {
+            case "SELECT":
+            case "WITH":
+            case "INSERT":
+            case "REPLACE":
+            case "UPDATE":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public SupportSQLiteStatement compileStatement(String sql) {
+        return new TracingStatement(mDelegate.compileStatement(sql), this, sql);
+    }
+
+    @Override
+    public void beginTransaction() {
+        long start = onBeginTransaction();
+        mDelegate.beginTransaction();
+        onTransactionStarted(start);
+    }
+
+    @Override
+    public void beginTransactionNonExclusive() {
+        long start = onBeginTransaction();
+        mDelegate.beginTransactionNonExclusive();
+        onTransactionStarted(start);
+    }
+
+    @Override
+    public void beginTransactionWithListener(SQLiteTransactionListener transactionListener) {
+        long start = onBeginTransaction();
+        mDelegate.beginTransactionWithListener(transactionListener);
+        onTransactionStarted(start);
+    }
+
+    @Override
+    public void beginTransactionWithListenerNonExclusive(
+            SQLiteTransactionListener transactionListener) {
+        long start = onBeginTransaction();
+        mDelegate.beginTransactionWithListenerNonExclusive(transactionListener);
+        onTransactionStarted(start);
+    }
+
+    private long onBeginTransaction() {
+        // Waiting for the write lock counts towards the outermost transaction
+        return mTransaction.get()[0] == 0 ? System.nanoTime() : 0;
+    }
+
+    private void onTransactionStarted(long start) {
+        long[] transaction = mTransaction.get();
+        if (transaction[0]++ == 0) {
+            transaction[1] = start;
+        }
+    }
+
+    @Override
+    public void endTransaction() {
+        try {
+            mDelegate.endTransaction();
+        } finally {
+            long[] transaction = mTransaction.get();
+            if (transaction[0] > 0 && --transaction[0] == 0) {
+                mTracer.onTransaction(System.nanoTime() - transaction[1]);
+            }
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        mDelegate.setTransactionSuccessful();
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return mDelegate.inTransaction();
+    }
+
+    @Override
+    public boolean isDbLockedByCurrentThread() {
+        return mDelegate.isDbLockedByCurrentThread();
+    }
+
+    @Override
+    public boolean yieldIfContendedSafely() {
+        return mDelegate.yieldIfContendedSafely();
+    }
+
+    @Override
+    public boolean yieldIfContendedSafely(long sleepAfterYieldDelay) {
+        return mDelegate.yieldIfContendedSafely(sleepAfterYieldDelay);
+    }
+
+    @Override
+    public int getVersion() {
+        return mDelegate.getVersion();
+    }
+
+    @Override
+    public void setVersion(int version) {
+        mDelegate.setVersion(version);
+    }
+
+    @Override
+    public long getMaximumSize() {
+        return mDelegate.getMaximumSize();
+    }
+
+    @Override
+    public long setMaximumSize(long numBytes) {
+        return mDelegate.setMaximumSize(numBytes);
+    }
+
+    @Override
+    public long getPageSize() {
+        return mDelegate.getPageSize();
+    }
+
+    @Override
+    public void setPageSize(long numBytes) {
+        mDelegate.setPageSize(numBytes);
+    }
+
+    @Override
+    public Cursor query(String query) {
+        return query(new SimpleSQLiteQuery(query));
+    }
+
+    @Override
+    public Cursor query(String query, Object[] bindArgs) {
+        return query(new SimpleSQLiteQuery(query, bindArgs));
+    }
+
+    @Override
+    public Cursor query(SupportSQLiteQuery query) {
+        long start = System.nanoTime();
+        return new TracingCursor(mDelegate.query(query), query, start);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public Cursor query(SupportSQLiteQuery query, CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+        return new TracingCursor(mDelegate.query(query, cancellationSignal), query, start);
+    }
+
+    @Override
+    public long insert(String table, int conflictAlgorithm, ContentValues values)
+            throws SQLException {
+        long start = System.nanoTime();
+        long rowId = mDelegate.insert(table, conflictAlgorithm, values);
+        onStatement("INSERT INTO " + table, null, start, rowId == -1 ? 0 : 1);
+        return rowId;
+    }
+
+    @Override
+    public int delete(String table, String whereClause, Object[] whereArgs) {
+        long start = System.nanoTime();
+        int rows = mDelegate.delete(table, whereClause, whereArgs);
+        String sql = "DELETE FROM " + table
+                + (whereClause == null || whereClause.isEmpty() ? "" : " WHERE " + whereClause);
+        onStatement(sql, new SimpleSQLiteQuery(sql, whereArgs), start, rows);
+        return rows;
+    }
+
+    @Override
+    public int update(String table, int conflictAlgorithm, ContentValues values,
+            String whereClause, Object[] whereArgs) {
+        long start = System.nanoTime();
+        int rows = mDelegate.update(table, conflictAlgorithm, values, whereClause, whereArgs);
+        onStatement("UPDATE " + table
+                + (whereClause == null || whereClause.isEmpty() ? "" : " WHERE " + whereClause),
+                null, start, rows);
+        return rows;
+    }
+
+    @Override
+    public void execSQL(String sql) throws SQLException {
+        long start = System.nanoTime();
+        mDelegate.execSQL(sql);
+        onStatement(sql, null, start, 0);
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] bindArgs) throws SQLException {
+        long start = System.nanoTime();
+        mDelegate.execSQL(sql, bindArgs);
+        onStatement(sql, new SimpleSQLiteQuery(sql, bindArgs), start, 0);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return mDelegate.isReadOnly();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mDelegate.isOpen();
+    }
+
+    @Override
+    public boolean needUpgrade(int newVersion) {
+        return mDelegate.needUpgrade(newVersion);
+    }
+
+    @Override
+    public String getPath() {
+        return mDelegate.getPath();
+    }
+
+    @Override
+    public void setLocale(Locale locale) {
+        mDelegate.setLocale(locale);
+    }
+
+    @Override
+    public void setMaxSqlCacheSize(int cacheSize) {
+        mDelegate.setMaxSqlCacheSize(cacheSize);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void setForeignKeyConstraintsEnabled(boolean enable) {
+        mDelegate.setForeignKeyConstraintsEnabled(enable);
+    }
+
+    @Override
+    public boolean enableWriteAheadLogging() {
+        return mDelegate.enableWriteAheadLogging();
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void disableWriteAheadLogging() {
+        mDelegate.disableWriteAheadLogging();
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public boolean isWriteAheadLoggingEnabled() {
+        return mDelegate.isWriteAheadLoggingEnabled();
+    }
+
+    @Override
+    public List<Pair<String, String>> getAttachedDbs() {
+        return mDelegate.getAttachedDbs();
+    }
+
+    @Override
+    public boolean isDatabaseIntegrityOk() {
+        return mDelegate.isDatabaseIntegrityOk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDelegate.close();
+    }
+
+    /**
+     * Reports a query when its cursor is closed. SQLite runs the query while the rows are read,
+     * so that is when the work is done. Room closes the cursor before it releases the query, so
+     * the bindings are still there for the plan.
+     */
+    private class TracingCursor extends CursorWrapper {
+
+        private final SupportSQLiteQuery mQuery;
+
+        private final long mStart;
+
+        private boolean mReported;
+
+        TracingCursor(Cursor cursor, SupportSQLiteQuery query, long start) {
+            super(cursor);
+            mQuery = query;
+            mStart = start;
+        }
+
+        @Override
+        public void close() {
+            // Counting a cursor that was never read would run the query now
+            long rows = isClosed() || getPosition() == -1 ? 0 : getCount();
+            super.close();
+            if (!mReported) {
+                mReported = true;
+                onStatement(mQuery.getSql(), mQuery, mStart, rows);
+            }
+        }
+    }
+
+    /** {@code EXPLAIN QUERY PLAN} of a statement, with its arguments if there are any. */
+    private static class ExplainQuery implements SupportSQLiteQuery {
+
+        private final String mSql;
+
+        @Nullable
+        private final SupportSQLiteQuery mBindings;
+
+        ExplainQuery(String sql, @Nullable SupportSQLiteQuery bindings) {
+            mSql = "EXPLAIN QUERY PLAN " + sql;
+            mBindings = bindings;
+        }
+
+        @Override
+        public String getSql() {
+            return mSql;
+        }
+
+        @Override
+        public void bindTo(SupportSQLiteProgram statement) {
+            if (mBindings != null) {
+                mBindings.bindTo(statement);
+            }
+        }
+
+        @Override
+        public int getArgCount() {
+            return mBindings == null ? 0 : mBindings.getArgCount();
+        }
+    }
+}
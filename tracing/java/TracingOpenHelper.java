@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+
+/** Hands out {@link TracingDatabase}s for the databases opened by another helper. */
+class TracingOpenHelper implements SupportSQLiteOpenHelper {
+
+    static class Factory implements SupportSQLiteOpenHelper.Factory {
+
+        private final SupportSQLiteOpenHelper.Factory mDelegate;
+
+        private final QueryTracer mTracer;
+
+        Factory(SupportSQLiteOpenHelper.Factory delegate, QueryTracer tracer) {
+            mDelegate = delegate;
+            mTracer = tracer;
+        }
+
+        @NonNull
+        @Override
+        public SupportSQLiteOpenHelper create(@NonNull Configuration configuration) {
+            return new TracingOpenHelper(mDelegate.create(configuration), mTracer);
+        }
+    }
+
+    private final SupportSQLiteOpenHelper mDelegate;
+
+    private final QueryTracer mTracer;
+
+    // Room asks for the database before every statement, so the wrapper is kept
+    private TracingDatabase mDatabase;
+
+    private TracingOpenHelper(SupportSQLiteOpenHelper delegate, QueryTracer tracer) {
+        mDelegate = delegate;
+        mTracer = tracer;
+    }
+
+    @Override
+    public String getDatabaseName() {
+        return mDelegate.getDatabaseName();
+    }
+
+    @Override
+    public void setWriteAheadLoggingEnabled(boolean enabled) {
+        mDelegate.setWriteAheadLoggingEnabled(enabled);
+    }
+
+    @Override
+    public SupportSQLiteDatabase getWritableDatabase() {
+        return wrap(mDelegate.getWritableDatabase());
+    }
+
+    @Override
+    public SupportSQLiteDatabase getReadableDatabase() {
+        return wrap(mDelegate.getReadableDatabase());
+    }
+
+    @Override
+    public void close() {
+        mDelegate.close();
+    }
+
+    private synchronized SupportSQLiteDatabase wrap(SupportSQLiteDatabase database) {
+        if (mDatabase == null || !mDatabase.wraps(database)) {
+            mDatabase = new TracingDatabase(database, mTracer);
+        }
+        return mDatabase;
+    }
+}
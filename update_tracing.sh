@@ -0,0 +1,62 @@
+#!/bin/bash
+# Copies the query tracing sources in tracing/ to every sample that uses them, in the sample's
+# own package, so that each sample still builds on its own and with Android Studio's
+# "Import sample" feature. Edit the files in tracing/ and run this script, never the copies.
+#
+# With --check, only verifies that the copies match tracing/ and exits with 1 if any does not.
+
+JAVA_TARGETS="
+BasicSample/app/src/main/java com.example.android.persistence.db.tracing
+BasicRxJavaSample/app/src/main/java com.example.android.observability.persistence.tracing
+PersistenceContentProviderSample/app/src/main/java com.example.android.contentprovidersample.data.tracing
+PersistenceMigrationsSample/app/src/room_common/java com.example.android.persistence.migrations.tracing
+"
+
+KOTLIN_TARGETS="
+BasicRxJavaSampleKotlin/app/src/main/java com.example.android.observability.persistence.tracing
+GithubBrowserSample/app/src/main/java com.android.example.github.db.tracing
+PagingSample/app/src/main/java paging.android.example.com.pagingsample.tracing
+PagingWithNetworkSample/app/src/main/java com.android.example.paging.pagingwithnetwork.reddit.db.tracing
+"
+
+check=false
+if [[ "$1" == "--check" ]]; then
+  check=true
+fi
+status=0
+
+# Prints $1 as it should be copied to package $2, with the generated marker above the package
+generate() {
+  local source=$1 package=$2 semicolon=""
+  if [[ $source == *.java ]]; then
+    semicolon=";"
+  fi
+  sed -e "s|^package .*|// Generated from $source by update_tracing.sh, do not edit.\\
+package $package$semicolon|" "$source"
+}
+
+copy() {
+  local extension=$1 targets=$2
+  echo "$targets" | while read -r srcDir package; do
+    [[ -z "$srcDir" ]] && continue
+    dir="$srcDir/${package//.//}"
+    for source in tracing/$extension/*; do
+      target="$dir/$(basename "$source")"
+      if $check; then
+        if ! generate "$source" "$package" | cmp -s - "$target"; then
+          echo "$target is out of date, run ./update_tracing.sh"
+          exit 1
+        fi
+      else
+        echo "Copying $source -> $target"
+        mkdir -p "$dir"
+        generate "$source" "$package" > "$target"
+      fi
+    done
+  done
+}
+
+cd "$(dirname "$0")"
+copy java "$JAVA_TARGETS" || status=1
+copy kotlin "$KOTLIN_TARGETS" || status=1
+exit $status